@@ -0,0 +1,110 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import com.github.wnameless.spring.bulkapi.benchmark.BenchmarkApplication;
+import com.github.wnameless.spring.bulkapi.benchmark.BulkRequests;
+
+/**
+ * 
+ * {@link PipelineBenchmark} measures the stages which every bulk request goes
+ * through before and after its operations are sent: the planning(URI
+ * computation and path validation), the request entity building and the
+ * result building.<br>
+ * <br>
+ * It lives in the same package as {@link DefaultBulkApiService} to reach its
+ * package-private stages.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+  static final int OPERATIONS = 100;
+
+  ConfigurableApplicationContext appCtx;
+  DefaultBulkApiService service;
+  BulkRequest req;
+  MockHttpServletRequest servReq;
+  List<BulkOperationPlan> plans;
+  ResponseEntity<String> rawRes;
+
+  @Setup
+  public void setUp() {
+    appCtx = BenchmarkApplication.start();
+    service = new DefaultBulkApiService(appCtx);
+    req = BulkRequests.of(OPERATIONS);
+    servReq = new MockHttpServletRequest("POST", "/bulk");
+    plans = service.plan(req, servReq);
+    rawRes = ResponseEntity.ok().header("Content-Type", "text/plain")
+        .body("HAHA");
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    service.destroy();
+    appCtx.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public List<BulkOperationPlan> plan() {
+    return service.plan(req, servReq);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public void requestEntity(Blackhole bh) {
+    for (BulkOperationPlan plan : plans) {
+      bh.consume(plan.toRequestEntity());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public void buildResult(Blackhole bh) {
+    for (int i = 0; i < OPERATIONS; i++) {
+      bh.consume(service.buildResult(rawRes, false));
+    }
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.benchmark;
+
+import java.util.Map;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.github.wnameless.spring.bulkapi.Bulkable;
+import com.github.wnameless.spring.bulkapi.EnableBulkApi;
+
+/**
+ * 
+ * {@link BenchmarkApplication} is the Web App which all benchmarks run
+ * against. Its stub endpoints do almost nothing, so the measurements are
+ * dominated by the bulk pipeline itself.
+ *
+ */
+@EnableBulkApi
+@SpringBootApplication
+public class BenchmarkApplication {
+
+  /**
+   * Starts the {@link BenchmarkApplication} on a random port.
+   * 
+   * @param properties
+   *          additional Spring properties, such as spring.bulk.api.dispatch=...
+   * @return the {@link ConfigurableApplicationContext}
+   */
+  public static ConfigurableApplicationContext start(String... properties) {
+    String[] args = new String[properties.length + 3];
+    args[0] = "--server.port=0";
+    args[1] = "--spring.bulk.api.limit=100000";
+    args[2] = "--logging.level.root=WARN";
+    for (int i = 0; i < properties.length; i++) {
+      args[i + 3] = "--" + properties[i];
+    }
+
+    return SpringApplication.run(BenchmarkApplication.class, args);
+  }
+
+  @Bulkable
+  @RestController
+  public static class StubController {
+
+    @RequestMapping("/home")
+    String home() {
+      return "HAHA";
+    }
+
+    @RequestMapping("/home2/{id}")
+    String home2() {
+      return "YAYA";
+    }
+
+    @RequestMapping(value = "/form", method = RequestMethod.POST)
+    String form(@RequestParam("abc") String abc) {
+      return abc;
+    }
+
+    @RequestMapping(value = "/json", method = RequestMethod.POST)
+    String json(@RequestBody Map<String, Object> body) {
+      return "JSON";
+    }
+
+  }
+
+}
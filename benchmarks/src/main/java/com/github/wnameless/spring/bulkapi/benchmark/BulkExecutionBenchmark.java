@@ -0,0 +1,105 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkRequest;
+
+/**
+ * 
+ * {@link BulkExecutionBenchmark} measures whole bulk requests end-to-end,
+ * from posting a {@link BulkRequest} to receiving its response, across the
+ * execution modes. Other executors can be compared by JMH parameters, e.g.
+ * -p executor=virtual.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BulkExecutionBenchmark {
+
+  static final int OPERATIONS = 100;
+
+  @Param({ "loopback", "in-process" })
+  String dispatch;
+
+  @Param({ "false", "true" })
+  boolean parallel;
+
+  @Param({ "platform" })
+  String executor;
+
+  ConfigurableApplicationContext appCtx;
+  RestTemplate client;
+  String url;
+  HttpEntity<byte[]> request;
+
+  @Setup
+  public void setUp() throws Exception {
+    appCtx = BenchmarkApplication.start("spring.bulk.api.dispatch=" + dispatch,
+        "spring.bulk.api.parallel.executor=" + executor);
+    int port =
+        appCtx.getEnvironment().getProperty("local.server.port", int.class);
+    url = "http://localhost:" + port + "/bulk";
+    client = new RestTemplate(new HttpComponentsClientHttpRequestFactory());
+
+    BulkRequest req = BulkRequests.of(OPERATIONS);
+    req.setParallel(parallel);
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    request = new HttpEntity<>(new ObjectMapper().writeValueAsBytes(req),
+        headers);
+  }
+
+  @TearDown
+  public void tearDown() {
+    appCtx.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public String bulk() {
+    return client.postForObject(url, request, String.class);
+  }
+
+}
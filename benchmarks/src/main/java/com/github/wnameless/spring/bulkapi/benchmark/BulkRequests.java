@@ -0,0 +1,78 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.github.wnameless.spring.bulkapi.BulkOperation;
+import com.github.wnameless.spring.bulkapi.BulkRequest;
+
+/**
+ * 
+ * {@link BulkRequests} builds the {@link BulkRequest}s used by benchmarks. The
+ * operations cycle through all endpoints of {@link BenchmarkApplication}, so
+ * every body mode is covered.
+ *
+ */
+public final class BulkRequests {
+
+  private BulkRequests() {}
+
+  /**
+   * Creates a {@link BulkRequest} of given number of operations.
+   * 
+   * @param size
+   *          the number of operations
+   * @return a {@link BulkRequest}
+   */
+  public static BulkRequest of(int size) {
+    BulkRequest req = new BulkRequest();
+    for (int i = 0; i < size; i++) {
+      req.getOperations().add(operation(i));
+    }
+    return req;
+  }
+
+  private static BulkOperation operation(int i) {
+    BulkOperation op = new BulkOperation();
+    switch (i % 4) {
+      case 0:
+        op.setUrl("/home");
+        break;
+      case 1:
+        op.setUrl("/home2/" + i);
+        break;
+      case 2:
+        op.setMethod("POST");
+        op.setUrl("/form");
+        op.getParams().put("abc", String.valueOf(i));
+        break;
+      default:
+        op.setMethod("POST");
+        op.setUrl("/json");
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("id", i);
+        nested.put("name", "item-" + i);
+        op.getParams().put("item", nested);
+        op.getHeaders().put("X-Request-Id", String.valueOf(i));
+    }
+    return op;
+  }
+
+}
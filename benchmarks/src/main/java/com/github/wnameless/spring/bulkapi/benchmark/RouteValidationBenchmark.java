@@ -0,0 +1,94 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpMethod;
+
+import com.github.wnameless.spring.bulkapi.BulkApiValidator;
+import com.github.wnameless.spring.bulkapi.BulkOperation;
+
+/**
+ * 
+ * {@link RouteValidationBenchmark} measures
+ * {@link BulkApiValidator#validatePath(String, HttpMethod)} over all
+ * operations of a bulk request, with and without the validation cache.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteValidationBenchmark {
+
+  static final int OPERATIONS = 100;
+
+  @Param({ "0", "1000" })
+  int validationCacheSize;
+
+  ConfigurableApplicationContext appCtx;
+  BulkApiValidator validator;
+  List<String> paths;
+  List<HttpMethod> methods;
+
+  @Setup
+  public void setUp() {
+    appCtx = BenchmarkApplication.start();
+    validator = new BulkApiValidator(appCtx, validationCacheSize);
+
+    List<BulkOperation> ops = BulkRequests.of(OPERATIONS).getOperations();
+    paths = ops.stream().map(BulkOperation::getUrl)
+        .collect(Collectors.toList());
+    methods = ops.stream().map(op -> HttpMethod.valueOf(op.getMethod()))
+        .collect(Collectors.toList());
+  }
+
+  @TearDown
+  public void tearDown() {
+    appCtx.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public void validatePaths(Blackhole bh) {
+    for (int i = 0; i < OPERATIONS; i++) {
+      bh.consume(validator.validatePath(paths.get(i), methods.get(i)));
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 
+ * {@link BoundedCache} is a thread-safe LRU cache which evicts the least
+ * recently used entry once its size limit is exceeded. It also counts its hits
+ * and misses.
+ * 
+ * @param <K>
+ *          the type of keys
+ * @param <V>
+ *          the type of values
+ */
+final class BoundedCache<K, V> {
+
+  private final Map<K, V> entries;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  public BoundedCache(int maxSize) {
+    if (maxSize < 0) throw new IllegalArgumentException(
+        "Max size must not be negative, but got " + maxSize);
+
+    entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxSize;
+      }
+
+    };
+  }
+
+  /**
+   * Returns the cached value of given key. If no value is cached, the value is
+   * computed by given loader and then cached unless it's null.
+   * 
+   * @param key
+   *          a key
+   * @param loader
+   *          computes the value if it's absent
+   * @return a value
+   */
+  public V get(K key, Function<? super K, ? extends V> loader) {
+    V value;
+    synchronized (entries) {
+      value = entries.get(key);
+    }
+    if (value != null) {
+      hitCount.incrementAndGet();
+      return value;
+    }
+
+    missCount.incrementAndGet();
+    value = loader.apply(key);
+    if (value != null) {
+      synchronized (entries) {
+        entries.put(key, value);
+      }
+    }
+    return value;
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+}
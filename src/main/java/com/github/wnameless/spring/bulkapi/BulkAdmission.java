@@ -0,0 +1,245 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_ADAPTIVE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_ADAPTIVE_HEAP_USAGE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_ADAPTIVE_HEAP_USAGE_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_ADAPTIVE_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_ADAPTIVE_MIN_IN_FLIGHT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_ADAPTIVE_MIN_IN_FLIGHT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_ADAPTIVE_TARGET_LATENCY_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_ADAPTIVE_TARGET_LATENCY_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_MAX_IN_FLIGHT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_MAX_IN_FLIGHT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_RETRY_AFTER_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_RETRY_AFTER_KEY;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.springframework.http.HttpStatus.PAYLOAD_TOO_LARGE;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.core.env.Environment;
+
+/**
+ * 
+ * {@link BulkAdmission} limits the number of bulk operations in flight on this
+ * node. Operations beyond the limit are rejected with status 429 and a
+ * Retry-After, and a single bulk which can never fit is rejected with status
+ * 413.<br>
+ * <br>
+ * In the adaptive mode, the limit is adjusted once a bulk is finished. It's
+ * tightened whenever the smoothed latency of operations exceeds the target,
+ * or the heap usage left by the last garbage collection exceeds the
+ * threshold. It's decreased multiplicatively and recovered additively, but
+ * never below the minimum. A bulk is always
+ * admitted if nothing else is in flight, so a tightened limit can't starve
+ * it.
+ *
+ */
+final class BulkAdmission {
+
+  private static final double DECREASE = 0.9;
+  private static final double INCREASE = 0.05;
+  private static final double SMOOTHING = 0.2;
+
+  private final int maxInFlight;
+  private final long retryAfter;
+  private final boolean adaptive;
+  private final long targetLatency;
+  private final double maxHeapUsage;
+  private final int minInFlight;
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private volatile double factor = 1;
+  private double latency;
+
+  /**
+   * Creates a {@link BulkAdmission} configured by the
+   * <i>spring.bulk.api.admission.*</i> properties.
+   * 
+   * @param env
+   *          the Spring {@link Environment}
+   * @return a {@link BulkAdmission}
+   */
+  static BulkAdmission of(Environment env) {
+    return new BulkAdmission(
+        env.getProperty(BULK_API_ADMISSION_MAX_IN_FLIGHT_KEY, int.class,
+            BULK_API_ADMISSION_MAX_IN_FLIGHT_DEFAULT),
+        env.getProperty(BULK_API_ADMISSION_RETRY_AFTER_KEY, long.class,
+            BULK_API_ADMISSION_RETRY_AFTER_DEFAULT),
+        env.getProperty(BULK_API_ADMISSION_ADAPTIVE_KEY, boolean.class,
+            BULK_API_ADMISSION_ADAPTIVE_DEFAULT),
+        env.getProperty(BULK_API_ADMISSION_ADAPTIVE_TARGET_LATENCY_KEY,
+            long.class, BULK_API_ADMISSION_ADAPTIVE_TARGET_LATENCY_DEFAULT),
+        env.getProperty(BULK_API_ADMISSION_ADAPTIVE_HEAP_USAGE_KEY,
+            double.class, BULK_API_ADMISSION_ADAPTIVE_HEAP_USAGE_DEFAULT),
+        env.getProperty(BULK_API_ADMISSION_ADAPTIVE_MIN_IN_FLIGHT_KEY,
+            int.class, BULK_API_ADMISSION_ADAPTIVE_MIN_IN_FLIGHT_DEFAULT));
+  }
+
+  BulkAdmission(int maxInFlight, long retryAfter, boolean adaptive,
+      long targetLatency, double maxHeapUsage, int minInFlight) {
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.retryAfter = Math.max(1, retryAfter);
+    this.adaptive = adaptive;
+    this.targetLatency = MILLISECONDS.toNanos(targetLatency);
+    this.maxHeapUsage = maxHeapUsage;
+    this.minInFlight = Math.max(1, Math.min(minInFlight, this.maxInFlight));
+  }
+
+  /**
+   * Admits a bulk of given operations. The returned {@link Ticket} must be
+   * closed once the bulk is finished.
+   * 
+   * @param operations
+   *          the number of operations known upfront
+   * @return a {@link Ticket}
+   * @throws BulkApiException
+   *           if the operations can't be admitted
+   */
+  Ticket admit(int operations) {
+    if (operations > maxInFlight) {
+      throw new BulkApiException(PAYLOAD_TOO_LARGE, "Bulk operations exceed"
+          + " the in-flight limitation(" + maxInFlight + ")");
+    }
+
+    Ticket ticket = new Ticket();
+    if (operations > 0) ticket.acquire(operations);
+    return ticket;
+  }
+
+  /**
+   * Returns the current limit of operations in flight.
+   * 
+   * @return the limit of operations in flight
+   */
+  int getLimit() {
+    if (!adaptive) return maxInFlight;
+    return Math.max(minInFlight, (int) (maxInFlight * factor));
+  }
+
+  /**
+   * Returns the number of operations in flight.
+   * 
+   * @return the number of operations in flight
+   */
+  int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Records the latency of an executed operation, which is smoothed with the
+   * latencies recorded before.
+   * 
+   * @param nanos
+   *          the latency of an operation in nanoseconds
+   */
+  synchronized void record(long nanos) {
+    if (!adaptive) return;
+
+    latency = latency == 0 ? nanos : latency + SMOOTHING * (nanos - latency);
+  }
+
+  /**
+   * Adjusts the limit by the smoothed latency of operations and the current
+   * heap usage.
+   */
+  private synchronized void adjust() {
+    if (!adaptive) return;
+
+    if (latency > targetLatency || heapUsage() > maxHeapUsage) {
+      factor = Math.max((double) minInFlight / maxInFlight, factor * DECREASE);
+    } else {
+      factor = Math.min(1, factor + INCREASE);
+    }
+  }
+
+  /**
+   * Returns the highest usage of the heap pools after the last garbage
+   * collection, which leaves out the garbage which is about to be collected.
+   */
+  private static double heapUsage() {
+    double usage = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() != MemoryType.HEAP) continue;
+
+      MemoryUsage collected = pool.getCollectionUsage();
+      if (collected == null || collected.getMax() <= 0) continue;
+      usage =
+          Math.max(usage, (double) collected.getUsed() / collected.getMax());
+    }
+    return usage;
+  }
+
+  /**
+   * {@link Ticket} holds the admitted operations of a bulk.
+   */
+  final class Ticket {
+
+    private int operations;
+
+    /**
+     * Admits one more operation of this bulk, which is used by bulks whose
+     * operations are read one by one.
+     * 
+     * @throws BulkApiException
+     *           if the operation can't be admitted
+     */
+    void acquireOne() {
+      if (operations + 1 > maxInFlight) {
+        throw new BulkApiException(PAYLOAD_TOO_LARGE, "Bulk operations exceed"
+            + " the in-flight limitation(" + maxInFlight + ")");
+      }
+      acquire(1);
+    }
+
+    private void acquire(int n) {
+      int limit = getLimit();
+      while (true) {
+        int current = inFlight.get();
+        int others = current - operations;
+        if (others > 0 && current + n > limit) {
+          throw new BulkApiException(TOO_MANY_REQUESTS, "Bulk operations"
+              + " exceed the limitation(" + limit + ") of operations in flight",
+              retryAfter);
+        }
+        if (inFlight.compareAndSet(current, current + n)) break;
+      }
+      operations += n;
+    }
+
+    /**
+     * Releases the admitted operations, and adjusts the adaptive limit.
+     */
+    void close() {
+      if (operations == 0) return;
+
+      inFlight.addAndGet(-operations);
+      adjust();
+      operations = 0;
+    }
+
+  }
+
+}
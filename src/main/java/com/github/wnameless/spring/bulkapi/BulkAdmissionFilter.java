@@ -0,0 +1,176 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_MAX_BYTES_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_MAX_BYTES_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PATH_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PATH_KEY;
+import static org.springframework.http.HttpStatus.PAYLOAD_TOO_LARGE;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.env.Environment;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * 
+ * {@link BulkAdmissionFilter} limits the bytes of bulk request bodies. A body
+ * whose Content-Length exceeds the limit is rejected with status 413 before it
+ * is read. Any other body is counted while it's read, so chunked and decoded
+ * bodies can't exceed the limit either.
+ *
+ */
+final class BulkAdmissionFilter extends OncePerRequestFilter {
+
+  private final boolean enabled;
+  private final long maxBytes;
+  private final String bulkPath;
+
+  /**
+   * Creates a {@link BulkAdmissionFilter} configured by the
+   * <i>spring.bulk.api.admission.*</i> properties.
+   * 
+   * @param env
+   *          the Spring {@link Environment}
+   */
+  public BulkAdmissionFilter(Environment env) {
+    enabled = env.getProperty(BULK_API_ADMISSION_KEY, boolean.class,
+        BULK_API_ADMISSION_DEFAULT);
+    maxBytes = env.getProperty(BULK_API_ADMISSION_MAX_BYTES_KEY, long.class,
+        BULK_API_ADMISSION_MAX_BYTES_DEFAULT);
+    String path =
+        env.getProperty(BULK_API_PATH_KEY, BULK_API_PATH_DEFAULT).trim();
+    bulkPath = path.startsWith("/") ? path : "/" + path;
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    if (!enabled || maxBytes <= 0) return true;
+
+    String path =
+        request.getRequestURI().substring(request.getContextPath().length());
+    return !path.equals(bulkPath) && !path.startsWith(bulkPath + "/");
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request,
+      HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    if (request.getContentLengthLong() > maxBytes) {
+      response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+          "Bulk request body exceeds the limitation(" + maxBytes + " bytes)");
+      return;
+    }
+
+    filterChain.doFilter(new LimitedRequest(request, maxBytes), response);
+  }
+
+  private static final class LimitedRequest extends HttpServletRequestWrapper {
+
+    private final long maxBytes;
+    private ServletInputStream inputStream;
+    private BufferedReader reader;
+
+    LimitedRequest(HttpServletRequest request, long maxBytes) {
+      super(request);
+      this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+      if (inputStream == null) {
+        ServletInputStream in = super.getInputStream();
+        inputStream = new ServletInputStream() {
+
+          private long count;
+
+          @Override
+          public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) count(1);
+            return b;
+          }
+
+          @Override
+          public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count(n);
+            return n;
+          }
+
+          private void count(int n) {
+            count += n;
+            if (count > maxBytes) {
+              throw new BulkApiException(PAYLOAD_TOO_LARGE,
+                  "Bulk request body exceeds the limitation(" + maxBytes
+                      + " bytes)");
+            }
+          }
+
+          @Override
+          public boolean isFinished() {
+            return in.isFinished();
+          }
+
+          @Override
+          public boolean isReady() {
+            return in.isReady();
+          }
+
+          @Override
+          public void setReadListener(ReadListener readListener) {
+            in.setReadListener(readListener);
+          }
+
+          @Override
+          public void close() throws IOException {
+            in.close();
+          }
+
+        };
+      }
+      return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+      if (reader == null) {
+        String charset = getCharacterEncoding();
+        reader = new BufferedReader(new InputStreamReader(getInputStream(),
+            charset != null ? charset : WebUtils.DEFAULT_CHARACTER_ENCODING));
+      }
+      return reader;
+    }
+
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_REST_TEMPLATE_BEAN_NAME;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * 
+ * {@link BulkApiClientConfig} provides the HTTP client of the loopback bulk
+ * operations. It's imported by {@link BulkApiConfig} after all the
+ * configurations of the Web App, so the Web App can replace its beans. It's
+ * not a component on purpose, otherwise the component scan of
+ * {@link EnableBulkApi} would load it too early.
+ *
+ */
+class BulkApiClientConfig {
+
+  /**
+   * Creates the {@link RestTemplate} shared by all loopback bulk operations,
+   * unless the Web App provides its own one named
+   * {@value BulkApiConfig#BULK_API_REST_TEMPLATE_BEAN_NAME}.
+   * 
+   * @param env
+   *          the Spring {@link Environment}
+   * @return a {@link RestTemplate}
+   */
+  @Bean(name = BULK_API_REST_TEMPLATE_BEAN_NAME)
+  @ConditionalOnMissingBean(name = BULK_API_REST_TEMPLATE_BEAN_NAME)
+  RestTemplate bulkApiRestTemplate(Environment env) {
+    return BulkRestTemplateFactory.newRestTemplate(env);
+  }
+
+}
@@ -17,7 +17,16 @@
  */
 package com.github.wnameless.spring.bulkapi;
 
+import javax.servlet.DispatcherType;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DeferredImportSelector;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotationMetadata;
 
 /**
  * 
@@ -28,6 +37,7 @@ import org.springframework.context.annotation.Configuration;
  *
  */
 @Configuration
+@Import(BulkApiConfig.ClientConfigSelector.class)
 public class BulkApiConfig {
 
   public static final String BULK_API_PATH_KEY = "spring.bulk.api.path";
@@ -36,4 +46,299 @@ public class BulkApiConfig {
   public static final String BULK_API_LIMIT_KEY = "spring.bulk.api.limit";
   public static final int BULK_API_LIMIT_DEFAULT = 100;
 
+  public static final String BULK_API_DISPATCH_KEY = "spring.bulk.api.dispatch";
+  public static final String BULK_API_DISPATCH_LOOPBACK = "loopback";
+  public static final String BULK_API_DISPATCH_IN_PROCESS = "in-process";
+  public static final String BULK_API_DISPATCH_DEFAULT =
+      BULK_API_DISPATCH_LOOPBACK;
+
+  public static final String BULK_API_PARALLEL_KEY =
+      "spring.bulk.api.parallel.enabled";
+  public static final boolean BULK_API_PARALLEL_DEFAULT = false;
+
+  public static final String BULK_API_PARALLEL_POOL_SIZE_KEY =
+      "spring.bulk.api.parallel.pool-size";
+  public static final int BULK_API_PARALLEL_POOL_SIZE_DEFAULT = 10;
+
+  public static final String BULK_API_PARALLEL_EXECUTOR_KEY =
+      "spring.bulk.api.parallel.executor";
+  public static final String BULK_API_PARALLEL_EXECUTOR_PLATFORM = "platform";
+  public static final String BULK_API_PARALLEL_EXECUTOR_VIRTUAL = "virtual";
+  public static final String BULK_API_PARALLEL_EXECUTOR_DEFAULT =
+      BULK_API_PARALLEL_EXECUTOR_PLATFORM;
+
+  public static final String BULK_API_COALESCE_KEY =
+      "spring.bulk.api.coalesce.enabled";
+  public static final boolean BULK_API_COALESCE_DEFAULT = false;
+
+  public static final String BULK_API_CACHE_KEY =
+      "spring.bulk.api.cache.enabled";
+  public static final boolean BULK_API_CACHE_DEFAULT = false;
+
+  public static final String BULK_API_CACHE_MAX_SIZE_KEY =
+      "spring.bulk.api.cache.max-size";
+  public static final int BULK_API_CACHE_MAX_SIZE_DEFAULT = 1000;
+
+  public static final String BULK_API_CACHE_MAX_WEIGHT_KEY =
+      "spring.bulk.api.cache.max-weight";
+  public static final long BULK_API_CACHE_MAX_WEIGHT_DEFAULT =
+      16L * 1024 * 1024;
+
+  public static final String BULK_API_CACHE_VARY_HEADERS_KEY =
+      "spring.bulk.api.cache.vary-headers";
+  public static final String BULK_API_CACHE_VARY_HEADERS_DEFAULT =
+      "Accept,Accept-Language,Authorization";
+
+  public static final String BULK_API_BULKHEAD_KEY =
+      "spring.bulk.api.bulkhead.enabled";
+  public static final boolean BULK_API_BULKHEAD_DEFAULT = false;
+
+  public static final String BULK_API_BULKHEAD_MAX_CONCURRENT_KEY =
+      "spring.bulk.api.bulkhead.max-concurrent";
+  public static final int BULK_API_BULKHEAD_MAX_CONCURRENT_DEFAULT = 10;
+
+  public static final String BULK_API_BULKHEAD_ROUTES_KEY =
+      "spring.bulk.api.bulkhead.routes";
+
+  public static final String BULK_API_BULKHEAD_MAX_WAIT_KEY =
+      "spring.bulk.api.bulkhead.max-wait";
+  public static final long BULK_API_BULKHEAD_MAX_WAIT_DEFAULT = 0L;
+
+  public static final String BULK_API_BULKHEAD_TENANT_MAX_CONCURRENT_KEY =
+      "spring.bulk.api.bulkhead.tenant-max-concurrent";
+  public static final int BULK_API_BULKHEAD_TENANT_MAX_CONCURRENT_DEFAULT = 0;
+
+  public static final String BULK_API_BULKHEAD_TENANT_HEADER_KEY =
+      "spring.bulk.api.bulkhead.tenant-header";
+
+  public static final String BULK_API_BULKHEAD_TENANT_PRINCIPAL_KEY =
+      "spring.bulk.api.bulkhead.tenant-principal";
+  public static final boolean BULK_API_BULKHEAD_TENANT_PRINCIPAL_DEFAULT =
+      false;
+
+  public static final String BULK_API_ADMISSION_KEY =
+      "spring.bulk.api.admission.enabled";
+  public static final boolean BULK_API_ADMISSION_DEFAULT = false;
+
+  public static final String BULK_API_ADMISSION_MAX_BYTES_KEY =
+      "spring.bulk.api.admission.max-bytes";
+  public static final long BULK_API_ADMISSION_MAX_BYTES_DEFAULT =
+      16L * 1024 * 1024;
+
+  public static final String BULK_API_ADMISSION_MAX_IN_FLIGHT_KEY =
+      "spring.bulk.api.admission.max-in-flight";
+  public static final int BULK_API_ADMISSION_MAX_IN_FLIGHT_DEFAULT = 1000;
+
+  public static final String BULK_API_ADMISSION_RETRY_AFTER_KEY =
+      "spring.bulk.api.admission.retry-after";
+  public static final long BULK_API_ADMISSION_RETRY_AFTER_DEFAULT = 1L;
+
+  public static final String BULK_API_ADMISSION_ADAPTIVE_KEY =
+      "spring.bulk.api.admission.adaptive.enabled";
+  public static final boolean BULK_API_ADMISSION_ADAPTIVE_DEFAULT = false;
+
+  public static final String BULK_API_ADMISSION_ADAPTIVE_TARGET_LATENCY_KEY =
+      "spring.bulk.api.admission.adaptive.target-latency";
+  public static final long BULK_API_ADMISSION_ADAPTIVE_TARGET_LATENCY_DEFAULT =
+      1000L;
+
+  public static final String BULK_API_ADMISSION_ADAPTIVE_HEAP_USAGE_KEY =
+      "spring.bulk.api.admission.adaptive.max-heap-usage";
+  public static final double BULK_API_ADMISSION_ADAPTIVE_HEAP_USAGE_DEFAULT =
+      0.85;
+
+  public static final String BULK_API_ADMISSION_ADAPTIVE_MIN_IN_FLIGHT_KEY =
+      "spring.bulk.api.admission.adaptive.min-in-flight";
+  public static final int BULK_API_ADMISSION_ADAPTIVE_MIN_IN_FLIGHT_DEFAULT =
+      10;
+
+  public static final String BULK_API_COMPRESSION_KEY =
+      "spring.bulk.api.compression.enabled";
+  public static final boolean BULK_API_COMPRESSION_DEFAULT = false;
+
+  public static final String BULK_API_COMPRESSION_ENCODINGS_KEY =
+      "spring.bulk.api.compression.encodings";
+  public static final String BULK_API_COMPRESSION_ENCODINGS_DEFAULT =
+      "zstd,gzip,deflate";
+
+  public static final String BULK_API_COMPRESSION_MAX_INFLATED_SIZE_KEY =
+      "spring.bulk.api.compression.max-inflated-size";
+  public static final long BULK_API_COMPRESSION_MAX_INFLATED_SIZE_DEFAULT =
+      16L * 1024 * 1024;
+
+  public static final String BULK_API_COMPRESSION_LOOPBACK_KEY =
+      "spring.bulk.api.compression.loopback.enabled";
+  public static final boolean BULK_API_COMPRESSION_LOOPBACK_DEFAULT = false;
+
+  public static final String BULK_API_COMPRESSION_LOOPBACK_MIN_SIZE_KEY =
+      "spring.bulk.api.compression.loopback.min-size";
+  public static final int BULK_API_COMPRESSION_LOOPBACK_MIN_SIZE_DEFAULT =
+      1024;
+
+  public static final String BULK_API_COMPRESSION_LOOPBACK_TOKEN_KEY =
+      "spring.bulk.api.compression.loopback.token";
+
+  public static final String BULK_API_RAW_JSON_KEY =
+      "spring.bulk.api.raw-json.enabled";
+  public static final boolean BULK_API_RAW_JSON_DEFAULT = false;
+
+  public static final String BULK_API_STREAM_KEY =
+      "spring.bulk.api.stream.enabled";
+  public static final boolean BULK_API_STREAM_DEFAULT = false;
+  public static final String BULK_API_STREAM_MEDIA_TYPE =
+      "application/x-ndjson";
+
+  public static final String BULK_API_ON_ERROR_KEY = "spring.bulk.api.on-error";
+  public static final String BULK_API_ON_ERROR_CONTINUE = "continue";
+  public static final String BULK_API_ON_ERROR_STOP = "stop";
+  public static final String BULK_API_ON_ERROR_DEFAULT =
+      BULK_API_ON_ERROR_CONTINUE;
+
+  public static final String BULK_API_MAX_ERRORS_KEY =
+      "spring.bulk.api.max-errors";
+  public static final int BULK_API_MAX_ERRORS_DEFAULT = 1;
+
+  public static final String BULK_API_TIMEOUT_KEY = "spring.bulk.api.timeout";
+  public static final long BULK_API_TIMEOUT_DEFAULT = 0L;
+
+  public static final String BULK_API_MAX_TIMEOUT_KEY =
+      "spring.bulk.api.max-timeout";
+  public static final long BULK_API_MAX_TIMEOUT_DEFAULT = 0L;
+
+  public static final String BULK_API_OPERATION_TIMEOUT_KEY =
+      "spring.bulk.api.operation-timeout";
+  public static final long BULK_API_OPERATION_TIMEOUT_DEFAULT = 0L;
+
+  public static final String BULK_API_IDEMPOTENCY_KEY =
+      "spring.bulk.api.idempotency.enabled";
+  public static final boolean BULK_API_IDEMPOTENCY_DEFAULT = false;
+  public static final String BULK_API_IDEMPOTENCY_HEADER = "Idempotency-Key";
+
+  public static final String BULK_API_IDEMPOTENCY_TTL_KEY =
+      "spring.bulk.api.idempotency.ttl";
+  public static final long BULK_API_IDEMPOTENCY_TTL_DEFAULT = 3600000L;
+
+  public static final String BULK_API_IDEMPOTENCY_MAX_SIZE_KEY =
+      "spring.bulk.api.idempotency.max-size";
+  public static final int BULK_API_IDEMPOTENCY_MAX_SIZE_DEFAULT = 1000;
+
+  public static final String BULK_API_JOBS_POOL_SIZE_KEY =
+      "spring.bulk.api.jobs.pool-size";
+  public static final int BULK_API_JOBS_POOL_SIZE_DEFAULT = 2;
+
+  public static final String BULK_API_JOBS_LIMIT_KEY =
+      "spring.bulk.api.jobs.limit";
+  public static final int BULK_API_JOBS_LIMIT_DEFAULT = 10000;
+
+  public static final String BULK_API_JOBS_TTL_KEY = "spring.bulk.api.jobs.ttl";
+  public static final long BULK_API_JOBS_TTL_DEFAULT = 3600000L;
+
+  public static final String BULK_API_JOBS_MAX_WAIT_KEY =
+      "spring.bulk.api.jobs.max-wait";
+  public static final long BULK_API_JOBS_MAX_WAIT_DEFAULT = 30000L;
+
+  public static final String BULK_API_JOBS_JOURNAL_KEY =
+      "spring.bulk.api.jobs.journal.enabled";
+  public static final boolean BULK_API_JOBS_JOURNAL_DEFAULT = false;
+
+  public static final String BULK_API_JOBS_JOURNAL_DIR_KEY =
+      "spring.bulk.api.jobs.journal.dir";
+  public static final String BULK_API_JOBS_JOURNAL_DIR_DEFAULT =
+      "bulk-api-journal";
+
+  public static final String BULK_API_JOBS_JOURNAL_MAX_SIZE_KEY =
+      "spring.bulk.api.jobs.journal.max-size";
+  public static final long BULK_API_JOBS_JOURNAL_MAX_SIZE_DEFAULT =
+      64L * 1024 * 1024;
+
+  public static final String BULK_API_JOBS_JOURNAL_FSYNC_INTERVAL_KEY =
+      "spring.bulk.api.jobs.journal.fsync-interval";
+  public static final long BULK_API_JOBS_JOURNAL_FSYNC_INTERVAL_DEFAULT = 1000L;
+
+  public static final String BULK_API_JOBS_JOURNAL_REDACTED_HEADERS_KEY =
+      "spring.bulk.api.jobs.journal.redacted-headers";
+  public static final String BULK_API_JOBS_JOURNAL_REDACTED_HEADERS_DEFAULT =
+      "Authorization,Proxy-Authorization,Cookie";
+
+  public static final String BULK_API_METRICS_KEY =
+      "spring.bulk.api.metrics.enabled";
+  public static final boolean BULK_API_METRICS_DEFAULT = true;
+
+  public static final String BULK_API_VALIDATION_CACHE_SIZE_KEY =
+      "spring.bulk.api.validation-cache.size";
+  public static final int BULK_API_VALIDATION_CACHE_SIZE_DEFAULT = 1000;
+
+  public static final String BULK_API_REST_TEMPLATE_BEAN_NAME =
+      "bulkApiRestTemplate";
+
+  public static final String BULK_API_CLIENT_MAX_CONNECTIONS_KEY =
+      "spring.bulk.api.client.max-connections";
+  public static final int BULK_API_CLIENT_MAX_CONNECTIONS_DEFAULT = 200;
+
+  public static final String BULK_API_CLIENT_KEEP_ALIVE_KEY =
+      "spring.bulk.api.client.keep-alive";
+  public static final long BULK_API_CLIENT_KEEP_ALIVE_DEFAULT = 30000L;
+
+  public static final String BULK_API_CLIENT_CONNECTION_TTL_KEY =
+      "spring.bulk.api.client.connection-ttl";
+  public static final long BULK_API_CLIENT_CONNECTION_TTL_DEFAULT = 0L;
+
+  public static final String BULK_API_CLIENT_CONNECT_TIMEOUT_KEY =
+      "spring.bulk.api.client.connect-timeout";
+  public static final int BULK_API_CLIENT_CONNECT_TIMEOUT_DEFAULT = 0;
+
+  public static final String BULK_API_CLIENT_READ_TIMEOUT_KEY =
+      "spring.bulk.api.client.read-timeout";
+  public static final int BULK_API_CLIENT_READ_TIMEOUT_DEFAULT = 0;
+
+  /**
+   * Registers the {@link BulkCompressionFilter}. The async dispatch is
+   * included, so compressed streaming responses can be finished.
+   * 
+   * @param env
+   *          the Spring {@link Environment}
+   * @return a {@link FilterRegistrationBean}
+   */
+  @Bean
+  FilterRegistrationBean<BulkCompressionFilter> bulkCompressionFilter(
+      Environment env) {
+    FilterRegistrationBean<BulkCompressionFilter> registration =
+        new FilterRegistrationBean<>(new BulkCompressionFilter(env));
+    registration.setDispatcherTypes(DispatcherType.REQUEST,
+        DispatcherType.ASYNC);
+    // Runs before the BulkAdmissionFilter, so decoded bytes are counted
+    registration.setOrder(Ordered.LOWEST_PRECEDENCE - 1);
+    return registration;
+  }
+
+  /**
+   * Registers the {@link BulkAdmissionFilter}, which limits the bytes of bulk
+   * request bodies.
+   * 
+   * @param env
+   *          the Spring {@link Environment}
+   * @return a {@link FilterRegistrationBean}
+   */
+  @Bean
+  FilterRegistrationBean<BulkAdmissionFilter> bulkAdmissionFilter(
+      Environment env) {
+    FilterRegistrationBean<BulkAdmissionFilter> registration =
+        new FilterRegistrationBean<>(new BulkAdmissionFilter(env));
+    registration.setOrder(Ordered.LOWEST_PRECEDENCE);
+    return registration;
+  }
+
+  /**
+   * Imports the {@link BulkApiClientConfig} after all the configurations of
+   * the Web App, so its beans can be replaced by the ones of the Web App.
+   */
+  static final class ClientConfigSelector implements DeferredImportSelector {
+
+    @Override
+    public String[] selectImports(AnnotationMetadata importingClassMetadata) {
+      return new String[] { BulkApiClientConfig.class.getName() };
+    }
+
+  }
+
 }
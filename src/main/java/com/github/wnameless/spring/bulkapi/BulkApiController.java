@@ -17,15 +17,54 @@
  */
 package com.github.wnameless.spring.bulkapi;
 
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_MAX_WAIT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_MAX_WAIT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_POOL_SIZE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_POOL_SIZE_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_TTL_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_TTL_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_STREAM_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_STREAM_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_STREAM_MEDIA_TYPE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.boot.web.server.WebServer;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkApiService.PreparedBulk;
 
 /**
  * 
@@ -33,7 +72,7 @@ import org.springframework.web.bind.annotation.RestController;
  *
  */
 @RestController
-public class BulkApiController {
+public class BulkApiController implements DisposableBean {
 
   @Autowired
   ApplicationContext appCtx;
@@ -41,28 +80,269 @@ public class BulkApiController {
   @Autowired(required = false)
   BulkApiService bulkApiService;
 
-  private BulkApiService bulkApiService() {
+  private DefaultBulkApiService defaultBulkApiService;
+  private ObjectMapper mapper;
+  private BulkJobManager jobManager;
+
+  private synchronized BulkApiService bulkApiService() {
     if (bulkApiService == null) {
-      bulkApiService = new DefaultBulkApiService(appCtx);
+      defaultBulkApiService = new DefaultBulkApiService(appCtx);
+      bulkApiService = defaultBulkApiService;
     }
     return bulkApiService;
   }
 
+  private synchronized ObjectMapper mapper() {
+    if (mapper == null) {
+      mapper = appCtx.getBeanProvider(ObjectMapper.class)
+          .getIfUnique(ObjectMapper::new);
+    }
+    return mapper;
+  }
+
+  private synchronized BulkJobManager jobManager() {
+    if (jobManager == null) {
+      Environment env = appCtx.getEnvironment();
+      int poolSize = env.getProperty(BULK_API_JOBS_POOL_SIZE_KEY, int.class,
+          BULK_API_JOBS_POOL_SIZE_DEFAULT);
+      long ttl = env.getProperty(BULK_API_JOBS_TTL_KEY, long.class,
+          BULK_API_JOBS_TTL_DEFAULT);
+      BulkJobStore store = appCtx.getBeanProvider(BulkJobStore.class)
+          .getIfUnique(() -> new InMemoryBulkJobStore(ttl));
+      jobManager = new BulkJobManager(
+          BulkExecutors.newPlatformThreadExecutor(poolSize), store,
+          BulkJobJournal.of(env, mapper()));
+      jobManager.resume(bulkApiService(),
+          appCtx instanceof WebApplicationContext
+              ? ((WebApplicationContext) appCtx).getServletContext() : null,
+          baseUrl());
+    }
+    return jobManager;
+  }
+
+  /**
+   * Returns the base URL of the running Web server, or null if it's unknown.
+   */
+  private URI baseUrl() {
+    if (!(appCtx instanceof WebServerApplicationContext)) return null;
+    WebServer webServer = ((WebServerApplicationContext) appCtx).getWebServer();
+    if (webServer == null || webServer.getPort() <= 0) return null;
+
+    Environment env = appCtx.getEnvironment();
+    String scheme = env.getProperty("server.ssl.enabled", boolean.class, false)
+        ? "https" : "http";
+    return UriComponentsBuilder.newInstance().scheme(scheme)
+        .host(env.getProperty("server.address", "localhost"))
+        .port(webServer.getPort()).build().toUri();
+  }
+
+  /**
+   * Precompiles all bulkable routes once the application is ready, so the
+   * first bulk request doesn't have to pay for it. If the job journal is
+   * enabled, the unfinished jobs are resumed as well.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    BulkApiService service = bulkApiService();
+    if (service instanceof DefaultBulkApiService) {
+      ((DefaultBulkApiService) service).validator();
+    }
+
+    if (appCtx.getEnvironment().getProperty(BULK_API_JOBS_JOURNAL_KEY,
+        boolean.class, BULK_API_JOBS_JOURNAL_DEFAULT)) {
+      jobManager();
+    }
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    synchronized (this) {
+      if (jobManager != null) jobManager.shutdown();
+    }
+    if (defaultBulkApiService != null) defaultBulkApiService.destroy();
+  }
+
   /**
    * Processes bulk requests from API users. Returns a {@link BulkResponse}
-   * which contains all the results of the {@link BulkRequest}.
+   * which contains all the results of the {@link BulkRequest}.<br>
+   * <br>
+   * Besides JSON, the {@link BulkRequest} and the {@link BulkResponse} can be
+   * exchanged as CBOR or Smile if Jackson supports them, which embeds any
+   * JSON body of a {@link BulkResult} as a structure.<br>
+   * <br>
+   * If the API user accepts application/x-ndjson or the streaming mode is
+   * enabled, a {@link StreamingResponseBody} is returned instead, which writes
+   * each {@link BulkResult} as a line of JSON as soon as it's available.
    * 
    * @param req
    *          a {@link BulkRequest}
    * @param servReq
    *          the {@link HttpServletRequest}
-   * @return a {@link BulkResponse}
+   * @param servRes
+   *          the {@link HttpServletResponse}
+   * @return a {@link BulkResponse} or a {@link StreamingResponseBody}
    * @throws BulkApiException
    *           if this bulk request is invalid
    */
   @RequestMapping(value = "${spring.bulk.api.path:/bulk}", method = POST)
-  BulkResponse bulk(@RequestBody BulkRequest req, HttpServletRequest servReq) {
-    return bulkApiService().bulk(req, servReq);
+  Object bulk(@RequestBody BulkRequest req, HttpServletRequest servReq,
+      HttpServletResponse servRes) {
+    BulkApiService service = bulkApiService();
+    if (!isStreaming(servReq)) return service.bulk(req, servReq);
+
+    // Invalid requests are rejected before the streaming response is started
+    PreparedBulk bulk = service.prepare(req, servReq);
+    ObjectMapper mapper = mapper();
+    servRes.setContentType(BULK_API_STREAM_MEDIA_TYPE);
+    return (StreamingResponseBody) out -> {
+      try {
+        bulk.execute(result -> writeLine(mapper, out, result));
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    };
+  }
+
+  /**
+   * Processes bulk requests whose operations are sent as NDJSON, one
+   * {@link BulkOperation} per line. Operations are read and executed one at a
+   * time, so the whole bulk request is never held in memory.
+   * 
+   * @param parallel
+   *          executes all operations concurrently if it's true
+   * @param onError
+   *          continue or stop, see {@link BulkRequest#setOnError(String)}
+   * @param maxErrors
+   *          the number of failures which stops this bulk request
+   * @param timeout
+   *          the timeout in milliseconds of this bulk request
+   * @param coalesce
+   *          executes identical GET or HEAD operations once if it's true
+   * @param servReq
+   *          the {@link HttpServletRequest}
+   * @param servRes
+   *          the {@link HttpServletResponse}
+   * @return a {@link BulkResponse} or a {@link StreamingResponseBody}
+   * @throws IOException
+   *           if the request body can't be read
+   * @throws BulkApiException
+   *           if this bulk request is invalid
+   */
+  @RequestMapping(value = "${spring.bulk.api.path:/bulk}", method = POST,
+      consumes = BULK_API_STREAM_MEDIA_TYPE)
+  Object bulkOperations(
+      @RequestParam(value = "parallel", required = false) Boolean parallel,
+      @RequestParam(value = "onError", required = false) String onError,
+      @RequestParam(value = "maxErrors", required = false) Integer maxErrors,
+      @RequestParam(value = "timeout", required = false) Long timeout,
+      @RequestParam(value = "coalesce", required = false) Boolean coalesce,
+      HttpServletRequest servReq, HttpServletResponse servRes)
+      throws IOException {
+    BulkRequest req = new BulkRequest();
+    req.setParallel(parallel);
+    req.setOnError(onError);
+    req.setMaxErrors(maxErrors);
+    req.setTimeout(timeout);
+    req.setCoalesce(coalesce);
+
+    BulkApiService service = bulkApiService();
+    ObjectMapper mapper = mapper();
+    if (!isStreaming(servReq)) {
+      List<BulkResult> results = new ArrayList<>();
+      try (BulkOperationReader operations =
+          new BulkOperationReader(mapper, servReq.getInputStream())) {
+        service.bulk(req, operations, servReq, results::add);
+      }
+      return new BulkResponse(results);
+    }
+
+    servRes.setContentType(BULK_API_STREAM_MEDIA_TYPE);
+    return (StreamingResponseBody) out -> {
+      try (BulkOperationReader operations =
+          new BulkOperationReader(mapper, servReq.getInputStream())) {
+        service.bulk(req, operations, servReq,
+            result -> writeLine(mapper, out, result));
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    };
+  }
+
+  /**
+   * Accepts a {@link BulkRequest} as a {@link BulkJob} which runs in the
+   * background, and returns the job right away without any result.
+   * 
+   * @param req
+   *          a {@link BulkRequest}
+   * @param servReq
+   *          the {@link HttpServletRequest}
+   * @return a {@link BulkJob} with the 202 status and its location
+   * @throws BulkApiException
+   *           if the job is invalid or no more job can be accepted
+   */
+  @RequestMapping(value = "${spring.bulk.api.path:/bulk}/jobs", method = POST)
+  ResponseEntity<BulkJob> submitJob(@RequestBody BulkRequest req,
+      HttpServletRequest servReq) {
+    BulkJob job = jobManager().submit(bulkApiService(), req, servReq);
+
+    URI location = URI.create(
+        servReq.getRequestURL().append('/').append(job.getId()).toString());
+    return ResponseEntity.accepted().location(location).body(job);
+  }
+
+  /**
+   * Returns the state of a {@link BulkJob} with its results starting from the
+   * given index. If the wait time is positive and there is no such result yet,
+   * the response is held until there is or the job is finished.
+   * 
+   * @param id
+   *          the id of a {@link BulkJob}
+   * @param from
+   *          the index of the first result to return
+   * @param wait
+   *          the maximum time to wait in milliseconds, which is limited by
+   *          <i>spring.bulk.api.jobs.max-wait</i>
+   * @param servReq
+   *          the {@link HttpServletRequest}
+   * @return a {@link BulkJob} or a {@link DeferredResult} of it
+   * @throws BulkApiException
+   *           if the job doesn't exist
+   */
+  @RequestMapping(value = "${spring.bulk.api.path:/bulk}/jobs/{id}",
+      method = GET)
+  Object pollJob(@PathVariable("id") String id,
+      @RequestParam(value = "from", defaultValue = "0") int from,
+      @RequestParam(value = "wait", defaultValue = "0") long wait,
+      HttpServletRequest servReq) {
+    long maxWait = appCtx.getEnvironment().getProperty(
+        BULK_API_JOBS_MAX_WAIT_KEY, long.class, BULK_API_JOBS_MAX_WAIT_DEFAULT);
+    return jobManager().poll(id, from, Math.min(wait, maxWait), servReq);
+  }
+
+  private boolean isStreaming(HttpServletRequest servReq) {
+    String accept = servReq.getHeader(HttpHeaders.ACCEPT);
+    if (accept != null) {
+      MediaType ndjson = MediaType.valueOf(BULK_API_STREAM_MEDIA_TYPE);
+      try {
+        for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+          if (ndjson.includes(mediaType)) return true;
+        }
+      } catch (InvalidMediaTypeException e) {}
+    }
+
+    return appCtx.getEnvironment().getProperty(BULK_API_STREAM_KEY,
+        boolean.class, BULK_API_STREAM_DEFAULT);
+  }
+
+  private static void writeLine(ObjectMapper mapper, OutputStream out,
+      BulkResult result) {
+    try {
+      out.write(mapper.writeValueAsBytes(result));
+      out.write('\n');
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
 }
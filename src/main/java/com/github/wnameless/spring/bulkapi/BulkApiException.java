@@ -31,6 +31,7 @@ public final class BulkApiException extends RuntimeException {
 
   private final HttpStatus status;
   private final String error;
+  private final long retryAfter;
 
   /**
    * Creates a {@link BulkApiException}.
@@ -41,11 +42,26 @@ public final class BulkApiException extends RuntimeException {
    *          message
    */
   public BulkApiException(HttpStatus status, String error) {
+    this(status, error, 0);
+  }
+
+  /**
+   * Creates a {@link BulkApiException} which tells the API user when to retry.
+   * 
+   * @param status
+   *          a {@link HttpStatus}
+   * @param error
+   *          message
+   * @param retryAfter
+   *          seconds to wait before retrying, 0 if unknown
+   */
+  public BulkApiException(HttpStatus status, String error, long retryAfter) {
     if (status == null) throw new NullPointerException();
     if (error == null) throw new NullPointerException();
 
     this.status = status;
     this.error = error;
+    this.retryAfter = retryAfter;
   }
 
   /**
@@ -66,6 +82,15 @@ public final class BulkApiException extends RuntimeException {
     return error;
   }
 
+  /**
+   * Returns the seconds to wait before retrying, or 0 if unknown.
+   * 
+   * @return seconds to wait before retrying
+   */
+  public long getRetryAfter() {
+    return retryAfter;
+  }
+
   @Override
   public String toString() {
     return getClass().getSimpleName() + "{status=" + status + ", error=" + error
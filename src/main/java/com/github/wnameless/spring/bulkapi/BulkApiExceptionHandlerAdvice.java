@@ -19,6 +19,7 @@ package com.github.wnameless.spring.bulkapi;
 
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
@@ -33,7 +34,8 @@ import org.springframework.web.bind.annotation.ResponseBody;
 public class BulkApiExceptionHandlerAdvice {
 
   /**
-   * Sets the proper HTTP status code and returns the error message.
+   * Sets the proper HTTP status code, along with Retry-After if it's known,
+   * and returns the error message.
    * 
    * @param servRes
    *          a {@link HttpServletResponse}
@@ -45,6 +47,10 @@ public class BulkApiExceptionHandlerAdvice {
   @ResponseBody
   String handleError(HttpServletResponse servRes, BulkApiException exception) {
     servRes.setStatus(exception.getStatus().value());
+    if (exception.getRetryAfter() > 0) {
+      servRes.setHeader(HttpHeaders.RETRY_AFTER,
+          String.valueOf(exception.getRetryAfter()));
+    }
     return exception.getError();
   }
 
@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.ClassUtils;
+
+/**
+ * 
+ * {@link BulkApiMetrics} records the metrics of bulk requests. This base class
+ * records nothing, it's used when Micrometer isn't on the classpath or no
+ * MeterRegistry bean is present.
+ *
+ */
+class BulkApiMetrics {
+
+  static final BulkApiMetrics NOOP = new BulkApiMetrics();
+
+  private static final boolean micrometerPresent =
+      ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry",
+          BulkApiMetrics.class.getClassLoader());
+
+  /**
+   * Returns a {@link BulkApiMetrics} backed by the MeterRegistry bean of given
+   * {@link ApplicationContext} if it exists.
+   * 
+   * @param appCtx
+   *          the Spring {@link ApplicationContext}
+   * @return a {@link BulkApiMetrics}
+   */
+  static BulkApiMetrics of(ApplicationContext appCtx) {
+    if (!micrometerPresent) return NOOP;
+    return MicrometerBulkApiMetrics.of(appCtx);
+  }
+
+  /**
+   * Records a bulk request which has been planned and executed.
+   * 
+   * @param operations
+   *          the number of planned operations
+   * @param validationNanos
+   *          the time spent in validation
+   * @param executionNanos
+   *          the time spent in execution
+   * @param success
+   *          false if the bulk request ended with an exception
+   */
+  void recordBulk(int operations, long validationNanos, long executionNanos,
+      boolean success) {}
+
+  /**
+   * Records a bulk request which has been rejected before execution.
+   * 
+   * @param status
+   *          the HTTP status of the rejection
+   */
+  void recordRejection(HttpStatus status) {}
+
+  /**
+   * Records a bulk operation which has been rejected with its own result,
+   * while the rest of its bulk request goes on.
+   * 
+   * @param status
+   *          the HTTP status of the rejection
+   */
+  void recordOperationRejection(HttpStatus status) {}
+
+  /**
+   * Records an executed bulk operation.
+   * 
+   * @param plan
+   *          the {@link BulkOperationPlan}
+   * @param status
+   *          the HTTP status code, 0 if it's unknown
+   * @param nanos
+   *          the latency of the operation
+   */
+  void recordOperation(BulkOperationPlan plan, int status, long nanos) {}
+
+  /**
+   * Records a lookup of the response cache.
+   * 
+   * @param result
+   *          hit, miss or revalidated
+   */
+  void recordCacheLookup(String result) {}
+
+  /**
+   * Records a response evicted from the response cache.
+   */
+  void recordCacheEviction() {}
+
+  /**
+   * Records an operation rejected by its bulkhead.
+   * 
+   * @param plan
+   *          the {@link BulkOperationPlan}
+   */
+  void recordBulkheadRejection(BulkOperationPlan plan) {}
+
+}
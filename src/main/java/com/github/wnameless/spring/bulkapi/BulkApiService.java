@@ -17,6 +17,11 @@
  */
 package com.github.wnameless.spring.bulkapi;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
 import javax.servlet.http.HttpServletRequest;
 
 /**
@@ -39,4 +44,144 @@ public interface BulkApiService {
    */
   public BulkResponse bulk(BulkRequest req, HttpServletRequest servReq);
 
+  /**
+   * Processes the given {@link BulkRequest} and passes each {@link BulkResult}
+   * to the given consumer in request order. The request is fully validated
+   * before the first result is passed.<br>
+   * <br>
+   * By default, all results are buffered by
+   * {@link #bulk(BulkRequest, HttpServletRequest)} at first. Implementations
+   * should override this method to pass results as soon as they're available.
+   * 
+   * @param req
+   *          a {@link BulkRequest}
+   * @param servReq
+   *          a {@link HttpServletRequest}
+   * @param consumer
+   *          receives each {@link BulkResult}
+   */
+  default void bulk(BulkRequest req, HttpServletRequest servReq,
+      Consumer<? super BulkResult> consumer) {
+    bulk(req, servReq).getResults().forEach(consumer);
+  }
+
+  /**
+   * Validates the given {@link BulkRequest} right away, and returns a
+   * {@link PreparedBulk} which processes it later. An invalid request is
+   * rejected by this method, before any response is started.<br>
+   * <br>
+   * By default, the request is validated by
+   * {@link #bulk(BulkRequest, HttpServletRequest, Consumer)} at the time it's
+   * processed. Implementations should override this method to validate it
+   * beforehand.
+   * 
+   * @param req
+   *          a {@link BulkRequest}
+   * @param servReq
+   *          a {@link HttpServletRequest}
+   * @return a {@link PreparedBulk}
+   */
+  default PreparedBulk prepare(BulkRequest req, HttpServletRequest servReq) {
+    return consumer -> bulk(req, servReq, consumer);
+  }
+
+  /**
+   * Validates the given {@link BulkRequest} as a {@link BulkJob} right away,
+   * and returns a {@link PreparedBulk} which processes it in the background.
+   * An invalid job is rejected by this method, before it's accepted.<br>
+   * <br>
+   * By default, the job is prepared by
+   * {@link #prepare(BulkRequest, HttpServletRequest)}. Implementations should
+   * override this method if jobs are limited differently from bulk requests.
+   * 
+   * @param req
+   *          a {@link BulkRequest}
+   * @param servReq
+   *          a {@link HttpServletRequest} which outlives the job submission
+   * @return a {@link PreparedBulk}
+   */
+  default PreparedBulk prepareJob(BulkRequest req,
+      HttpServletRequest servReq) {
+    return prepare(req, servReq);
+  }
+
+  /**
+   * Validates the given {@link BulkRequest} of a {@link BulkJob} again, which
+   * has completed the given results before it stopped, and returns a
+   * {@link PreparedBulk} which processes the rest of it. The completed results
+   * should be regarded as the outcomes of the leading operations, so the rest
+   * can still depend on them.<br>
+   * <br>
+   * By default, only the operations after the one of the last completed result
+   * are prepared by {@link #prepareJob(BulkRequest, HttpServletRequest)}, so
+   * they can't depend on the completed ones. Implementations should override
+   * this method to resume the whole job.
+   * 
+   * @param req
+   *          a {@link BulkRequest}
+   * @param completed
+   *          the {@link BulkResult}s completed before
+   * @param servReq
+   *          a {@link HttpServletRequest} which outlives the job
+   * @return a {@link PreparedBulk}
+   */
+  default PreparedBulk resumeJob(BulkRequest req, List<BulkResult> completed,
+      HttpServletRequest servReq) {
+    List<BulkOperation> operations = req.getOperations();
+    int index = 0;
+    // Silent operations produce no result, so they're skipped over
+    for (int count = 0; count < completed.size()
+        && index < operations.size(); index++) {
+      if (!operations.get(index).isSilent()) count++;
+    }
+    req.setOperations(
+        new ArrayList<>(operations.subList(index, operations.size())));
+    return prepareJob(req, servReq);
+  }
+
+  /**
+   * Processes the given operations one by one while they are iterated, and
+   * passes each {@link BulkResult} to the given consumer in request order.
+   * Every operation is validated when it arrives, so the operations before an
+   * invalid one may have been executed already.<br>
+   * <br>
+   * By default, all operations are collected into the given
+   * {@link BulkRequest} at first. Implementations should override this method
+   * to execute operations as soon as they're read.
+   * 
+   * @param req
+   *          a {@link BulkRequest} which carries the settings of this bulk
+   * @param operations
+   *          an {@link Iterator} of {@link BulkOperation}s
+   * @param servReq
+   *          a {@link HttpServletRequest}
+   * @param consumer
+   *          receives each {@link BulkResult}
+   */
+  default void bulk(BulkRequest req, Iterator<BulkOperation> operations,
+      HttpServletRequest servReq, Consumer<? super BulkResult> consumer) {
+    operations.forEachRemaining(req.getOperations()::add);
+    bulk(req, servReq, consumer);
+  }
+
+  /**
+   * 
+   * {@link PreparedBulk} is a validated bulk request which is ready to be
+   * processed.
+   *
+   */
+  @FunctionalInterface
+  public interface PreparedBulk {
+
+    /**
+     * Processes the bulk request and passes each {@link BulkResult} to the
+     * given consumer in request order.
+     * 
+     * @param consumer
+     *          receives each {@link BulkResult}
+     */
+    void execute(Consumer<? super BulkResult> consumer);
+
+  }
+
 }
@@ -17,38 +17,61 @@
  */
 package com.github.wnameless.spring.bulkapi;
 
-import java.lang.annotation.Annotation;
-import java.util.List;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_VALIDATION_CACHE_SIZE_DEFAULT;
+
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import org.springframework.context.ApplicationContext;
 import org.springframework.http.HttpMethod;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMethod;
 
-import com.github.wnameless.spring.routing.RoutingPath;
 import com.github.wnameless.spring.routing.RoutingPathResolver;
 
-import net.sf.rubycollect4j.Ruby;
-
 /**
  * 
  * {@link BulkApiValidator} can check all bulk request paths and methods whether
- * bulkable or not.
+ * bulkable or not.<br>
+ * <br>
+ * All routes are precompiled into an immutable route table when the validator
+ * is created. Validation results are cached per request path and method, so a
+ * cached path skips the scan of the route table.
  *
  */
 public class BulkApiValidator {
 
-  private final RoutingPathResolver pathRes;
+  private final BulkRouteTable routeTable;
+  private final BoundedCache<String, PathValidationResult> cache;
 
+  /**
+   * Creates a {@link BulkApiValidator}.
+   * 
+   * @param appCtx
+   *          the Spring {@link ApplicationContext}
+   */
   public BulkApiValidator(ApplicationContext appCtx) {
+    this(appCtx, BULK_API_VALIDATION_CACHE_SIZE_DEFAULT);
+  }
+
+  /**
+   * Creates a {@link BulkApiValidator} which caches at most given number of
+   * validation results.
+   * 
+   * @param appCtx
+   *          the Spring {@link ApplicationContext}
+   * @param cacheSize
+   *          the max number of cached validation results
+   */
+  public BulkApiValidator(ApplicationContext appCtx, int cacheSize) {
+    cache = new BoundedCache<>(cacheSize);
+
     Map<String, Object> bulkableBeans =
         appCtx.getBeansWithAnnotation(Bulkable.class);
     String[] basePackageNames = bulkableBeans.values().stream()
         .map(o -> o.getClass().getPackage().getName()).toArray(String[]::new);
 
-    pathRes = new RoutingPathResolver(appCtx, basePackageNames);
+    RoutingPathResolver pathRes =
+        new RoutingPathResolver(appCtx, basePackageNames);
+    routeTable = new BulkRouteTable(pathRes.getRoutingPaths());
   }
 
   /**
@@ -61,42 +84,43 @@ public class BulkApiValidator {
    * @return true if request path and method is bulkable, false otherwise
    */
   public PathValidationResult validatePath(String path, HttpMethod method) {
-    RoutingPath rp = pathRes.findByRequestPathAndMethod(path,
-        RequestMethod.valueOf(method.toString()));
-
-    if (rp == null) return new PathValidationResult(false, false);
-
-    Annotation bulkable = findBulkableAnno(rp);
-    if (bulkable != null) {
-      if (isAutoApply(bulkable) || isAcceptBulk(rp))
-        return new PathValidationResult(true, hasRequestBody(rp));
-    }
-
-    return new PathValidationResult(false, false);
-  }
-
-  private boolean hasRequestBody(RoutingPath rp) {
-    for (List<Annotation> annos : rp.getParameterAnnotations()) {
-      if (Ruby.Array.of(annos).map(Annotation::annotationType)
-          .contains(RequestBody.class))
-        return true;
-    }
-    return false;
+    return cache.get(method + " " + path, key -> {
+      BulkRoute route =
+          routeTable.find(path, RequestMethod.valueOf(method.toString()));
+      if (route == null || !route.acceptsBulk()) {
+        return new PathValidationResult(false, false);
+      }
+
+      return new PathValidationResult(true, route.hasRequestBody(),
+          route.getPath());
+    });
   }
 
-  private boolean isAcceptBulk(RoutingPath rp) {
-    return rp.getMethodAnnotations().stream().map(Annotation::annotationType)
-        .collect(Collectors.toList()).contains(AcceptBulk.class);
+  /**
+   * Returns the number of precompiled routes.
+   * 
+   * @return the number of routes
+   */
+  public int getRouteCount() {
+    return routeTable.getRoutes().size();
   }
 
-  private boolean isAutoApply(Annotation bulkable) {
-    return ((Bulkable) bulkable).autoApply();
+  /**
+   * Returns the number of validations served by the cache.
+   * 
+   * @return the cache hit count
+   */
+  public long getCacheHitCount() {
+    return cache.getHitCount();
   }
 
-  private Annotation findBulkableAnno(RoutingPath rp) {
-    return rp.getClassAnnotations().stream()
-        .filter(item -> item.annotationType().equals(Bulkable.class))
-        .findFirst().orElse(null);
+  /**
+   * Returns the number of validations which were not cached.
+   * 
+   * @return the cache miss count
+   */
+  public long getCacheMissCount() {
+    return cache.getMissCount();
   }
 
 }
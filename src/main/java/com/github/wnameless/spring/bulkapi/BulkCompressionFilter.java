@@ -0,0 +1,423 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_ENCODINGS_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_ENCODINGS_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_LOOPBACK_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_LOOPBACK_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_MAX_INFLATED_SIZE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_MAX_INFLATED_SIZE_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PATH_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PATH_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkRestTemplateFactory.LOOPBACK_HEADER;
+import static org.springframework.http.HttpStatus.PAYLOAD_TOO_LARGE;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * 
+ * {@link BulkCompressionFilter} decodes compressed bulk request bodies by
+ * their Content-Encoding, and compresses bulk responses by the coding
+ * negotiated from Accept-Encoding. Streaming responses are flushed line by
+ * line through the compressor. A decoded body is rejected with status 413 once
+ * it inflates beyond the max inflated size.<br>
+ * <br>
+ * If the loopback compression is enabled, compressed bodies of the
+ * sub-requests sent back by bulk operations are decoded as well. Outside the
+ * bulk path, only the requests marked by the loopback token are decoded.
+ *
+ */
+final class BulkCompressionFilter extends OncePerRequestFilter {
+
+  private final boolean enabled;
+  private final boolean loopback;
+  private final String loopbackToken;
+  private final long maxInflatedSize;
+  private final String bulkPath;
+  private final List<BulkContentCoding> codings;
+
+  /**
+   * Creates a {@link BulkCompressionFilter} configured by the
+   * <i>spring.bulk.api.compression.*</i> properties.
+   * 
+   * @param env
+   *          the Spring {@link Environment}
+   */
+  public BulkCompressionFilter(Environment env) {
+    enabled = env.getProperty(BULK_API_COMPRESSION_KEY, boolean.class,
+        BULK_API_COMPRESSION_DEFAULT);
+    loopback = env.getProperty(BULK_API_COMPRESSION_LOOPBACK_KEY,
+        boolean.class, BULK_API_COMPRESSION_LOOPBACK_DEFAULT);
+    loopbackToken =
+        loopback ? BulkRestTemplateFactory.loopbackToken(env) : null;
+    maxInflatedSize = env.getProperty(
+        BULK_API_COMPRESSION_MAX_INFLATED_SIZE_KEY, long.class,
+        BULK_API_COMPRESSION_MAX_INFLATED_SIZE_DEFAULT);
+    String path =
+        env.getProperty(BULK_API_PATH_KEY, BULK_API_PATH_DEFAULT).trim();
+    bulkPath = path.startsWith("/") ? path : "/" + path;
+    codings = BulkContentCoding.listOf(env.getProperty(
+        BULK_API_COMPRESSION_ENCODINGS_KEY,
+        BULK_API_COMPRESSION_ENCODINGS_DEFAULT));
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    if (loopback && isLoopback(request)) return false;
+    return !enabled || !isBulkPath(request);
+  }
+
+  @Override
+  protected boolean shouldNotFilterAsyncDispatch() {
+    // Streaming responses are finished in the async dispatch
+    return false;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request,
+      HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    EncodingResponse encodingResponse =
+        WebUtils.getNativeResponse(response, EncodingResponse.class);
+
+    if (!isAsyncDispatch(request)) {
+      String contentEncoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+      if (contentEncoding != null
+          && !"identity".equalsIgnoreCase(contentEncoding.trim())) {
+        BulkContentCoding coding = BulkContentCoding.of(contentEncoding);
+        if (coding == null || !coding.isAvailable()) {
+          if (isBulkPath(request)) {
+            response.sendError(
+                HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                "Unsupported Content-Encoding(" + contentEncoding + ")");
+            return;
+          }
+        } else {
+          request = new DecodingRequest(request, coding, maxInflatedSize);
+        }
+      }
+
+      if (enabled && isBulkPath(request)) {
+        BulkContentCoding coding = BulkContentCoding.negotiate(
+            request.getHeader(HttpHeaders.ACCEPT_ENCODING), codings);
+        if (coding != null) {
+          encodingResponse = new EncodingResponse(response, coding);
+          response = encodingResponse;
+        }
+      }
+    }
+
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      if (encodingResponse != null && !isAsyncStarted(request)) {
+        encodingResponse.finish();
+      }
+    }
+  }
+
+  private boolean isBulkPath(HttpServletRequest request) {
+    String path =
+        request.getRequestURI().substring(request.getContextPath().length());
+    return path.equals(bulkPath) || path.startsWith(bulkPath + "/");
+  }
+
+  private boolean isLoopback(HttpServletRequest request) {
+    return request.getHeader(HttpHeaders.CONTENT_ENCODING) != null
+        && loopbackToken.equals(request.getHeader(LOOPBACK_HEADER));
+  }
+
+  private static final class DecodingRequest extends HttpServletRequestWrapper {
+
+    private final BulkContentCoding coding;
+    private final long maxSize;
+    private ServletInputStream inputStream;
+    private BufferedReader reader;
+
+    DecodingRequest(HttpServletRequest request, BulkContentCoding coding,
+        long maxSize) {
+      super(request);
+      this.coding = coding;
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+      if (inputStream == null) {
+        InputStream decoded = coding.decode(super.getInputStream());
+        inputStream = new ServletInputStream() {
+
+          private boolean finished;
+          private long count;
+
+          @Override
+          public int read() throws IOException {
+            int b = decoded.read();
+            if (b == -1) {
+              finished = true;
+            } else {
+              count(1);
+            }
+            return b;
+          }
+
+          @Override
+          public int read(byte[] b, int off, int len) throws IOException {
+            int n = decoded.read(b, off, len);
+            if (n == -1) {
+              finished = true;
+            } else {
+              count(n);
+            }
+            return n;
+          }
+
+          private void count(int n) {
+            count += n;
+            if (maxSize > 0 && count > maxSize) {
+              throw new BulkApiException(PAYLOAD_TOO_LARGE,
+                  "Decoded request body exceeds the limitation(" + maxSize
+                      + " bytes)");
+            }
+          }
+
+          @Override
+          public boolean isFinished() {
+            return finished;
+          }
+
+          @Override
+          public boolean isReady() {
+            return true;
+          }
+
+          @Override
+          public void setReadListener(ReadListener readListener) {
+            throw new UnsupportedOperationException();
+          }
+
+          @Override
+          public void close() throws IOException {
+            decoded.close();
+          }
+
+        };
+      }
+      return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+      if (reader == null) {
+        String charset = getCharacterEncoding();
+        reader = new BufferedReader(new InputStreamReader(getInputStream(),
+            charset != null ? charset : WebUtils.DEFAULT_CHARACTER_ENCODING));
+      }
+      return reader;
+    }
+
+    @Override
+    public int getContentLength() {
+      return -1;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+      return -1;
+    }
+
+    @Override
+    public String getHeader(String name) {
+      return isHidden(name) ? null : super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+      return isHidden(name) ? Collections.emptyEnumeration()
+          : super.getHeaders(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+      List<String> names = Collections.list(super.getHeaderNames());
+      names.removeIf(DecodingRequest::isHidden);
+      return Collections.enumeration(names);
+    }
+
+    /**
+     * The body is decoded, so its original encoding and length are hidden, and
+     * so is the loopback token.
+     */
+    private static boolean isHidden(String name) {
+      return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)
+          || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)
+          || LOOPBACK_HEADER.equalsIgnoreCase(name);
+    }
+
+  }
+
+  private static final class EncodingResponse
+      extends HttpServletResponseWrapper {
+
+    private final BulkContentCoding coding;
+    private OutputStream encoder;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    EncodingResponse(HttpServletResponse response, BulkContentCoding coding) {
+      super(response);
+      this.coding = coding;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (outputStream == null) {
+        ServletOutputStream original = super.getOutputStream();
+        if (!isCompressible()) return original;
+
+        setHeader(HttpHeaders.CONTENT_ENCODING, coding.getToken());
+        addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        encoder = coding.encode(original);
+        outputStream = new ServletOutputStream() {
+
+          @Override
+          public void write(int b) throws IOException {
+            encoder.write(b);
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            encoder.write(b, off, len);
+          }
+
+          @Override
+          public void flush() throws IOException {
+            encoder.flush();
+          }
+
+          @Override
+          public void close() throws IOException {
+            finish();
+          }
+
+          @Override
+          public boolean isReady() {
+            return original.isReady();
+          }
+
+          @Override
+          public void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException();
+          }
+
+        };
+      }
+      return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        try {
+          writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+              getCharacterEncoding()));
+        } catch (UnsupportedEncodingException e) {
+          throw new IOException(e);
+        }
+      }
+      return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      if (writer != null) writer.flush();
+      if (outputStream != null) outputStream.flush();
+      super.flushBuffer();
+    }
+
+    // The length of compressed body is unknown until it's finished
+    @Override
+    public void setContentLength(int len) {}
+
+    @Override
+    public void setContentLengthLong(long len) {}
+
+    @Override
+    public void setHeader(String name, String value) {
+      if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+        super.setHeader(name, value);
+      }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+      if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+        super.addHeader(name, value);
+      }
+    }
+
+    private boolean isCompressible() {
+      int status = getStatus();
+      return status != SC_NO_CONTENT && status != SC_NOT_MODIFIED
+          && getHeader(HttpHeaders.CONTENT_ENCODING) == null;
+    }
+
+    /**
+     * Writes the rest of the compressed body, if anything has been written.
+     */
+    void finish() throws IOException {
+      if (writer != null) writer.flush();
+      if (encoder != null) {
+        OutputStream finishing = encoder;
+        encoder = null;
+        finishing.close();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,266 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * 
+ * {@link BulkContentCoding} lists the HTTP content codings supported by bulk
+ * requests and responses.<br>
+ * <br>
+ * The zstd coding is only available if zstd-jni is on the classpath.
+ *
+ */
+enum BulkContentCoding {
+
+  ZSTD("zstd") {
+
+    @Override
+    InputStream decode(InputStream in) throws IOException {
+      return Zstd.newStream(Zstd.INPUT, InputStream.class, in);
+    }
+
+    @Override
+    OutputStream encode(OutputStream out) throws IOException {
+      return Zstd.newStream(Zstd.OUTPUT, OutputStream.class, out);
+    }
+
+    @Override
+    boolean isAvailable() {
+      return Zstd.INPUT != null && Zstd.OUTPUT != null;
+    }
+
+  },
+
+  GZIP("gzip") {
+
+    @Override
+    InputStream decode(InputStream in) throws IOException {
+      return new GZIPInputStream(in);
+    }
+
+    @Override
+    OutputStream encode(OutputStream out) throws IOException {
+      // Sync flush passes every flushed line of the streaming mode through
+      return new GZIPOutputStream(out, true);
+    }
+
+  },
+
+  DEFLATE("deflate") {
+
+    @Override
+    InputStream decode(InputStream in) throws IOException {
+      return new InflaterInputStream(in);
+    }
+
+    @Override
+    OutputStream encode(OutputStream out) throws IOException {
+      return new DeflaterOutputStream(out, new Deflater(), true);
+    }
+
+  };
+
+  private final String token;
+
+  private BulkContentCoding(String token) {
+    this.token = token;
+  }
+
+  /**
+   * Returns the token of this coding in HTTP headers.
+   * 
+   * @return a content coding token
+   */
+  String getToken() {
+    return token;
+  }
+
+  /**
+   * Wraps the given stream to decode data of this coding.
+   * 
+   * @param in
+   *          an {@link InputStream} of encoded data
+   * @return an {@link InputStream} of decoded data
+   * @throws IOException
+   *           if the stream can't be decoded
+   */
+  abstract InputStream decode(InputStream in) throws IOException;
+
+  /**
+   * Wraps the given stream to encode data by this coding. Flushing the
+   * returned stream flushes all data written so far.
+   * 
+   * @param out
+   *          an {@link OutputStream} of encoded data
+   * @return an {@link OutputStream} which accepts plain data
+   * @throws IOException
+   *           if the stream can't be created
+   */
+  abstract OutputStream encode(OutputStream out) throws IOException;
+
+  boolean isAvailable() {
+    return true;
+  }
+
+  /**
+   * Returns the {@link BulkContentCoding} of given token.
+   * 
+   * @param token
+   *          a content coding token
+   * @return a {@link BulkContentCoding} or null if it's unknown
+   */
+  static BulkContentCoding of(String token) {
+    if (token == null) return null;
+    token = token.trim();
+    for (BulkContentCoding coding : values()) {
+      if (coding.token.equalsIgnoreCase(token)) return coding;
+    }
+    // x-gzip is an alias of gzip by RFC 7230
+    return "x-gzip".equalsIgnoreCase(token) ? GZIP : null;
+  }
+
+  /**
+   * Parses a comma separated list of content codings. Unknown and unavailable
+   * codings are ignored.
+   * 
+   * @param tokens
+   *          content coding tokens, like <i>zstd,gzip</i>
+   * @return a list of {@link BulkContentCoding}
+   */
+  static List<BulkContentCoding> listOf(String tokens) {
+    List<BulkContentCoding> codings = new ArrayList<>();
+    for (String token : StringUtils.tokenizeToStringArray(tokens, ",")) {
+      BulkContentCoding coding = of(token);
+      if (coding != null && coding.isAvailable()) codings.add(coding);
+    }
+    return codings;
+  }
+
+  /**
+   * Returns the preferred coding of an Accept-Encoding header among the given
+   * codings. The highest quality wins, and ties are broken by the order of
+   * given codings.
+   * 
+   * @param acceptEncoding
+   *          an Accept-Encoding header value
+   * @param codings
+   *          the available codings in order of preference
+   * @return a {@link BulkContentCoding} or null if none is accepted
+   */
+  static BulkContentCoding negotiate(String acceptEncoding,
+      List<BulkContentCoding> codings) {
+    if (acceptEncoding == null) return null;
+
+    BulkContentCoding preferred = null;
+    double preferredQuality = 0;
+    for (BulkContentCoding coding : codings) {
+      double quality = quality(acceptEncoding, coding.token);
+      if (quality > preferredQuality) {
+        preferred = coding;
+        preferredQuality = quality;
+      }
+    }
+    return preferred;
+  }
+
+  private static double quality(String acceptEncoding, String token) {
+    double wildcard = 0;
+    for (String range : acceptEncoding.split(",")) {
+      String[] parts = range.split(";");
+      String name = parts[0].trim().toLowerCase(Locale.ROOT);
+      double quality = 1;
+      for (int i = 1; i < parts.length; i++) {
+        String param = parts[i].trim();
+        if (param.startsWith("q=") || param.startsWith("Q=")) {
+          try {
+            quality = Double.parseDouble(param.substring(2).trim());
+          } catch (NumberFormatException e) {
+            quality = 0;
+          }
+        }
+      }
+
+      if (name.equals(token)
+          || (name.equals("x-gzip") && token.equals(GZIP.token))) {
+        return quality;
+      }
+      if (name.equals("*")) wildcard = quality;
+    }
+    return wildcard;
+  }
+
+  /**
+   * Creates zstd-jni streams reflectively, so it stays an optional
+   * dependency.
+   */
+  private static final class Zstd {
+
+    static final Constructor<?> INPUT =
+        constructor("com.github.luben.zstd.ZstdInputStream", InputStream.class);
+    static final Constructor<?> OUTPUT = constructor(
+        "com.github.luben.zstd.ZstdOutputStream", OutputStream.class);
+
+    private static Constructor<?> constructor(String className,
+        Class<?> parameterType) {
+      ClassLoader classLoader = BulkContentCoding.class.getClassLoader();
+      if (!ClassUtils.isPresent(className, classLoader)) return null;
+      try {
+        return ClassUtils.forName(className, classLoader)
+            .getConstructor(parameterType);
+      } catch (ReflectiveOperationException | LinkageError e) {
+        return null;
+      }
+    }
+
+    static <T> T newStream(Constructor<?> constructor, Class<T> type,
+        Object stream) throws IOException {
+      if (constructor == null) {
+        throw new IOException("zstd-jni is not on the classpath");
+      }
+      try {
+        return type.cast(constructor.newInstance(stream));
+      } catch (InvocationTargetException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      } catch (ReflectiveOperationException e) {
+        throw new IOException(e);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PARALLEL_EXECUTOR_VIRTUAL;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * 
+ * {@link BulkExecutors} creates the {@link ExecutorService}s which run bulk
+ * operations concurrently.
+ *
+ */
+final class BulkExecutors {
+
+  private BulkExecutors() {}
+
+  /**
+   * Creates an {@link ExecutorService} of given type. A virtual thread
+   * executor falls back to a bounded platform thread pool if virtual threads
+   * are not supported by the running JVM.
+   * 
+   * @param type
+   *          platform or virtual
+   * @param poolSize
+   *          the size of the platform thread pool
+   * @return an {@link ExecutorService}
+   */
+  public static ExecutorService newExecutorService(String type, int poolSize) {
+    if (BULK_API_PARALLEL_EXECUTOR_VIRTUAL.equalsIgnoreCase(type.trim())) {
+      ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+      if (virtualThreadExecutor != null) return virtualThreadExecutor;
+    }
+    return newPlatformThreadExecutor(poolSize);
+  }
+
+  /**
+   * Creates a bounded pool of daemon platform threads.
+   * 
+   * @param poolSize
+   *          the size of the pool
+   * @return an {@link ExecutorService}
+   */
+  public static ExecutorService newPlatformThreadExecutor(int poolSize) {
+    CustomizableThreadFactory threadFactory =
+        new CustomizableThreadFactory("bulk-api-");
+    threadFactory.setDaemon(true);
+
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60L,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * Creates an {@link ExecutorService} which starts a new virtual thread for
+   * each task.
+   * 
+   * @return an {@link ExecutorService} or null if virtual threads are not
+   *         supported
+   */
+  public static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+}
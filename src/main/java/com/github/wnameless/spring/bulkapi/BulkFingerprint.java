@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 
+ * {@link BulkFingerprint} digests the JSON of bulk requests and operations by
+ * SHA-256, so an idempotency key which is reused for something else can be
+ * detected.
+ *
+ */
+final class BulkFingerprint {
+
+  private final ObjectMapper mapper;
+  private final MessageDigest digest;
+
+  private String fingerprint;
+
+  public BulkFingerprint(ObjectMapper mapper) {
+    this.mapper = mapper;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Adds the JSON of given value to this fingerprint.
+   * 
+   * @param value
+   *          any value which can be written as JSON
+   * @return this {@link BulkFingerprint}
+   */
+  public BulkFingerprint update(Object value) {
+    if (fingerprint != null) throw new IllegalStateException(
+        "Fingerprint has been computed already");
+
+    try {
+      digest.update(mapper.writeValueAsBytes(value));
+    } catch (JsonProcessingException e) {
+      throw new BulkApiException(INTERNAL_SERVER_ERROR,
+          "Unable to fingerprint " + value);
+    }
+    digest.update((byte) '\n');
+    return this;
+  }
+
+  /**
+   * Returns an {@link Iterator} which adds every element to this fingerprint
+   * while it is iterated.
+   * 
+   * @param elements
+   *          an {@link Iterator}
+   * @return an {@link Iterator}
+   */
+  public <T> Iterator<T> updating(Iterator<T> elements) {
+    return new Iterator<T>() {
+
+      @Override
+      public boolean hasNext() {
+        return elements.hasNext();
+      }
+
+      @Override
+      public T next() {
+        T element = elements.next();
+        update(element);
+        return element;
+      }
+
+    };
+  }
+
+  /**
+   * Returns the hex string of this fingerprint. Nothing can be added once it
+   * is computed.
+   * 
+   * @return a hex string
+   */
+  public String get() {
+    if (fingerprint == null) {
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest.digest()) {
+        sb.append(Character.forDigit((b >> 4) & 0xF, 16))
+            .append(Character.forDigit(b & 0xF, 16));
+      }
+      fingerprint = sb.toString();
+    }
+    return fingerprint;
+  }
+
+}
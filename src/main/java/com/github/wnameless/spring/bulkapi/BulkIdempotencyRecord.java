@@ -0,0 +1,90 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+/**
+ * 
+ * {@link BulkIdempotencyRecord} is a stored outcome of an idempotent bulk
+ * request or operation, along with the fingerprint of what was executed, so a
+ * reused key can be told apart from a retry.
+ *
+ */
+public final class BulkIdempotencyRecord {
+
+  private final String fingerprint;
+  private final BulkResponse response;
+
+  /**
+   * Creates a {@link BulkIdempotencyRecord}.
+   * 
+   * @param fingerprint
+   *          the fingerprint of the executed bulk request or operation
+   * @param response
+   *          the outcome, a {@link BulkResponse} with one {@link BulkResult}
+   *          for a single operation
+   */
+  public BulkIdempotencyRecord(String fingerprint, BulkResponse response) {
+    this.fingerprint = fingerprint;
+    this.response = response;
+  }
+
+  /**
+   * Returns the fingerprint of the executed bulk request or operation.
+   * 
+   * @return a fingerprint
+   */
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Returns the outcome of the executed bulk request or operation.
+   * 
+   * @return a {@link BulkResponse}
+   */
+  public BulkResponse getResponse() {
+    return response;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 27;
+    result = 31 ^ result + ((fingerprint == null) ? 0 : fingerprint.hashCode());
+    result = 31 ^ result + ((response == null) ? 0 : response.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) return true;
+    if (obj == null) return false;
+    if (!(obj instanceof BulkIdempotencyRecord)) return false;
+    BulkIdempotencyRecord o = (BulkIdempotencyRecord) obj;
+    return (fingerprint == null ? o.fingerprint == null
+        : fingerprint.equals(o.fingerprint))
+        && (response == null ? o.response == null
+            : response.equals(o.response));
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{fingerprint=" + fingerprint
+        + ", response=" + response + "}";
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+/**
+ * 
+ * {@link BulkIdempotencyStore} keeps the outcomes of idempotent bulk requests
+ * and operations, so a retry with the same Idempotency-Key can be answered
+ * without executing anything again. By default, an
+ * {@link InMemoryBulkIdempotencyStore} is used, but it can be replaced by
+ * providing a Spring Bean which implements this interface.<br>
+ * <br>
+ * All methods may be called concurrently from different threads.
+ *
+ */
+public interface BulkIdempotencyStore {
+
+  /**
+   * Returns the stored outcome of given key.
+   * 
+   * @param key
+   *          an idempotency key
+   * @return a {@link BulkIdempotencyRecord} or null if it doesn't exist or has
+   *         expired
+   */
+  public BulkIdempotencyRecord get(String key);
+
+  /**
+   * Stores the outcome of given key. An outcome of a single operation is
+   * stored as a {@link BulkResponse} with one {@link BulkResult}.
+   * 
+   * @param key
+   *          an idempotency key
+   * @param record
+   *          a {@link BulkIdempotencyRecord}
+   */
+  public void put(String key, BulkIdempotencyRecord record);
+
+}
@@ -0,0 +1,250 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 
+ * {@link BulkJob} represents a {@link BulkRequest} which is executed in the
+ * background. It contains the state of the job and the {@link BulkResult}s
+ * which have been completed so far.
+ *
+ */
+public final class BulkJob {
+
+  /**
+   * 
+   * {@link Status} represents the lifecycle of a {@link BulkJob}.
+   *
+   */
+  public enum Status {
+    PENDING, RUNNING, COMPLETED, FAILED;
+
+    /**
+     * Checks if a {@link BulkJob} in this status is finished.
+     * 
+     * @return true if it's either completed or failed, false otherwise
+     */
+    public boolean isFinished() {
+      return this == COMPLETED || this == FAILED;
+    }
+  }
+
+  private String id;
+  private Status status = Status.PENDING;
+  private int operations;
+  private int from;
+  private List<BulkResult> results = new ArrayList<>();
+  private String error;
+  private long createdAt;
+  private Long finishedAt;
+
+  /**
+   * Returns the id of this {@link BulkJob}.
+   * 
+   * @return an id
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Sets the id of this {@link BulkJob}.
+   * 
+   * @param id
+   *          an id
+   */
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  /**
+   * Returns the {@link Status} of this {@link BulkJob}.
+   * 
+   * @return a {@link Status}
+   */
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Sets the {@link Status} of this {@link BulkJob}.
+   * 
+   * @param status
+   *          a {@link Status}
+   */
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  /**
+   * Returns the number of operations in this {@link BulkJob}.
+   * 
+   * @return the number of operations
+   */
+  public int getOperations() {
+    return operations;
+  }
+
+  /**
+   * Sets the number of operations in this {@link BulkJob}.
+   * 
+   * @param operations
+   *          the number of operations
+   */
+  public void setOperations(int operations) {
+    this.operations = operations;
+  }
+
+  /**
+   * Returns the index of the first result in {@link #getResults()} among all
+   * results of this {@link BulkJob}.
+   * 
+   * @return the index of the first result
+   */
+  public int getFrom() {
+    return from;
+  }
+
+  /**
+   * Sets the index of the first result in {@link #getResults()} among all
+   * results of this {@link BulkJob}.
+   * 
+   * @param from
+   *          the index of the first result
+   */
+  public void setFrom(int from) {
+    this.from = from;
+  }
+
+  /**
+   * Returns the completed results of this {@link BulkJob} in request order,
+   * starting from {@link #getFrom()}.
+   * 
+   * @return a list of {@link BulkResult}s
+   */
+  public List<BulkResult> getResults() {
+    return results;
+  }
+
+  /**
+   * Sets the completed results of this {@link BulkJob}.
+   * 
+   * @param results
+   *          a list of {@link BulkResult}s
+   */
+  public void setResults(List<BulkResult> results) {
+    this.results = results;
+  }
+
+  /**
+   * Returns the error message if this {@link BulkJob} is failed.
+   * 
+   * @return an error message or null
+   */
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * Sets the error message of this {@link BulkJob}.
+   * 
+   * @param error
+   *          an error message
+   */
+  public void setError(String error) {
+    this.error = error;
+  }
+
+  /**
+   * Returns the time this {@link BulkJob} was created in epoch milliseconds.
+   * 
+   * @return epoch milliseconds
+   */
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  /**
+   * Sets the time this {@link BulkJob} was created in epoch milliseconds.
+   * 
+   * @param createdAt
+   *          epoch milliseconds
+   */
+  public void setCreatedAt(long createdAt) {
+    this.createdAt = createdAt;
+  }
+
+  /**
+   * Returns the time this {@link BulkJob} was finished in epoch milliseconds.
+   * 
+   * @return epoch milliseconds or null if it's not finished yet
+   */
+  public Long getFinishedAt() {
+    return finishedAt;
+  }
+
+  /**
+   * Sets the time this {@link BulkJob} was finished in epoch milliseconds.
+   * 
+   * @param finishedAt
+   *          epoch milliseconds
+   */
+  public void setFinishedAt(Long finishedAt) {
+    this.finishedAt = finishedAt;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 27;
+    result = 31 ^ result + ((id == null) ? 0 : id.hashCode());
+    result = 31 ^ result + ((status == null) ? 0 : status.hashCode());
+    result = 31 ^ result + operations;
+    result = 31 ^ result + from;
+    result = 31 ^ result + ((results == null) ? 0 : results.hashCode());
+    result = 31 ^ result + ((error == null) ? 0 : error.hashCode());
+    result = 31 ^ result + Long.hashCode(createdAt);
+    result = 31 ^ result + ((finishedAt == null) ? 0 : finishedAt.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) return true;
+    if (obj == null) return false;
+    if (!(obj instanceof BulkJob)) return false;
+    BulkJob o = (BulkJob) obj;
+    return (id == null ? o.id == null : id.equals(o.id)) && status == o.status
+        && operations == o.operations && from == o.from
+        && (results == null ? o.results == null : results.equals(o.results))
+        && (error == null ? o.error == null : error.equals(o.error))
+        && createdAt == o.createdAt && (finishedAt == null
+            ? o.finishedAt == null : finishedAt.equals(o.finishedAt));
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{id=" + id + ", status=" + status
+        + ", operations=" + operations + ", from=" + from + ", results="
+        + results + ", error=" + error + ", createdAt=" + createdAt
+        + ", finishedAt=" + finishedAt + "}";
+  }
+
+}
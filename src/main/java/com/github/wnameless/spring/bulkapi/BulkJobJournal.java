@@ -0,0 +1,177 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_DIR_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_DIR_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_FSYNC_INTERVAL_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_FSYNC_INTERVAL_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_MAX_SIZE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_MAX_SIZE_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_REDACTED_HEADERS_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_JOURNAL_REDACTED_HEADERS_KEY;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkJob.Status;
+
+/**
+ * 
+ * {@link BulkJobJournal} records the progress of {@link BulkJob}s, so the
+ * unfinished jobs can be resumed after a restart. This base class records
+ * nothing, it's used when the journal isn't enabled.
+ *
+ */
+class BulkJobJournal {
+
+  static final BulkJobJournal NOOP = new BulkJobJournal();
+
+  /**
+   * Returns a {@link FileBulkJobJournal} if the journal is enabled by the
+   * <i>spring.bulk.api.jobs.journal.*</i> properties.
+   * 
+   * @param env
+   *          the Spring {@link Environment}
+   * @param mapper
+   *          the {@link ObjectMapper} which writes journal records
+   * @return a {@link BulkJobJournal}
+   * @throws UncheckedIOException
+   *           if the journal file can't be opened
+   */
+  static BulkJobJournal of(Environment env, ObjectMapper mapper) {
+    if (!env.getProperty(BULK_API_JOBS_JOURNAL_KEY, boolean.class,
+        BULK_API_JOBS_JOURNAL_DEFAULT)) {
+      return NOOP;
+    }
+
+    String dir = env.getProperty(BULK_API_JOBS_JOURNAL_DIR_KEY,
+        BULK_API_JOBS_JOURNAL_DIR_DEFAULT);
+    long maxSize = env.getProperty(BULK_API_JOBS_JOURNAL_MAX_SIZE_KEY,
+        long.class, BULK_API_JOBS_JOURNAL_MAX_SIZE_DEFAULT);
+    long fsyncInterval = env.getProperty(
+        BULK_API_JOBS_JOURNAL_FSYNC_INTERVAL_KEY, long.class,
+        BULK_API_JOBS_JOURNAL_FSYNC_INTERVAL_DEFAULT);
+    List<String> redactedHeaders = Arrays.asList(StringUtils
+        .commaDelimitedListToStringArray(StringUtils.trimAllWhitespace(
+            env.getProperty(BULK_API_JOBS_JOURNAL_REDACTED_HEADERS_KEY,
+                BULK_API_JOBS_JOURNAL_REDACTED_HEADERS_DEFAULT))));
+    try {
+      return new FileBulkJobJournal(Paths.get(dir), maxSize, fsyncInterval,
+          redactedHeaders, mapper);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Records a submitted {@link BulkJob} with all its planned operations.
+   * 
+   * @param job
+   *          a {@link BulkJob}
+   * @param req
+   *          the {@link BulkRequest} of the job
+   * @param servReq
+   *          the {@link DetachedServletRequest} which the job runs with
+   * @throws BulkApiException
+   *           if the journal is full
+   */
+  void submitted(BulkJob job, BulkRequest req,
+      DetachedServletRequest servReq) {}
+
+  /**
+   * Records a completed {@link BulkResult} of given job.
+   * 
+   * @param jobId
+   *          the id of a {@link BulkJob}
+   * @param result
+   *          a {@link BulkResult}
+   */
+  void completed(String jobId, BulkResult result) {}
+
+  /**
+   * Records a finished {@link BulkJob}, which won't be resumed anymore.
+   * 
+   * @param jobId
+   *          the id of a {@link BulkJob}
+   * @param status
+   *          either completed or failed
+   * @param error
+   *          an error message if the job is failed, otherwise null
+   */
+  void finished(String jobId, Status status, String error) {}
+
+  /**
+   * Returns all unfinished jobs in this journal.
+   * 
+   * @return a list of {@link RecoveredJob}s
+   */
+  List<RecoveredJob> recover() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Flushes and closes this journal.
+   */
+  void close() {}
+
+  /**
+   * 
+   * {@link RecoveredJob} is an unfinished {@link BulkJob} read from a journal,
+   * with the results it had completed.
+   *
+   */
+  static final class RecoveredJob {
+
+    private final BulkJob job;
+    private final BulkRequest request;
+    private final Map<String, Object> servletRequest;
+
+    RecoveredJob(BulkJob job, BulkRequest request,
+        Map<String, Object> servletRequest) {
+      this.job = job;
+      this.request = request;
+      this.servletRequest = servletRequest;
+    }
+
+    BulkJob getJob() {
+      return job;
+    }
+
+    BulkRequest getRequest() {
+      return request;
+    }
+
+    Map<String, Object> getServletRequest() {
+      return servletRequest;
+    }
+
+  }
+
+}
@@ -0,0 +1,309 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.util.UriUtils;
+
+import com.github.wnameless.spring.bulkapi.BulkApiService.PreparedBulk;
+import com.github.wnameless.spring.bulkapi.BulkJob.Status;
+import com.github.wnameless.spring.bulkapi.BulkJobJournal.RecoveredJob;
+
+/**
+ * 
+ * {@link BulkJobManager} runs {@link BulkJob}s on a background executor and
+ * keeps their states and results in a {@link BulkJobStore}. Polling clients
+ * can wait for new results without holding a container thread.<br>
+ * <br>
+ * The progress of every job is also recorded by a {@link BulkJobJournal}, so
+ * unfinished jobs can be resumed after a restart.<br>
+ * <br>
+ * Jobs are stored by their ids scoped by the user principal, so a job can
+ * only be polled by the user who has submitted it.
+ *
+ */
+final class BulkJobManager {
+
+  private final ExecutorService executor;
+  private final BulkJobStore store;
+  private final BulkJobJournal journal;
+  private final Map<String, Queue<Waiter>> waiters = new ConcurrentHashMap<>();
+
+  private volatile boolean closing;
+
+  public BulkJobManager(ExecutorService executor, BulkJobStore store,
+      BulkJobJournal journal) {
+    this.executor = executor;
+    this.store = store;
+    this.journal = journal;
+  }
+
+  /**
+   * Validates a {@link BulkJob} for given {@link BulkRequest} and runs it in
+   * the background. Only a snapshot of the {@link HttpServletRequest} is kept,
+   * so the job can outlive the request.
+   * 
+   * @param service
+   *          the {@link BulkApiService} which executes the job
+   * @param req
+   *          a {@link BulkRequest}
+   * @param servReq
+   *          the {@link HttpServletRequest} of the job submission
+   * @return the created {@link BulkJob}
+   * @throws BulkApiException
+   *           if the job is invalid or no more job can be accepted
+   */
+  public BulkJob submit(BulkApiService service, BulkRequest req,
+      HttpServletRequest servReq) {
+    DetachedServletRequest detached = new DetachedServletRequest(servReq);
+    PreparedBulk bulk = service.prepareJob(req, detached);
+
+    String id = UUID.randomUUID().toString();
+    String scopedId = scopedId(id, servReq);
+    BulkJob job = new BulkJob();
+    job.setId(scopedId);
+    job.setOperations(req.getOperations().size());
+    job.setCreatedAt(System.currentTimeMillis());
+
+    journal.submitted(job, req, detached);
+    store.create(job);
+    try {
+      start(scopedId, bulk);
+    } catch (RejectedExecutionException e) {
+      update(scopedId, Status.FAILED, "Bulk job has been rejected");
+      throw new BulkApiException(SERVICE_UNAVAILABLE,
+          "Bulk job can't be accepted at this moment");
+    }
+
+    job.setId(id);
+    return job;
+  }
+
+  /**
+   * Resumes all unfinished jobs of the journal. Each job continues after the
+   * operation of its last recorded result, so the operations which were still
+   * running when the job stopped are executed again. The recorded results are
+   * kept as the outcomes of the operations before.
+   * 
+   * @param service
+   *          the {@link BulkApiService} which executes the jobs
+   * @param servletContext
+   *          the {@link ServletContext} of this Web App
+   * @param baseUrl
+   *          the scheme, host and port of the current server, or null to send
+   *          the operations to the recorded ones
+   */
+  public void resume(BulkApiService service, ServletContext servletContext,
+      URI baseUrl) {
+    for (RecoveredJob recovered : journal.recover()) {
+      BulkJob job = recovered.getJob();
+      job.setStatus(Status.PENDING);
+      store.create(job);
+
+      try {
+        start(job.getId(), service.resumeJob(recovered.getRequest(),
+            new ArrayList<>(job.getResults()), new DetachedServletRequest(
+                recovered.getServletRequest(), servletContext, baseUrl)));
+      } catch (BulkApiException e) {
+        update(job.getId(), Status.FAILED, e.getError());
+      } catch (RejectedExecutionException e) {
+        update(job.getId(), Status.FAILED, "Bulk job has been rejected");
+      }
+    }
+  }
+
+  private void start(String jobId, PreparedBulk bulk) {
+    executor.execute(() -> run(jobId, bulk));
+  }
+
+  private void run(String jobId, PreparedBulk bulk) {
+    update(jobId, Status.RUNNING, null);
+    try {
+      bulk.execute(result -> {
+        journal.completed(jobId, result);
+        store.addResult(jobId, result);
+        signal(jobId);
+      });
+      update(jobId, Status.COMPLETED, null);
+    } catch (RuntimeException e) {
+      // Jobs stopped by a shutdown stay unfinished in the journal
+      if (closing) return;
+
+      update(jobId, Status.FAILED, e instanceof BulkApiException
+          ? ((BulkApiException) e).getError()
+          : "Bulk job has failed unexpectedly");
+    }
+  }
+
+  private void update(String jobId, Status status, String error) {
+    try {
+      if (status.isFinished()) journal.finished(jobId, status, error);
+    } finally {
+      store.update(jobId, status, error);
+      signal(jobId);
+    }
+  }
+
+  /**
+   * Finds the given {@link BulkJob} with its results starting from given
+   * index. If there is no such result yet and the job isn't finished, a
+   * {@link DeferredResult} is returned which is completed once there is, or
+   * once the waiting time has passed. A job submitted by another user is
+   * regarded as nonexistent.
+   * 
+   * @param jobId
+   *          the id of a {@link BulkJob}
+   * @param from
+   *          the index of the first result to return
+   * @param wait
+   *          the maximum time to wait in milliseconds
+   * @param servReq
+   *          the {@link HttpServletRequest} of the polling
+   * @return a {@link BulkJob} or a {@link DeferredResult} of it
+   * @throws BulkApiException
+   *           if the job doesn't exist
+   */
+  public Object poll(String jobId, int from, long wait,
+      HttpServletRequest servReq) {
+    String scopedId = scopedId(jobId, servReq);
+    BulkJob job = find(scopedId, from);
+    if (job == null) throw notFound(jobId);
+    if (wait <= 0 || isReady(job)) return job;
+
+    DeferredResult<BulkJob> deferred = new DeferredResult<>(wait);
+    Waiter waiter = new Waiter(from, deferred);
+    deferred.onTimeout(() -> {
+      removeWaiter(scopedId, waiter);
+      BulkJob current = find(scopedId, from);
+      if (current != null) {
+        deferred.setResult(current);
+      } else {
+        deferred.setErrorResult(notFound(jobId));
+      }
+    });
+    deferred.onCompletion(() -> removeWaiter(scopedId, waiter));
+
+    waiters.computeIfAbsent(scopedId, k -> new ConcurrentLinkedQueue<>())
+        .add(waiter);
+    // Checks again in case the job was updated before the waiter was added
+    signal(scopedId);
+    return deferred;
+  }
+
+  /**
+   * Stops accepting new jobs. Running jobs are interrupted, but they aren't
+   * recorded as finished, so they can be resumed by the journal.
+   */
+  public void shutdown() {
+    closing = true;
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    journal.close();
+  }
+
+  /**
+   * Scopes given job id by the user principal, the same way as the
+   * idempotency keys.
+   */
+  private static String scopedId(String jobId, HttpServletRequest servReq) {
+    Principal principal = servReq.getUserPrincipal();
+    String user = principal == null ? ""
+        : UriUtils.encode(principal.getName(), StandardCharsets.UTF_8);
+    return user + ":" + jobId;
+  }
+
+  /**
+   * Finds the job of given scoped id, and returns it with its unscoped id, or
+   * null if it doesn't exist.
+   */
+  private BulkJob find(String scopedId, int from) {
+    BulkJob job = store.find(scopedId, from);
+    if (job != null) job.setId(unscopedId(scopedId));
+    return job;
+  }
+
+  private static String unscopedId(String scopedId) {
+    return scopedId.substring(scopedId.lastIndexOf(':') + 1);
+  }
+
+  private BulkApiException notFound(String jobId) {
+    return new BulkApiException(NOT_FOUND,
+        "Bulk job(" + jobId + ") doesn't exist");
+  }
+
+  private void signal(String jobId) {
+    Queue<Waiter> queue = waiters.get(jobId);
+    if (queue == null) return;
+
+    for (Waiter waiter : queue) {
+      BulkJob job = find(jobId, waiter.from);
+      if (job == null) {
+        waiter.deferred.setErrorResult(notFound(unscopedId(jobId)));
+      } else if (isReady(job)) {
+        waiter.deferred.setResult(job);
+      }
+    }
+  }
+
+  private void removeWaiter(String jobId, Waiter waiter) {
+    waiters.computeIfPresent(jobId, (k, queue) -> {
+      queue.remove(waiter);
+      return queue.isEmpty() ? null : queue;
+    });
+  }
+
+  private static boolean isReady(BulkJob job) {
+    return job.getStatus().isFinished() || !job.getResults().isEmpty();
+  }
+
+  private static final class Waiter {
+
+    private final int from;
+    private final DeferredResult<BulkJob> deferred;
+
+    Waiter(int from, DeferredResult<BulkJob> deferred) {
+      this.from = from;
+      this.deferred = deferred;
+    }
+
+  }
+
+}
@@ -0,0 +1,77 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import com.github.wnameless.spring.bulkapi.BulkJob.Status;
+
+/**
+ * 
+ * {@link BulkJobStore} keeps the states and results of {@link BulkJob}s. By
+ * default, an {@link InMemoryBulkJobStore} is used, but it can be replaced by
+ * providing a Spring Bean which implements this interface.<br>
+ * <br>
+ * All methods may be called concurrently from different threads.
+ *
+ */
+public interface BulkJobStore {
+
+  /**
+   * Stores a new {@link BulkJob}.
+   * 
+   * @param job
+   *          a {@link BulkJob}
+   */
+  public void create(BulkJob job);
+
+  /**
+   * Appends a completed {@link BulkResult} to the given {@link BulkJob}.
+   * Results are appended in request order.
+   * 
+   * @param jobId
+   *          the id of a {@link BulkJob}
+   * @param result
+   *          a {@link BulkResult}
+   */
+  public void addResult(String jobId, BulkResult result);
+
+  /**
+   * Updates the {@link Status} of the given {@link BulkJob}. The finished time
+   * should be recorded once the job is finished.
+   * 
+   * @param jobId
+   *          the id of a {@link BulkJob}
+   * @param status
+   *          a {@link Status}
+   * @param error
+   *          an error message if the job is failed, otherwise null
+   */
+  public void update(String jobId, Status status, String error);
+
+  /**
+   * Finds the given {@link BulkJob}. The returned job is a snapshot which only
+   * contains the results starting from given index.
+   * 
+   * @param jobId
+   *          the id of a {@link BulkJob}
+   * @param from
+   *          the index of the first result to return
+   * @return a {@link BulkJob} or null if it doesn't exist or has expired
+   */
+  public BulkJob find(String jobId, int from);
+
+}
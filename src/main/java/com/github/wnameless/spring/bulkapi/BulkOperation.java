@@ -17,7 +17,9 @@
  */
 package com.github.wnameless.spring.bulkapi;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -27,11 +29,57 @@ import java.util.Map;
  */
 public final class BulkOperation {
 
+  private String id;
+  private List<String> dependsOn = new ArrayList<String>();
   private String url;
   private String method = "GET";
   private Map<String, Object> params = new LinkedHashMap<String, Object>();
   private Map<String, String> headers = new LinkedHashMap<String, String>();
   private boolean silent = false;
+  private Long timeout;
+  private String idempotencyKey;
+
+  /**
+   * Returns the id of this RESTful operation, which can be referred by the
+   * later operations of the same bulk request.
+   * 
+   * @return an id or null if not specified
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Sets the id of this RESTful operation.
+   * 
+   * @param id
+   *          an id or null if not specified
+   */
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  /**
+   * Returns the ids of the operations which must be finished before this
+   * RESTful operation starts. The operations referred by the placeholders of
+   * this operation are always its dependencies, even if they're not listed.
+   * 
+   * @return ids of operations
+   */
+  public List<String> getDependsOn() {
+    return dependsOn;
+  }
+
+  /**
+   * Sets the ids of the operations which must be finished before this RESTful
+   * operation starts.
+   * 
+   * @param dependsOn
+   *          ids of operations
+   */
+  public void setDependsOn(List<String> dependsOn) {
+    this.dependsOn = dependsOn;
+  }
 
   /**
    * Returns the URL of this RESTful operation.
@@ -128,14 +176,60 @@ public final class BulkOperation {
     this.silent = silent;
   }
 
+  /**
+   * Returns the timeout of this RESTful operation in milliseconds. Null means
+   * the <i>spring.bulk.api.operation-timeout</i> property decides.
+   * 
+   * @return the timeout in milliseconds or null if not specified
+   */
+  public Long getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Sets the timeout of this RESTful operation in milliseconds.
+   * 
+   * @param timeout
+   *          the timeout in milliseconds or null if not specified
+   */
+  public void setTimeout(Long timeout) {
+    this.timeout = timeout;
+  }
+
+  /**
+   * Returns the idempotency key of this RESTful operation. The outcome of an
+   * operation with a key is stored, and a retry with the same key and the
+   * same operation gets the stored outcome without executing it again.
+   * 
+   * @return the idempotency key or null if not specified
+   */
+  public String getIdempotencyKey() {
+    return idempotencyKey;
+  }
+
+  /**
+   * Sets the idempotency key of this RESTful operation.
+   * 
+   * @param idempotencyKey
+   *          the idempotency key or null if not specified
+   */
+  public void setIdempotencyKey(String idempotencyKey) {
+    this.idempotencyKey = idempotencyKey;
+  }
+
   @Override
   public int hashCode() {
     int result = 27;
+    result = 31 ^ result + ((id == null) ? 0 : id.hashCode());
+    result = 31 ^ result + ((dependsOn == null) ? 0 : dependsOn.hashCode());
     result = 31 ^ result + ((url == null) ? 0 : url.hashCode());
     result = 31 ^ result + ((method == null) ? 0 : method.hashCode());
     result = 31 ^ result + ((params == null) ? 0 : params.hashCode());
     result = 31 ^ result + ((headers == null) ? 0 : headers.hashCode());
     result = 31 ^ result + (silent ? 1 : 0);
+    result = 31 ^ result + ((timeout == null) ? 0 : timeout.hashCode());
+    result = 31 ^ result
+        + ((idempotencyKey == null) ? 0 : idempotencyKey.hashCode());
     return result;
   }
 
@@ -145,18 +239,25 @@ public final class BulkOperation {
     if (obj == null) return false;
     if (!(obj instanceof BulkOperation)) return false;
     BulkOperation o = (BulkOperation) obj;
-    return (url == null ? o.url == null : url.equals(o.url))
+    return (id == null ? o.id == null : id.equals(o.id))
+        && (dependsOn == null ? o.dependsOn == null
+            : dependsOn.equals(o.dependsOn))
+        && (url == null ? o.url == null : url.equals(o.url))
         && (method == null ? o.method == null : method.equals(o.method))
         && (params == null ? o.params == null : params.equals(o.params))
         && (headers == null ? o.headers == null : headers.equals(o.headers))
-        && (silent == o.silent);
+        && (silent == o.silent)
+        && (timeout == null ? o.timeout == null : timeout.equals(o.timeout))
+        && (idempotencyKey == null ? o.idempotencyKey == null
+            : idempotencyKey.equals(o.idempotencyKey));
   }
 
   @Override
   public String toString() {
-    return getClass().getSimpleName() + "{url=" + url + ", method=" + method
+    return getClass().getSimpleName() + "{id=" + id + ", dependsOn="
+        + dependsOn + ", url=" + url + ", method=" + method
         + ", params=" + params + ", headers=" + headers + ", silent=" + silent
-        + "}";
+        + ", timeout=" + timeout + ", idempotencyKey=" + idempotencyKey + "}";
   }
 
 }
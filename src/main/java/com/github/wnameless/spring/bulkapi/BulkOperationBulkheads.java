@@ -0,0 +1,254 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_MAX_CONCURRENT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_MAX_CONCURRENT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_MAX_WAIT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_MAX_WAIT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_ROUTES_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_TENANT_HEADER_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_TENANT_MAX_CONCURRENT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_TENANT_MAX_CONCURRENT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_TENANT_PRINCIPAL_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_TENANT_PRINCIPAL_KEY;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+
+/**
+ * 
+ * {@link BulkOperationBulkheads} limits the number of concurrent bulk
+ * operations per route, and optionally per tenant, across all bulk requests
+ * on this node.<br>
+ * <br>
+ * Each route template has its own bulkhead. If tenants are identified by
+ * the user principal or by a header, an operation takes a permit of the
+ * route-wide bulkhead first and then one of its tenant's bulkhead inside it,
+ * so no set of tenants can exceed the limit of a route. Operations beyond
+ * the limit wait up to the max wait, and are rejected after that. The
+ * bulkhead of an idle key is dropped, so the number of tenants isn't bounded
+ * by memory.
+ *
+ */
+final class BulkOperationBulkheads {
+
+  private final int maxConcurrent;
+  private final Map<String, Integer> routeLimits;
+  private final int tenantMaxConcurrent;
+  private final long maxWait;
+  private final String tenantHeader;
+  private final boolean tenantPrincipal;
+  private final Map<List<String>, Bulkhead> bulkheads =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Creates a {@link BulkOperationBulkheads} configured by the
+   * <i>spring.bulk.api.bulkhead.*</i> properties.
+   * 
+   * @param env
+   *          the Spring {@link Environment}
+   * @return a {@link BulkOperationBulkheads}
+   */
+  static BulkOperationBulkheads of(Environment env) {
+    int maxConcurrent = env.getProperty(BULK_API_BULKHEAD_MAX_CONCURRENT_KEY,
+        int.class, BULK_API_BULKHEAD_MAX_CONCURRENT_DEFAULT);
+    int tenantMaxConcurrent = env.getProperty(
+        BULK_API_BULKHEAD_TENANT_MAX_CONCURRENT_KEY, int.class,
+        BULK_API_BULKHEAD_TENANT_MAX_CONCURRENT_DEFAULT);
+    long maxWait = env.getProperty(BULK_API_BULKHEAD_MAX_WAIT_KEY, long.class,
+        BULK_API_BULKHEAD_MAX_WAIT_DEFAULT);
+    String tenantHeader = env.getProperty(BULK_API_BULKHEAD_TENANT_HEADER_KEY);
+    boolean tenantPrincipal = env.getProperty(
+        BULK_API_BULKHEAD_TENANT_PRINCIPAL_KEY, boolean.class,
+        BULK_API_BULKHEAD_TENANT_PRINCIPAL_DEFAULT);
+
+    return new BulkOperationBulkheads(maxConcurrent,
+        routeLimits(env.getProperty(BULK_API_BULKHEAD_ROUTES_KEY, "")),
+        tenantMaxConcurrent, maxWait,
+        StringUtils.hasText(tenantHeader) ? tenantHeader.trim() : null,
+        tenantPrincipal);
+  }
+
+  /**
+   * Parses route limits like <i>/users/{id}=5,/reports=1</i>.
+   */
+  private static Map<String, Integer> routeLimits(String property) {
+    Map<String, Integer> routeLimits = new HashMap<>();
+    for (String entry : StringUtils.tokenizeToStringArray(property, ",")) {
+      int sep = entry.lastIndexOf('=');
+      if (sep <= 0) throw new IllegalArgumentException(
+          "Invalid bulkhead route limit(" + entry + ")");
+
+      routeLimits.put(entry.substring(0, sep).trim(),
+          Integer.valueOf(entry.substring(sep + 1).trim()));
+    }
+    return routeLimits;
+  }
+
+  public BulkOperationBulkheads(int maxConcurrent,
+      Map<String, Integer> routeLimits, int tenantMaxConcurrent,
+      long maxWait, String tenantHeader, boolean tenantPrincipal) {
+    this.maxConcurrent = maxConcurrent;
+    this.routeLimits = new HashMap<>(routeLimits);
+    this.tenantMaxConcurrent = tenantMaxConcurrent;
+    this.maxWait = maxWait;
+    this.tenantHeader = tenantHeader;
+    this.tenantPrincipal = tenantPrincipal;
+  }
+
+  /**
+   * Acquires a permit of the route-wide bulkhead of given operation, and then
+   * one of its tenant's bulkhead. It waits up to the max wait for each if the
+   * bulkhead is full.
+   * 
+   * @param plan
+   *          a {@link BulkOperationPlan}
+   * @param servReq
+   *          the {@link HttpServletRequest} of the bulk request
+   * @return a {@link Permit} or null if a bulkhead is still full
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  public Permit acquire(BulkOperationPlan plan, HttpServletRequest servReq)
+      throws InterruptedException {
+    int limit = limitOf(plan.getRoute());
+    if (limit <= 0) return Permit.UNLIMITED;
+
+    Permit routePermit = acquire(Arrays.asList(plan.getRoute()), limit);
+    if (routePermit == null) return null;
+
+    String tenant = tenantOf(servReq);
+    if (tenant == null) return routePermit;
+
+    Permit tenantPermit = null;
+    try {
+      tenantPermit = acquire(Arrays.asList(plan.getRoute(), tenant),
+          tenantMaxConcurrent > 0 ? Math.min(tenantMaxConcurrent, limit)
+              : limit);
+    } finally {
+      if (tenantPermit == null) routePermit.release();
+    }
+    Permit acquired = tenantPermit;
+    return () -> {
+      acquired.release();
+      routePermit.release();
+    };
+  }
+
+  private Permit acquire(List<String> key, int limit)
+      throws InterruptedException {
+    Bulkhead bulkhead = bulkheads.compute(key, (k, b) -> {
+      if (b == null) b = new Bulkhead(limit);
+      b.users++;
+      return b;
+    });
+
+    boolean acquired = false;
+    try {
+      acquired = maxWait > 0
+          ? bulkhead.semaphore.tryAcquire(maxWait, MILLISECONDS)
+          : bulkhead.semaphore.tryAcquire();
+    } finally {
+      if (!acquired) leave(key);
+    }
+    return acquired ? () -> {
+      bulkhead.semaphore.release();
+      leave(key);
+    } : null;
+  }
+
+  /**
+   * Returns the concurrency limit of given route.
+   * 
+   * @param route
+   *          a route template
+   * @return the limit, or 0 if unlimited
+   */
+  public int limitOf(String route) {
+    if (route == null) return 0;
+    return routeLimits.getOrDefault(route, maxConcurrent);
+  }
+
+  /**
+   * Returns the number of keys which have operations running or waiting.
+   * 
+   * @return the number of active bulkheads
+   */
+  public int size() {
+    return bulkheads.size();
+  }
+
+  private void leave(List<String> key) {
+    bulkheads.computeIfPresent(key, (k, b) -> --b.users == 0 ? null : b);
+  }
+
+  /**
+   * Identifies the tenant by the authenticated principal first. A tenant
+   * header is supplied by the client, so its values are kept apart from
+   * principal names and only ever share the route-wide bulkhead.
+   */
+  private String tenantOf(HttpServletRequest servReq) {
+    if (tenantPrincipal && servReq.getUserPrincipal() != null) {
+      return "principal:" + servReq.getUserPrincipal().getName();
+    }
+    if (tenantHeader != null) {
+      String tenant = servReq.getHeader(tenantHeader);
+      if (tenant != null) return "header:" + tenant;
+    }
+    return null;
+  }
+
+  /**
+   * {@link Permit} is held while an operation runs in its bulkhead.
+   */
+  @FunctionalInterface
+  interface Permit {
+
+    Permit UNLIMITED = () -> {};
+
+    /**
+     * Releases this permit.
+     */
+    void release();
+
+  }
+
+  private static final class Bulkhead {
+
+    private final Semaphore semaphore;
+    // Guarded by the compute methods of the map
+    private int users;
+
+    Bulkhead(int limit) {
+      semaphore = new Semaphore(limit);
+    }
+
+  }
+
+}
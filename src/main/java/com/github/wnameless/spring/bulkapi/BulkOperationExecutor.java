@@ -0,0 +1,66 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * 
+ * {@link BulkOperationExecutor} defines how a single computed bulk operation is
+ * sent to its endpoint. By default, the execution engine is chosen by the
+ * <i>spring.bulk.api.dispatch</i> property, but it can be replaced by providing
+ * a Spring Bean which implements this interface.
+ *
+ */
+public interface BulkOperationExecutor {
+
+  /**
+   * Executes the given {@link RequestEntity} and returns its outcome. An error
+   * response(4xx or 5xx) should be returned as it is instead of being thrown,
+   * so it can be reported by its own {@link BulkResult}.
+   * 
+   * @param request
+   *          a {@link RequestEntity} computed from a {@link BulkOperation}
+   * @param servReq
+   *          the {@link HttpServletRequest} of the bulk request
+   * @return a {@link ResponseEntity}
+   */
+  public ResponseEntity<String> execute(RequestEntity<?> request,
+      HttpServletRequest servReq);
+
+  /**
+   * Executes the given {@link RequestEntity} and returns its outcome with the
+   * body as bytes in the charset of its Content-Type, so a large body doesn't
+   * have to be decoded and encoded again. By default, the body returned by
+   * {@link #execute(RequestEntity, HttpServletRequest)} is encoded.
+   * 
+   * @param request
+   *          a {@link RequestEntity} computed from a {@link BulkOperation}
+   * @param servReq
+   *          the {@link HttpServletRequest} of the bulk request
+   * @return a {@link ResponseEntity}
+   */
+  default ResponseEntity<byte[]> executeForBytes(RequestEntity<?> request,
+      HttpServletRequest servReq) {
+    return BulkResponseBodies.toBytes(execute(request, servReq));
+  }
+
+}
@@ -0,0 +1,241 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.RequestEntity.BodyBuilder;
+import org.springframework.util.LinkedMultiValueMap;
+
+/**
+ * 
+ * {@link BulkOperationPlan} is the immutable, pre-resolved form of a
+ * {@link BulkOperation}. It is computed once while planning a bulk request,
+ * and then only consumed by the execution.<br>
+ * <br>
+ * An operation which refers to the results of other operations is planned as
+ * deferred. Its URI is unknown until the results are available, so it's
+ * planned again once its dependencies are finished.<br>
+ * <br>
+ * An operation which fails the validation of a streamed bulk request is
+ * planned as rejected, so it's answered with an error result instead of
+ * aborting the operations which have been executed already.
+ *
+ */
+final class BulkOperationPlan {
+
+  private final int index;
+
+  private final BulkOperation operation;
+
+  private final HttpMethod method;
+
+  private final URI uri;
+
+  private final boolean requestBody;
+
+  private final String route;
+
+  private final HttpHeaders headers;
+
+  private final Object body;
+
+  private final List<String> dependencies;
+
+  private final BulkApiException rejection;
+
+  public BulkOperationPlan(int index, BulkOperation operation,
+      HttpMethod method, URI uri, boolean requestBody, String route) {
+    this(index, operation, method, uri, requestBody, route,
+        Collections.emptyList());
+  }
+
+  public BulkOperationPlan(int index, BulkOperation operation,
+      HttpMethod method, URI uri, boolean requestBody, String route,
+      List<String> dependencies) {
+    if (operation == null) throw new NullPointerException();
+    if (method == null) throw new NullPointerException();
+    if (dependencies == null) throw new NullPointerException();
+
+    this.index = index;
+    this.operation = operation;
+    this.method = method;
+    this.uri = uri;
+    this.requestBody = requestBody;
+    this.route = route;
+    this.dependencies = Collections.unmodifiableList(dependencies);
+    rejection = null;
+
+    HttpHeaders httpHeaders = new HttpHeaders();
+    for (Entry<String, String> header : operation.getHeaders().entrySet()) {
+      httpHeaders.add(header.getKey(), header.getValue());
+    }
+    headers = HttpHeaders.readOnlyHttpHeaders(httpHeaders);
+
+    if (requestBody) {
+      body = operation.getParams();
+    } else {
+      LinkedMultiValueMap<String, Object> lmvm = new LinkedMultiValueMap<>();
+      lmvm.setAll(operation.getParams());
+      body = lmvm;
+    }
+  }
+
+  /**
+   * Creates a deferred {@link BulkOperationPlan} whose operation still
+   * contains placeholders.
+   * 
+   * @param index
+   *          the index of the operation
+   * @param operation
+   *          a {@link BulkOperation}
+   * @param method
+   *          the HTTP method
+   * @param dependencies
+   *          ids of the operations it depends on
+   * @return a deferred {@link BulkOperationPlan}
+   */
+  public static BulkOperationPlan deferred(int index, BulkOperation operation,
+      HttpMethod method, List<String> dependencies) {
+    return new BulkOperationPlan(index, operation, method, null, false, null,
+        dependencies);
+  }
+
+  /**
+   * Creates a rejected {@link BulkOperationPlan} which is never executed.
+   * 
+   * @param index
+   *          the index of the operation
+   * @param operation
+   *          a {@link BulkOperation}
+   * @param rejection
+   *          the reason of the rejection
+   * @return a rejected {@link BulkOperationPlan}
+   */
+  public static BulkOperationPlan rejected(int index, BulkOperation operation,
+      BulkApiException rejection) {
+    return new BulkOperationPlan(index, operation, rejection);
+  }
+
+  private BulkOperationPlan(int index, BulkOperation operation,
+      BulkApiException rejection) {
+    if (operation == null) throw new NullPointerException();
+    if (rejection == null) throw new NullPointerException();
+
+    this.index = index;
+    this.operation = operation;
+    this.rejection = rejection;
+    method = null;
+    uri = null;
+    requestBody = false;
+    route = null;
+    headers = HttpHeaders.readOnlyHttpHeaders(new HttpHeaders());
+    body = null;
+    dependencies = Collections.emptyList();
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public BulkOperation getOperation() {
+    return operation;
+  }
+
+  public HttpMethod getMethod() {
+    return method;
+  }
+
+  public URI getUri() {
+    return uri;
+  }
+
+  public boolean hasRequestBody() {
+    return requestBody;
+  }
+
+  public String getRoute() {
+    return route;
+  }
+
+  public HttpHeaders getHeaders() {
+    return headers;
+  }
+
+  public Object getBody() {
+    return body;
+  }
+
+  public boolean isSilent() {
+    return operation.isSilent();
+  }
+
+  public List<String> getDependencies() {
+    return dependencies;
+  }
+
+  public boolean hasDependencies() {
+    return !dependencies.isEmpty();
+  }
+
+  public boolean isDeferred() {
+    return uri == null && rejection == null;
+  }
+
+  public BulkApiException getRejection() {
+    return rejection;
+  }
+
+  public boolean isRejected() {
+    return rejection != null;
+  }
+
+  /**
+   * Builds the {@link RequestEntity} of this planned operation.
+   * 
+   * @return a {@link RequestEntity}
+   */
+  public RequestEntity<?> toRequestEntity() {
+    if (isDeferred()) throw new IllegalStateException(
+        "Deferred operation must be planned again before execution");
+    if (isRejected()) throw new IllegalStateException(
+        "Rejected operation can't be executed");
+
+    BodyBuilder bodyBuilder = RequestEntity.method(method, uri);
+    for (Entry<String, List<String>> header : headers.entrySet()) {
+      bodyBuilder.header(header.getKey(),
+          header.getValue().toArray(new String[header.getValue().size()]));
+    }
+    return bodyBuilder.body(body);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{index=" + index + ", method="
+        + method + ", uri=" + uri + ", requestBody=" + requestBody
+        + ", route=" + route + ", headers=" + headers + ", dependencies="
+        + dependencies + ", rejection=" + rejection + "}";
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 
+ * {@link BulkOperationReader} reads {@link BulkOperation}s one at a time from
+ * a stream of JSON objects, such as a NDJSON request body. Only the operation
+ * which is currently read is held in memory.
+ *
+ */
+final class BulkOperationReader implements Iterator<BulkOperation>, Closeable {
+
+  private final MappingIterator<BulkOperation> iterator;
+
+  public BulkOperationReader(ObjectMapper mapper, InputStream input)
+      throws IOException {
+    iterator = mapper.readerFor(BulkOperation.class).readValues(input);
+  }
+
+  @Override
+  public boolean hasNext() {
+    try {
+      return iterator.hasNext();
+    } catch (RuntimeException e) {
+      throw malformedOperation();
+    }
+  }
+
+  @Override
+  public BulkOperation next() {
+    try {
+      return iterator.next();
+    } catch (RuntimeException e) {
+      throw malformedOperation();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    iterator.close();
+  }
+
+  private BulkApiException malformedOperation() {
+    return new BulkApiException(BAD_REQUEST,
+        "Malformed operation exists in this bulk request");
+  }
+
+}
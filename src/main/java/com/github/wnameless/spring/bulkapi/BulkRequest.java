@@ -28,6 +28,11 @@ import java.util.List;
 public final class BulkRequest {
 
   private List<BulkOperation> operations = new ArrayList<BulkOperation>();
+  private Boolean parallel;
+  private String onError;
+  private Integer maxErrors;
+  private Long timeout;
+  private Boolean coalesce;
 
   /**
    * Returns all operations in this {@link BulkRequest}.
@@ -48,10 +53,124 @@ public final class BulkRequest {
     this.operations = operations;
   }
 
+  /**
+   * Returns if operations in this {@link BulkRequest} should be executed
+   * concurrently. Null means the <i>spring.bulk.api.parallel.enabled</i>
+   * property decides.
+   * 
+   * @return true if parallel, false if sequential, null if not specified
+   */
+  public Boolean getParallel() {
+    return parallel;
+  }
+
+  /**
+   * Sets if operations in this {@link BulkRequest} should be executed
+   * concurrently.
+   * 
+   * @param parallel
+   *          true if parallel, false if sequential, null if not specified
+   */
+  public void setParallel(Boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  /**
+   * Returns what to do when an operation fails(4xx or 5xx): <i>continue</i>
+   * executes all operations anyway, <i>stop</i> skips the rest operations once
+   * the max number of errors is reached. Null means the
+   * <i>spring.bulk.api.on-error</i> property decides.
+   * 
+   * @return continue, stop or null if not specified
+   */
+  public String getOnError() {
+    return onError;
+  }
+
+  /**
+   * Sets what to do when an operation fails(4xx or 5xx).
+   * 
+   * @param onError
+   *          continue, stop or null if not specified
+   */
+  public void setOnError(String onError) {
+    this.onError = onError;
+  }
+
+  /**
+   * Returns the number of failed operations after which the rest operations
+   * are skipped, if <i>onError</i> is <i>stop</i>. Null means the
+   * <i>spring.bulk.api.max-errors</i> property decides.
+   * 
+   * @return the max number of errors or null if not specified
+   */
+  public Integer getMaxErrors() {
+    return maxErrors;
+  }
+
+  /**
+   * Sets the number of failed operations after which the rest operations are
+   * skipped, if <i>onError</i> is <i>stop</i>.
+   * 
+   * @param maxErrors
+   *          the max number of errors or null if not specified
+   */
+  public void setMaxErrors(Integer maxErrors) {
+    this.maxErrors = maxErrors;
+  }
+
+  /**
+   * Returns the deadline of this {@link BulkRequest} in milliseconds. The
+   * operations which are still pending when the deadline passes are cancelled.
+   * Null means the <i>spring.bulk.api.timeout</i> property decides.
+   * 
+   * @return the deadline in milliseconds or null if not specified
+   */
+  public Long getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Sets the deadline of this {@link BulkRequest} in milliseconds.
+   * 
+   * @param timeout
+   *          the deadline in milliseconds or null if not specified
+   */
+  public void setTimeout(Long timeout) {
+    this.timeout = timeout;
+  }
+
+  /**
+   * Returns if identical GET or HEAD operations in this {@link BulkRequest}
+   * should be executed only once and share their result. Null means the
+   * <i>spring.bulk.api.coalesce.enabled</i> property decides.
+   * 
+   * @return true if coalesced, false if not, null if not specified
+   */
+  public Boolean getCoalesce() {
+    return coalesce;
+  }
+
+  /**
+   * Sets if identical GET or HEAD operations in this {@link BulkRequest}
+   * should be executed only once and share their result.
+   * 
+   * @param coalesce
+   *          true if coalesced, false if not, null if not specified
+   */
+  public void setCoalesce(Boolean coalesce) {
+    this.coalesce = coalesce;
+  }
+
   @Override
   public int hashCode() {
     int result = 27;
     result = 31 ^ result + ((operations == null) ? 0 : operations.hashCode());
+    result = 31 ^ result + ((parallel == null) ? 0 : parallel.hashCode());
+    result = 31 ^ result + ((onError == null) ? 0 : onError.hashCode());
+    result = 31 ^ result + ((maxErrors == null) ? 0 : maxErrors.hashCode());
+    result = 31 ^ result + ((timeout == null) ? 0 : timeout.hashCode());
+    result = 31 ^ result + ((coalesce == null) ? 0 : coalesce.hashCode());
     return result;
   }
 
@@ -61,13 +180,23 @@ public final class BulkRequest {
     if (obj == null) return false;
     if (!(obj instanceof BulkRequest)) return false;
     BulkRequest o = (BulkRequest) obj;
-    return operations == null ? o.operations == null
-        : operations.equals(o.operations);
+    return (operations == null ? o.operations == null
+        : operations.equals(o.operations))
+        && (parallel == null ? o.parallel == null
+            : parallel.equals(o.parallel))
+        && (onError == null ? o.onError == null : onError.equals(o.onError))
+        && (maxErrors == null ? o.maxErrors == null
+            : maxErrors.equals(o.maxErrors))
+        && (timeout == null ? o.timeout == null : timeout.equals(o.timeout))
+        && (coalesce == null ? o.coalesce == null
+            : coalesce.equals(o.coalesce));
   }
 
   @Override
   public String toString() {
-    return getClass().getSimpleName() + "{operations=" + operations + "}";
+    return getClass().getSimpleName() + "{operations=" + operations
+        + ", parallel=" + parallel + ", onError=" + onError + ", maxErrors="
+        + maxErrors + ", timeout=" + timeout + ", coalesce=" + coalesce + "}";
   }
 
 }
@@ -0,0 +1,93 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * 
+ * {@link BulkResponseBodies} converts the bodies of operation responses
+ * between bytes and text. The charset of a body is taken from its
+ * Content-Type. Without one, a JSON body is UTF-8 as required by RFC 8259,
+ * and any other body is ISO-8859-1, which is the default charset of Spring's
+ * StringHttpMessageConverter.
+ *
+ */
+final class BulkResponseBodies {
+
+  private BulkResponseBodies() {}
+
+  /**
+   * Returns the {@link Charset} of a body with given headers.
+   * 
+   * @param headers
+   *          the {@link HttpHeaders} of a response
+   * @return a {@link Charset}
+   */
+  static Charset charsetOf(HttpHeaders headers) {
+    MediaType contentType;
+    try {
+      contentType = headers.getContentType();
+    } catch (RuntimeException e) {
+      contentType = null;
+    }
+    if (contentType == null) return StandardCharsets.ISO_8859_1;
+    if (contentType.getCharset() != null) return contentType.getCharset();
+
+    if (MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+        || (contentType.getSubtype() != null
+            && contentType.getSubtype().endsWith("+json"))) {
+      return StandardCharsets.UTF_8;
+    }
+    return StandardCharsets.ISO_8859_1;
+  }
+
+  /**
+   * Encodes the body of given response by the charset of its Content-Type.
+   * 
+   * @param response
+   *          a {@link ResponseEntity} with a String body
+   * @return a {@link ResponseEntity} with a byte array body
+   */
+  static ResponseEntity<byte[]> toBytes(ResponseEntity<String> response) {
+    byte[] body = response.getBody() == null ? null
+        : response.getBody().getBytes(charsetOf(response.getHeaders()));
+    return ResponseEntity.status(response.getStatusCodeValue())
+        .headers(response.getHeaders()).body(body);
+  }
+
+  /**
+   * Decodes the body of given response by the charset of its Content-Type.
+   * 
+   * @param response
+   *          a {@link ResponseEntity} with a byte array body
+   * @return a {@link ResponseEntity} with a String body
+   */
+  static ResponseEntity<String> toText(ResponseEntity<byte[]> response) {
+    String body = response.getBody() == null ? null
+        : new String(response.getBody(), charsetOf(response.getHeaders()));
+    return ResponseEntity.status(response.getStatusCodeValue())
+        .headers(response.getHeaders()).body(body);
+  }
+
+}
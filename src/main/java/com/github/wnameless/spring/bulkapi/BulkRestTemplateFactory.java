@@ -0,0 +1,308 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CLIENT_CONNECTION_TTL_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CLIENT_CONNECTION_TTL_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CLIENT_CONNECT_TIMEOUT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CLIENT_CONNECT_TIMEOUT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CLIENT_KEEP_ALIVE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CLIENT_KEEP_ALIVE_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CLIENT_MAX_CONNECTIONS_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CLIENT_MAX_CONNECTIONS_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CLIENT_READ_TIMEOUT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CLIENT_READ_TIMEOUT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_LOOPBACK_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_LOOPBACK_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_LOOPBACK_MIN_SIZE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_LOOPBACK_MIN_SIZE_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COMPRESSION_LOOPBACK_TOKEN_KEY;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * 
+ * {@link BulkRestTemplateFactory} creates the long-lived {@link RestTemplate}
+ * shared by all loopback bulk operations.<br>
+ * <br>
+ * If Apache HttpClient is on the classpath, a keep-alive connection pool is
+ * used, otherwise it falls back to the JDK HttpURLConnection. If the loopback
+ * compression is enabled, large request bodies are sent compressed by gzip,
+ * and marked by a token shared by all nodes of this application.<br>
+ * <br>
+ * A loopback operation with a timeout is sent with the remaining time as its
+ * read timeout, so it doesn't keep blocking on its socket once it's abandoned.
+ *
+ */
+final class BulkRestTemplateFactory {
+
+  /**
+   * The header which marks a request body compressed by a loopback operation.
+   */
+  static final String LOOPBACK_HEADER = "X-Bulk-Loopback";
+
+  private static final boolean httpComponentsPresent =
+      ClassUtils.isPresent("org.apache.http.impl.client.HttpClientBuilder",
+          BulkRestTemplateFactory.class.getClassLoader());
+
+  private static final ThreadLocal<Integer> operationReadTimeout =
+      new ThreadLocal<>();
+
+  private BulkRestTemplateFactory() {}
+
+  /**
+   * Returns the token of {@link #LOOPBACK_HEADER}, so clients can't pass their
+   * own compressed requests as loopback ones. A loopback operation may be
+   * routed to any node behind a load balancer, so the token is configured
+   * rather than generated.
+   * 
+   * @param env
+   *          the Spring {@link Environment}
+   * @return the loopback token
+   * @throws IllegalStateException
+   *           if no token is configured
+   */
+  static String loopbackToken(Environment env) {
+    String token = env.getProperty(BULK_API_COMPRESSION_LOOPBACK_TOKEN_KEY);
+    if (!StringUtils.hasText(token)) {
+      throw new IllegalStateException(BULK_API_COMPRESSION_LOOPBACK_TOKEN_KEY
+          + " is required by the loopback compression");
+    }
+    return token.trim();
+  }
+
+  /**
+   * Runs the given task, and any loopback operation it sends on the current
+   * thread is read with the given timeout, unless the configured read timeout
+   * is shorter.
+   * 
+   * @param readTimeout
+   *          the read timeout in milliseconds, 0 means unchanged
+   * @param task
+   *          the task which sends loopback operations
+   * @return the result of the task
+   */
+  static <T> T withReadTimeout(int readTimeout, Supplier<T> task) {
+    if (readTimeout <= 0) return task.get();
+
+    Integer outer = operationReadTimeout.get();
+    operationReadTimeout.set(readTimeout);
+    try {
+      return task.get();
+    } finally {
+      if (outer == null) {
+        operationReadTimeout.remove();
+      } else {
+        operationReadTimeout.set(outer);
+      }
+    }
+  }
+
+  private static int readTimeout(int configured) {
+    Integer readTimeout = operationReadTimeout.get();
+    if (readTimeout == null) return configured;
+    return configured > 0 ? Math.min(configured, readTimeout) : readTimeout;
+  }
+
+  /**
+   * Creates a {@link RestTemplate} configured by the
+   * <i>spring.bulk.api.client.*</i> properties.
+   * 
+   * @param env
+   *          the Spring {@link Environment}
+   * @return a {@link RestTemplate}
+   */
+  public static RestTemplate newRestTemplate(Environment env) {
+    int maxConnections = env.getProperty(BULK_API_CLIENT_MAX_CONNECTIONS_KEY,
+        int.class, BULK_API_CLIENT_MAX_CONNECTIONS_DEFAULT);
+    long keepAlive = env.getProperty(BULK_API_CLIENT_KEEP_ALIVE_KEY,
+        long.class, BULK_API_CLIENT_KEEP_ALIVE_DEFAULT);
+    long connectionTtl = env.getProperty(BULK_API_CLIENT_CONNECTION_TTL_KEY,
+        long.class, BULK_API_CLIENT_CONNECTION_TTL_DEFAULT);
+    int connectTimeout = env.getProperty(BULK_API_CLIENT_CONNECT_TIMEOUT_KEY,
+        int.class, BULK_API_CLIENT_CONNECT_TIMEOUT_DEFAULT);
+    int readTimeout = env.getProperty(BULK_API_CLIENT_READ_TIMEOUT_KEY,
+        int.class, BULK_API_CLIENT_READ_TIMEOUT_DEFAULT);
+
+    ClientHttpRequestFactory requestFactory;
+    if (httpComponentsPresent) {
+      requestFactory = HttpComponents.newRequestFactory(maxConnections,
+          keepAlive, connectionTtl, connectTimeout, readTimeout);
+    } else {
+      SimpleClientHttpRequestFactory simple =
+          new TimeoutSimpleClientHttpRequestFactory();
+      if (connectTimeout >= 0) simple.setConnectTimeout(connectTimeout);
+      if (readTimeout >= 0) simple.setReadTimeout(readTimeout);
+      requestFactory = simple;
+    }
+
+    RestTemplate restTemplate = new PooledRestTemplate(requestFactory);
+    restTemplate.setErrorHandler(new CapturingResponseErrorHandler());
+    if (env.getProperty(BULK_API_COMPRESSION_LOOPBACK_KEY, boolean.class,
+        BULK_API_COMPRESSION_LOOPBACK_DEFAULT)) {
+      restTemplate.getInterceptors()
+          .add(new CompressingInterceptor(env.getProperty(
+              BULK_API_COMPRESSION_LOOPBACK_MIN_SIZE_KEY, int.class,
+              BULK_API_COMPRESSION_LOOPBACK_MIN_SIZE_DEFAULT),
+              loopbackToken(env)));
+    }
+    return restTemplate;
+  }
+
+  /**
+   * A {@link RestTemplate} which closes its connection pool when it's
+   * destroyed.
+   */
+  static final class PooledRestTemplate extends RestTemplate
+      implements DisposableBean {
+
+    private final ClientHttpRequestFactory pool;
+
+    PooledRestTemplate(ClientHttpRequestFactory requestFactory) {
+      super(requestFactory);
+      pool = requestFactory;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+      if (pool instanceof DisposableBean) ((DisposableBean) pool).destroy();
+    }
+
+  }
+
+  /**
+   * Applies the read timeout of the current operation to the JDK
+   * HttpURLConnection.
+   */
+  private static final class TimeoutSimpleClientHttpRequestFactory
+      extends SimpleClientHttpRequestFactory {
+
+    @Override
+    protected void prepareConnection(HttpURLConnection connection,
+        String httpMethod) throws IOException {
+      super.prepareConnection(connection, httpMethod);
+      connection.setReadTimeout(readTimeout(connection.getReadTimeout()));
+    }
+
+  }
+
+  /**
+   * Compresses request bodies by gzip once they reach the min size, and marks
+   * them by the loopback token.
+   */
+  private static final class CompressingInterceptor
+      implements ClientHttpRequestInterceptor {
+
+    private final int minSize;
+    private final String token;
+
+    CompressingInterceptor(int minSize, String token) {
+      this.minSize = minSize;
+      this.token = token;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+        ClientHttpRequestExecution execution) throws IOException {
+      HttpHeaders headers = request.getHeaders();
+      if (body.length < minSize
+          || headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+        return execution.execute(request, body);
+      }
+
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (OutputStream out = BulkContentCoding.GZIP.encode(compressed)) {
+        out.write(body);
+      }
+      headers.set(HttpHeaders.CONTENT_ENCODING,
+          BulkContentCoding.GZIP.getToken());
+      headers.set(LOOPBACK_HEADER, token);
+      if (headers.getContentLength() >= 0) {
+        headers.setContentLength(compressed.size());
+      }
+      return execution.execute(request, compressed.toByteArray());
+    }
+
+  }
+
+  private static final class HttpComponents {
+
+    static ClientHttpRequestFactory newRequestFactory(int maxConnections,
+        long keepAlive, long connectionTtl, int connectTimeout,
+        int readTimeout) {
+      // Idle connections are closed by the keep-alive, while the TTL limits
+      // how long a connection is reused at all
+      PoolingHttpClientConnectionManager connManager =
+          new PoolingHttpClientConnectionManager(
+              connectionTtl > 0 ? connectionTtl : -1, TimeUnit.MILLISECONDS);
+      connManager.setMaxTotal(maxConnections);
+      connManager.setDefaultMaxPerRoute(maxConnections);
+
+      CloseableHttpClient httpClient = HttpClientBuilder.create()
+          .setConnectionManager(connManager)
+          .setKeepAliveStrategy((response, context) -> keepAlive)
+          .evictExpiredConnections()
+          .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+          .disableCookieManagement().build();
+
+      HttpComponentsClientHttpRequestFactory requestFactory =
+          new HttpComponentsClientHttpRequestFactory(httpClient) {
+
+            // Applies the read timeout of the current operation
+            @Override
+            protected RequestConfig createRequestConfig(Object client) {
+              RequestConfig config = super.createRequestConfig(client);
+              if (config == null) config = RequestConfig.DEFAULT;
+              int socketTimeout = readTimeout(config.getSocketTimeout());
+              if (socketTimeout == config.getSocketTimeout()) return config;
+              return RequestConfig.copy(config).setSocketTimeout(socketTimeout)
+                  .build();
+            }
+
+          };
+      if (connectTimeout >= 0) requestFactory.setConnectTimeout(connectTimeout);
+      if (readTimeout >= 0) requestFactory.setReadTimeout(readTimeout);
+      return requestFactory;
+    }
+
+  }
+
+}
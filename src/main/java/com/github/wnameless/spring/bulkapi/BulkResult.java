@@ -17,18 +17,32 @@
  */
 package com.github.wnameless.spring.bulkapi;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.node.BinaryNode;
+
 /**
  * 
  * {@link BulkResult} contains all details of a RESTful operation outcome.
  *
  */
+@JsonSerialize(using = BulkResultSerializer.class)
 public final class BulkResult {
 
   private int status;
   private String body;
+  private byte[] bodyBytes;
+  private String bodyCharset;
   private Map<String, String> headers;
+  private transient boolean rawBody;
+  private transient JsonNode jsonBody;
 
   /**
    * Returns the HTTP status code of a RESTful operation outcome.
@@ -55,6 +69,9 @@ public final class BulkResult {
    * @return a HTTP response body
    */
   public String getBody() {
+    if (body == null && bodyBytes != null) {
+      return new String(bodyBytes, Charset.forName(bodyCharset));
+    }
     return body;
   }
 
@@ -66,6 +83,61 @@ public final class BulkResult {
    */
   public void setBody(String body) {
     this.body = body;
+    bodyBytes = null;
+    bodyCharset = null;
+    rawBody = false;
+    jsonBody = null;
+  }
+
+  /**
+   * Sets the body as it was received, which is only decoded if it's read as
+   * text.
+   */
+  void setBody(byte[] body, Charset charset) {
+    setBody((String) null);
+    bodyBytes = body;
+    bodyCharset = charset.name();
+  }
+
+  /**
+   * Returns true if this result has a body, without decoding it.
+   */
+  boolean hasBody() {
+    return body != null || bodyBytes != null;
+  }
+
+  /**
+   * Returns the body as it was received, or null if it was set as text.
+   */
+  byte[] getBodyBytes() {
+    return bodyBytes;
+  }
+
+  /**
+   * Returns the charset of the body as it was received.
+   */
+  Charset getBodyCharset() {
+    return bodyCharset == null ? null : Charset.forName(bodyCharset);
+  }
+
+  /**
+   * Sets the body read back from a {@link BulkResult} written by
+   * {@link BulkResultSerializer}. An embedded structure is turned back into a
+   * JSON string, and it stays embedded when the result is written again.
+   */
+  @JsonSetter("body")
+  private void setBody(JsonNode body) {
+    if (body == null || body.isNull()) {
+      setBody((String) null);
+    } else if (body.isTextual()) {
+      setBody(body.textValue());
+    } else if (body.isBinary()) {
+      setBody(new String(((BinaryNode) body).binaryValue(), UTF_8));
+    } else {
+      setBody(body.toString());
+      rawBody = true;
+      jsonBody = body;
+    }
   }
 
   /**
@@ -87,11 +159,37 @@ public final class BulkResult {
     this.headers = headers;
   }
 
+  /**
+   * Returns true if the body is valid JSON which can be embedded verbatim.
+   */
+  boolean isRawBody() {
+    return rawBody;
+  }
+
+  void setRawBody(boolean rawBody) {
+    this.rawBody = rawBody;
+  }
+
+  /**
+   * Returns the body parsed when this result was built, or null if it's not
+   * JSON or wasn't parsed.
+   */
+  JsonNode getJsonBody() {
+    return jsonBody;
+  }
+
+  void setJsonBody(JsonNode jsonBody) {
+    this.jsonBody = jsonBody;
+  }
+
   @Override
   public int hashCode() {
     int result = 27;
     result = 31 ^ result + status;
     result = 31 ^ result + ((body == null) ? 0 : body.hashCode());
+    result = 31 ^ result + Arrays.hashCode(bodyBytes);
+    result = 31 ^ result
+        + ((bodyCharset == null) ? 0 : bodyCharset.hashCode());
     result = 31 ^ result + ((headers == null) ? 0 : headers.hashCode());
     return result;
   }
@@ -104,13 +202,16 @@ public final class BulkResult {
     BulkResult o = (BulkResult) obj;
     return status == o.status
         && (body == null ? o.body == null : body.equals(o.body))
+        && Arrays.equals(bodyBytes, o.bodyBytes)
+        && (bodyCharset == null ? o.bodyCharset == null
+            : bodyCharset.equals(o.bodyCharset))
         && (headers == null ? o.headers == null : headers.equals(o.headers));
   }
 
   @Override
   public String toString() {
-    return getClass().getSimpleName() + "{status=" + status + ", body=" + body
-        + ", headers=" + headers + "}";
+    return getClass().getSimpleName() + "{status=" + status + ", body="
+        + getBody() + ", headers=" + headers + "}";
   }
 
 }
@@ -0,0 +1,272 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.web.util.UriUtils;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+/**
+ * 
+ * {@link BulkResultReferences} resolves the placeholders of a
+ * {@link BulkOperation} which refer to the results of other operations in the
+ * same bulk request.<br>
+ * <br>
+ * A placeholder looks like <i>${id.status}</i>, <i>${id.headers.Name}</i>,
+ * <i>${id.body}</i> or <i>${id.body.path.to.field[0]}</i>, where the path of
+ * body is applied to the JSON body of the referred result. Placeholders can be
+ * used in the URL, the parameters and the header values of an operation.
+ *
+ */
+final class BulkResultReferences {
+
+  private static final Pattern PLACEHOLDER = Pattern
+      .compile("\\$\\{([^.{}\\s]+)\\.(status|headers|body)(?:\\.([^{}]+))?\\}");
+
+  private static final Pattern INDEX = Pattern.compile("\\[(\\d+)\\]");
+
+  private BulkResultReferences() {}
+
+  /**
+   * Returns the ids of the operations which are referred by the placeholders
+   * of given operation.
+   * 
+   * @param op
+   *          a {@link BulkOperation}
+   * @return ids of operations in order of appearance
+   */
+  public static Set<String> referencedIds(BulkOperation op) {
+    Set<String> ids = new LinkedHashSet<>();
+    collectIds(op.getUrl(), ids);
+    if (op.getHeaders() != null) {
+      for (String value : op.getHeaders().values()) {
+        collectIds(value, ids);
+      }
+    }
+    if (op.getParams() != null) collectIds(op.getParams(), ids);
+    return ids;
+  }
+
+  private static void collectIds(Object value, Set<String> ids) {
+    if (value instanceof String) {
+      Matcher matcher = PLACEHOLDER.matcher((String) value);
+      while (matcher.find()) {
+        ids.add(matcher.group(1));
+      }
+    } else if (value instanceof Map) {
+      for (Object element : ((Map<?, ?>) value).values()) {
+        collectIds(element, ids);
+      }
+    } else if (value instanceof Collection) {
+      for (Object element : (Collection<?>) value) {
+        collectIds(element, ids);
+      }
+    }
+  }
+
+  /**
+   * Returns a copy of given operation whose placeholders are replaced by the
+   * given results. Values in the URL are percent-encoded. A parameter which
+   * is a single placeholder keeps the JSON type of the referred value.
+   * 
+   * @param op
+   *          a {@link BulkOperation}
+   * @param results
+   *          the {@link BulkResult}s keyed by operation ids
+   * @param mapper
+   *          parses the JSON bodies of results
+   * @return a resolved {@link BulkOperation}
+   * @throws IllegalArgumentException
+   *           if any placeholder can't be resolved
+   */
+  public static BulkOperation resolve(BulkOperation op,
+      Map<String, BulkResult> results, ObjectMapper mapper) {
+    Resolver resolver = new Resolver(results, mapper);
+
+    BulkOperation resolved = new BulkOperation();
+    resolved.setId(op.getId());
+    resolved.setDependsOn(op.getDependsOn());
+    resolved.setMethod(op.getMethod());
+    resolved.setSilent(op.isSilent());
+    resolved.setTimeout(op.getTimeout());
+    resolved.setIdempotencyKey(op.getIdempotencyKey());
+    resolved.setUrl(resolver.interpolate(op.getUrl(), true));
+
+    if (op.getHeaders() != null) {
+      Map<String, String> headers = new LinkedHashMap<>();
+      for (Entry<String, String> header : op.getHeaders().entrySet()) {
+        headers.put(header.getKey(),
+            resolver.interpolate(header.getValue(), false));
+      }
+      resolved.setHeaders(headers);
+    }
+
+    if (op.getParams() != null) {
+      Map<String, Object> params = new LinkedHashMap<>();
+      for (Entry<String, Object> param : op.getParams().entrySet()) {
+        params.put(param.getKey(), resolver.resolve(param.getValue()));
+      }
+      resolved.setParams(params);
+    }
+
+    return resolved;
+  }
+
+  private static final class Resolver {
+
+    private final Map<String, BulkResult> results;
+    private final ObjectMapper mapper;
+    private final Map<String, JsonNode> bodies = new HashMap<>();
+
+    Resolver(Map<String, BulkResult> results, ObjectMapper mapper) {
+      this.results = results;
+      this.mapper = mapper;
+    }
+
+    Object resolve(Object value) {
+      if (value instanceof String) {
+        Matcher matcher = PLACEHOLDER.matcher((String) value);
+        if (matcher.matches()) {
+          Object found = lookup(matcher);
+          return found instanceof JsonNode
+              ? mapper.convertValue(found, Object.class) : found;
+        }
+        return interpolate((String) value, false);
+      } else if (value instanceof Map) {
+        Map<Object, Object> map = new LinkedHashMap<>();
+        for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+          map.put(entry.getKey(), resolve(entry.getValue()));
+        }
+        return map;
+      } else if (value instanceof Collection) {
+        List<Object> list = new ArrayList<>();
+        for (Object element : (Collection<?>) value) {
+          list.add(resolve(element));
+        }
+        return list;
+      }
+      return value;
+    }
+
+    String interpolate(String value, boolean encode) {
+      if (value == null) return null;
+
+      Matcher matcher = PLACEHOLDER.matcher(value);
+      StringBuffer sb = new StringBuffer();
+      while (matcher.find()) {
+        Object found = lookup(matcher);
+        String text = found instanceof JsonNode
+            ? ((JsonNode) found).toString() : String.valueOf(found);
+        if (encode) text = UriUtils.encodePathSegment(text, UTF_8);
+        matcher.appendReplacement(sb, Matcher.quoteReplacement(text));
+      }
+      matcher.appendTail(sb);
+      return sb.toString();
+    }
+
+    /**
+     * Returns the referred value, which is either a status, a header, a body
+     * string or a JSON value of the body.
+     */
+    private Object lookup(Matcher matcher) {
+      String id = matcher.group(1);
+      String part = matcher.group(2);
+      String path = matcher.group(3);
+
+      BulkResult result = results.get(id);
+      if (result == null) throw unresolvable(matcher);
+
+      switch (part) {
+        case "status":
+          if (path != null) throw unresolvable(matcher);
+          return result.getStatus();
+        case "headers":
+          if (path == null || result.getHeaders() == null) {
+            throw unresolvable(matcher);
+          }
+          for (Entry<String, String> header : result.getHeaders().entrySet()) {
+            if (header.getKey().equalsIgnoreCase(path)) {
+              return header.getValue();
+            }
+          }
+          throw unresolvable(matcher);
+        default:
+          if (path == null) {
+            if (result.getBody() == null) throw unresolvable(matcher);
+            return result.getBody();
+          }
+          JsonNode node = body(id, result).at(pointer(path));
+          if (node.isMissingNode()) throw unresolvable(matcher);
+          if (node.isContainerNode()) return node;
+          return node.isNull() ? null
+              : mapper.convertValue(node, Object.class);
+      }
+    }
+
+    private JsonNode body(String id, BulkResult result) {
+      JsonNode body = bodies.get(id);
+      if (body == null) body = result.getJsonBody();
+      if (body == null) {
+        try {
+          if (result.getBody() != null) {
+            body = mapper.readTree(result.getBody());
+          }
+        } catch (IOException e) {
+          // Non-JSON bodies can only be referred as a whole
+        }
+        if (body == null) body = MissingNode.getInstance();
+        bodies.put(id, body);
+      }
+      return body;
+    }
+
+    private static JsonPointer pointer(String path) {
+      StringBuilder sb = new StringBuilder();
+      for (String field : INDEX.matcher(path).replaceAll(".$1").split("\\.")) {
+        if (field.isEmpty()) continue;
+        sb.append('/').append(field.replace("~", "~0").replace("/", "~1"));
+      }
+      return JsonPointer.compile(sb.toString());
+    }
+
+    private static IllegalArgumentException unresolvable(Matcher matcher) {
+      return new IllegalArgumentException(
+          "Unresolvable placeholder(" + matcher.group() + ")");
+    }
+
+  }
+
+}
@@ -0,0 +1,308 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * 
+ * {@link BulkResultSerializer} writes a {@link BulkResult}.<br>
+ * <br>
+ * In binary formats like CBOR and Smile, a JSON body is embedded as a
+ * structure instead of an escaped string, so callers don't have to parse it
+ * again. The body is parsed once when its result is built for such a format.
+ * In JSON, a body which is marked raw is embedded verbatim. Any other body is
+ * written as a string.<br>
+ * <br>
+ * A body received as UTF-8 is written as bytes without being decoded, unless
+ * the output is a character stream.
+ *
+ */
+final class BulkResultSerializer extends JsonSerializer<BulkResult> {
+
+  private static final ObjectMapper JSON = new ObjectMapper();
+
+  private static final List<String> BINARY_SUBTYPES =
+      Arrays.asList("cbor", "x-jackson-smile");
+
+  @Override
+  public void serialize(BulkResult result, JsonGenerator gen,
+      SerializerProvider serializers) throws IOException {
+    gen.writeStartObject(result);
+    gen.writeNumberField("status", result.getStatus());
+    gen.writeFieldName("body");
+    writeBody(result, gen);
+    gen.writeFieldName("headers");
+    serializers.defaultSerializeValue(result.getHeaders(), gen);
+    gen.writeEndObject();
+  }
+
+  private static void writeBody(BulkResult result, JsonGenerator gen)
+      throws IOException {
+    if (!result.hasBody()) {
+      gen.writeNull();
+      return;
+    }
+
+    byte[] utf8 = utf8Body(result, gen);
+    if (gen.canWriteBinaryNatively()) {
+      JsonNode tree = result.getJsonBody();
+      // Only a result built for a JSON response is parsed here, such as one
+      // replayed by its idempotency key
+      if (tree == null && isJson(result.getHeaders())) tree = readTree(result);
+      if (tree != null) {
+        JSON.writeTree(gen, tree);
+        return;
+      }
+    } else if (result.isRawBody()) {
+      if (utf8 != null) {
+        gen.writeRawValue(new RawUtf8Value(utf8));
+      } else {
+        gen.writeRawValue(result.getBody());
+      }
+      return;
+    }
+
+    if (utf8 != null) {
+      gen.writeUTF8String(utf8, 0, utf8.length);
+    } else {
+      gen.writeString(result.getBody());
+    }
+  }
+
+  /**
+   * Returns the body of given result if it's UTF-8 and can be written as
+   * bytes by given generator, or null otherwise.
+   */
+  private static byte[] utf8Body(BulkResult result, JsonGenerator gen) {
+    if (!(gen.getOutputTarget() instanceof OutputStream)) return null;
+    if (gen.isEnabled(JsonGenerator.Feature.ESCAPE_NON_ASCII)) return null;
+    return utf8Body(result);
+  }
+
+  /**
+   * Returns the body of given result if it's received as UTF-8, or null
+   * otherwise. A body which starts with a byte order mark or zero bytes is
+   * left to be decoded, because Jackson would detect another encoding.
+   */
+  private static byte[] utf8Body(BulkResult result) {
+    byte[] body = result.getBodyBytes();
+    if (body == null || !UTF_8.equals(result.getBodyCharset())) return null;
+
+    int first = body.length > 0 ? body[0] & 0xFF : 0;
+    if (first == 0xEF || first == 0xFE || first == 0xFF) return null;
+    for (int i = 0; i < body.length && i < 4; i++) {
+      if (body[i] == 0) return null;
+    }
+    return body;
+  }
+
+  private static JsonParser createParser(BulkResult result)
+      throws IOException {
+    byte[] utf8 = utf8Body(result);
+    return utf8 != null ? JSON.getFactory().createParser(utf8)
+        : JSON.getFactory().createParser(result.getBody());
+  }
+
+  /**
+   * Returns the parsed body of given result, or null if it isn't exactly one
+   * JSON value.
+   */
+  static JsonNode readTree(BulkResult result) {
+    if (!result.hasBody()) return null;
+
+    try (JsonParser parser = createParser(result)) {
+      if (parser.nextToken() == null) return null;
+      JsonNode tree = JSON.readTree(parser);
+      return parser.nextToken() == null ? tree : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns true if given headers have a JSON Content-Type.
+   */
+  static boolean isJson(Map<String, String> headers) {
+    if (headers == null) return false;
+    for (Entry<String, String> header : headers.entrySet()) {
+      if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(header.getKey())
+          && header.getValue() != null) {
+        try {
+          MediaType mediaType = MediaType.parseMediaType(header.getValue());
+          return MediaType.APPLICATION_JSON.isCompatibleWith(mediaType)
+              || (mediaType.getSubtype() != null
+                  && mediaType.getSubtype().endsWith("+json"));
+        } catch (InvalidMediaTypeException e) {
+          return false;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if given Accept header prefers a binary format, in which
+   * JSON bodies are embedded as structures.
+   */
+  static boolean acceptsBinary(String accept) {
+    if (accept == null) return false;
+    try {
+      List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+      MediaType.sortBySpecificityAndQuality(mediaTypes);
+      for (MediaType mediaType : mediaTypes) {
+        if (mediaType.isWildcardType() || mediaType.isWildcardSubtype()) {
+          continue;
+        }
+        return BINARY_SUBTYPES.contains(mediaType.getSubtype());
+      }
+    } catch (InvalidMediaTypeException e) {
+      // Invalid Accept headers are rejected by Spring MVC
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the body of given result is exactly one JSON value. The
+   * body is only tokenized, no tree is built.
+   */
+  static boolean isValidJson(BulkResult result) {
+    if (!result.hasBody()) return false;
+
+    try (JsonParser parser = createParser(result)) {
+      if (parser.nextToken() == null) return false;
+      parser.skipChildren();
+      return parser.nextToken() == null;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * A raw JSON value which is already encoded in UTF-8. Only its unquoted
+   * bytes are written by a byte based JSON generator, anything else falls
+   * back to the decoded text.
+   */
+  private static final class RawUtf8Value implements SerializableString {
+
+    private final byte[] utf8;
+    private SerializedString text;
+
+    RawUtf8Value(byte[] utf8) {
+      this.utf8 = utf8;
+    }
+
+    private SerializedString text() {
+      if (text == null) text = new SerializedString(new String(utf8, UTF_8));
+      return text;
+    }
+
+    @Override
+    public String getValue() {
+      return text().getValue();
+    }
+
+    @Override
+    public int charLength() {
+      return text().charLength();
+    }
+
+    @Override
+    public char[] asQuotedChars() {
+      return text().asQuotedChars();
+    }
+
+    @Override
+    public byte[] asUnquotedUTF8() {
+      return utf8;
+    }
+
+    @Override
+    public byte[] asQuotedUTF8() {
+      return text().asQuotedUTF8();
+    }
+
+    @Override
+    public int appendQuotedUTF8(byte[] buffer, int offset) {
+      return text().appendQuotedUTF8(buffer, offset);
+    }
+
+    @Override
+    public int appendQuoted(char[] buffer, int offset) {
+      return text().appendQuoted(buffer, offset);
+    }
+
+    @Override
+    public int appendUnquotedUTF8(byte[] buffer, int offset) {
+      if (offset + utf8.length > buffer.length) return -1;
+      System.arraycopy(utf8, 0, buffer, offset, utf8.length);
+      return utf8.length;
+    }
+
+    @Override
+    public int appendUnquoted(char[] buffer, int offset) {
+      return text().appendUnquoted(buffer, offset);
+    }
+
+    @Override
+    public int writeQuotedUTF8(OutputStream out) throws IOException {
+      return text().writeQuotedUTF8(out);
+    }
+
+    @Override
+    public int writeUnquotedUTF8(OutputStream out) throws IOException {
+      out.write(utf8);
+      return utf8.length;
+    }
+
+    @Override
+    public int putQuotedUTF8(ByteBuffer buffer) throws IOException {
+      return text().putQuotedUTF8(buffer);
+    }
+
+    @Override
+    public int putUnquotedUTF8(ByteBuffer buffer) throws IOException {
+      if (utf8.length > buffer.remaining()) return -1;
+      buffer.put(utf8);
+      return utf8.length;
+    }
+
+  }
+
+}
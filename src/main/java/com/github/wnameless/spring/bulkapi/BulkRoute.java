@@ -0,0 +1,166 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import org.springframework.web.bind.annotation.RequestMethod;
+
+/**
+ * 
+ * {@link BulkRoute} is a precompiled route of the Web App, which tells how
+ * bulk operations to this route are validated without any reflection.
+ *
+ */
+final class BulkRoute {
+
+  private final String path;
+
+  private final RequestMethod method;
+
+  private final boolean bulkable;
+
+  private final boolean autoApply;
+
+  private final boolean acceptBulk;
+
+  private final boolean requestBody;
+
+  /**
+   * Creates a {@link BulkRoute}.
+   * 
+   * @param path
+   *          the path template of this route
+   * @param method
+   *          the {@link RequestMethod} of this route, null if any method
+   * @param bulkable
+   *          true if the controller is annotated with {@link Bulkable}
+   * @param autoApply
+   *          true if the {@link Bulkable} applies to all routes of the
+   *          controller
+   * @param acceptBulk
+   *          true if the route is annotated with {@link AcceptBulk}
+   * @param requestBody
+   *          true if the route takes a request body
+   */
+  public BulkRoute(String path, RequestMethod method, boolean bulkable,
+      boolean autoApply, boolean acceptBulk, boolean requestBody) {
+    if (path == null) throw new NullPointerException();
+
+    this.path = path;
+    this.method = method;
+    this.bulkable = bulkable;
+    this.autoApply = autoApply;
+    this.acceptBulk = acceptBulk;
+    this.requestBody = requestBody;
+  }
+
+  /**
+   * Returns the path template of this route.
+   * 
+   * @return a path template
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * Returns the {@link RequestMethod} of this route.
+   * 
+   * @return a {@link RequestMethod}, null if any method is accepted
+   */
+  public RequestMethod getMethod() {
+    return method;
+  }
+
+  /**
+   * Returns true if the controller of this route is annotated with
+   * {@link Bulkable}.
+   * 
+   * @return true if the controller is bulkable
+   */
+  public boolean isBulkable() {
+    return bulkable;
+  }
+
+  /**
+   * Returns true if the {@link Bulkable} of the controller applies to all its
+   * routes.
+   * 
+   * @return true if auto applied
+   */
+  public boolean isAutoApply() {
+    return autoApply;
+  }
+
+  /**
+   * Returns true if this route is annotated with {@link AcceptBulk}.
+   * 
+   * @return true if annotated with {@link AcceptBulk}
+   */
+  public boolean isAcceptBulk() {
+    return acceptBulk;
+  }
+
+  /**
+   * Returns true if this route takes a request body.
+   * 
+   * @return true if a request body is taken
+   */
+  public boolean hasRequestBody() {
+    return requestBody;
+  }
+
+  /**
+   * Returns true if bulk operations are allowed to this route.
+   * 
+   * @return true if bulk operations are allowed
+   */
+  public boolean acceptsBulk() {
+    return bulkable && (autoApply || acceptBulk);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 27;
+    result = result ^ 31 + path.hashCode();
+    result = result ^ 31 + (method == null ? 0 : method.hashCode());
+    result = result ^ 31 + (bulkable ? 1 : 0);
+    result = result ^ 31 + (autoApply ? 1 : 0);
+    result = result ^ 31 + (acceptBulk ? 1 : 0);
+    result = result ^ 31 + (requestBody ? 1 : 0);
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) return true;
+    if (obj == null) return false;
+    if (!(obj instanceof BulkRoute)) return false;
+    BulkRoute br = (BulkRoute) obj;
+    return path.equals(br.path) && method == br.method
+        && bulkable == br.bulkable && autoApply == br.autoApply
+        && acceptBulk == br.acceptBulk && requestBody == br.requestBody;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{path=" + path + ", method=" + method
+        + ", bulkable=" + bulkable + ", autoApply=" + autoApply
+        + ", acceptBulk=" + acceptBulk + ", requestBody=" + requestBody + "}";
+  }
+
+}
@@ -0,0 +1,120 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.lang.annotation.Annotation;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import com.github.wnameless.spring.routing.RoutingPath;
+
+/**
+ * 
+ * {@link BulkRouteTable} is an immutable table of all {@link BulkRoute}s which
+ * is precompiled from {@link RoutingPath}s, so no reflection is needed while
+ * validating bulk operations.
+ *
+ */
+final class BulkRouteTable {
+
+  private final Map<RoutingPath, BulkRoute> routes;
+
+  public BulkRouteTable(Collection<RoutingPath> routingPaths) {
+    Map<RoutingPath, BulkRoute> table = new LinkedHashMap<>();
+    for (RoutingPath rp : routingPaths) {
+      table.put(rp, compile(rp));
+    }
+    routes = Collections.unmodifiableMap(table);
+  }
+
+  /**
+   * Returns the {@link BulkRoute} of given {@link RoutingPath}.
+   * 
+   * @param rp
+   *          a {@link RoutingPath}
+   * @return a {@link BulkRoute} or null if not found
+   */
+  public BulkRoute find(RoutingPath rp) {
+    return routes.get(rp);
+  }
+
+  /**
+   * Finds the {@link BulkRoute} which matches given request path and method.
+   * Literal paths are preferred over templates, the same as
+   * {@link com.github.wnameless.spring.routing.RoutingPathResolver}, but the
+   * precompiled patterns of the routes are reused.
+   * 
+   * @param path
+   *          a request path
+   * @param method
+   *          a request method
+   * @return a {@link BulkRoute} or null if not found
+   */
+  public BulkRoute find(String path, RequestMethod method) {
+    for (Entry<RoutingPath, BulkRoute> route : routes.entrySet()) {
+      if (route.getKey().getPath().equals(path)
+          && route.getKey().getMethod() == method)
+        return route.getValue();
+    }
+    for (Entry<RoutingPath, BulkRoute> route : routes.entrySet()) {
+      if (route.getKey().getRegexPath().matcher(path).matches()
+          && route.getKey().getMethod() == method)
+        return route.getValue();
+    }
+    return null;
+  }
+
+  public Collection<BulkRoute> getRoutes() {
+    return routes.values();
+  }
+
+  private static BulkRoute compile(RoutingPath rp) {
+    Bulkable bulkable = findBulkableAnno(rp);
+    return new BulkRoute(rp.getPath(), rp.getMethod(), bulkable != null,
+        bulkable != null && bulkable.autoApply(), isAcceptBulk(rp),
+        hasRequestBody(rp));
+  }
+
+  private static boolean hasRequestBody(RoutingPath rp) {
+    for (List<Annotation> annos : rp.getParameterAnnotations()) {
+      for (Annotation anno : annos) {
+        if (anno.annotationType().equals(RequestBody.class)) return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isAcceptBulk(RoutingPath rp) {
+    return rp.getMethodAnnotations().stream()
+        .anyMatch(anno -> anno.annotationType().equals(AcceptBulk.class));
+  }
+
+  private static Bulkable findBulkableAnno(RoutingPath rp) {
+    return rp.getClassAnnotations().stream()
+        .filter(item -> item.annotationType().equals(Bulkable.class))
+        .map(Bulkable.class::cast).findFirst().orElse(null);
+  }
+
+}
@@ -0,0 +1,305 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * 
+ * {@link BulkServletRequest} is a synthetic {@link HttpServletRequest} which
+ * represents a single bulk operation dispatched within the same JVM.<br>
+ * <br>
+ * The method, URI, headers, parameters and body come from the bulk operation
+ * only, everything else (session, principal, server info...) is taken from the
+ * bulk request itself.
+ *
+ */
+final class BulkServletRequest extends HttpServletRequestWrapper {
+
+  private final HttpMethod method;
+  private final URI uri;
+  private final String servletPath;
+  private final String pathInfo;
+  private final HttpHeaders headers;
+  private final MultiValueMap<String, String> params;
+  private final byte[] body;
+  private final Map<String, Object> attributes = new LinkedHashMap<>();
+
+  private String characterEncoding;
+
+  public BulkServletRequest(HttpServletRequest servReq, HttpMethod method,
+      URI uri, HttpHeaders headers, MultiValueMap<String, String> formParams,
+      byte[] body) {
+    super(servReq);
+    this.method = method;
+    this.uri = uri;
+    this.headers = headers;
+    this.body = body == null ? new byte[0] : body;
+
+    String path = uri.getPath().substring(servReq.getContextPath().length());
+    if (servReq.getPathInfo() == null) {
+      servletPath = path;
+      pathInfo = null;
+    } else {
+      servletPath = servReq.getServletPath();
+      pathInfo = path.substring(servletPath.length());
+    }
+
+    params = new LinkedMultiValueMap<>();
+    UriComponentsBuilder.fromUri(uri).build().getQueryParams()
+        .forEach((key, values) -> values.forEach(value -> params.add(
+            decode(key), value == null ? null : decode(value))));
+    if (formParams != null) params.addAll(formParams);
+
+    MediaType contentType = headers.getContentType();
+    if (contentType != null && contentType.getCharset() != null) {
+      characterEncoding = contentType.getCharset().name();
+    }
+  }
+
+  private static String decode(String value) {
+    return UriUtils.decode(value.replace('+', ' '), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String getMethod() {
+    return method.name();
+  }
+
+  @Override
+  public String getRequestURI() {
+    return uri.getRawPath();
+  }
+
+  @Override
+  public StringBuffer getRequestURL() {
+    return new StringBuffer(
+        uri.getScheme() + "://" + uri.getRawAuthority() + uri.getRawPath());
+  }
+
+  @Override
+  public String getServletPath() {
+    return servletPath;
+  }
+
+  @Override
+  public String getPathInfo() {
+    return pathInfo;
+  }
+
+  @Override
+  public String getPathTranslated() {
+    return pathInfo == null ? null
+        : getServletContext().getRealPath(pathInfo);
+  }
+
+  @Override
+  public String getQueryString() {
+    return uri.getRawQuery();
+  }
+
+  @Override
+  public String getHeader(String name) {
+    return headers.getFirst(name);
+  }
+
+  @Override
+  public Enumeration<String> getHeaders(String name) {
+    List<String> values = headers.get(name);
+    return Collections.enumeration(
+        values == null ? Collections.<String>emptyList() : values);
+  }
+
+  @Override
+  public Enumeration<String> getHeaderNames() {
+    return Collections.enumeration(headers.keySet());
+  }
+
+  @Override
+  public int getIntHeader(String name) {
+    String value = headers.getFirst(name);
+    return value == null ? -1 : Integer.parseInt(value);
+  }
+
+  @Override
+  public long getDateHeader(String name) {
+    return headers.getFirstDate(name);
+  }
+
+  @Override
+  public Cookie[] getCookies() {
+    return null;
+  }
+
+  @Override
+  public String getContentType() {
+    MediaType contentType = headers.getContentType();
+    return contentType == null ? null : contentType.toString();
+  }
+
+  @Override
+  public int getContentLength() {
+    return body.length;
+  }
+
+  @Override
+  public long getContentLengthLong() {
+    return body.length;
+  }
+
+  @Override
+  public String getCharacterEncoding() {
+    return characterEncoding;
+  }
+
+  @Override
+  public void setCharacterEncoding(String env)
+      throws UnsupportedEncodingException {
+    if (!Charset.isSupported(env)) throw new UnsupportedEncodingException(env);
+    characterEncoding = env;
+  }
+
+  @Override
+  public ServletInputStream getInputStream() {
+    ByteArrayInputStream in = new ByteArrayInputStream(body);
+    return new ServletInputStream() {
+
+      @Override
+      public int read() {
+        return in.read();
+      }
+
+      @Override
+      public boolean isFinished() {
+        return in.available() == 0;
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setReadListener(ReadListener readListener) {
+        throw new UnsupportedOperationException();
+      }
+
+    };
+  }
+
+  @Override
+  public BufferedReader getReader() {
+    Charset charset = characterEncoding == null ? StandardCharsets.ISO_8859_1
+        : Charset.forName(characterEncoding);
+    return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+  }
+
+  @Override
+  public String getParameter(String name) {
+    return params.getFirst(name);
+  }
+
+  @Override
+  public Map<String, String[]> getParameterMap() {
+    Map<String, String[]> parameterMap = new LinkedHashMap<>();
+    for (Entry<String, List<String>> param : params.entrySet()) {
+      parameterMap.put(param.getKey(),
+          param.getValue().toArray(new String[param.getValue().size()]));
+    }
+    return Collections.unmodifiableMap(parameterMap);
+  }
+
+  @Override
+  public Enumeration<String> getParameterNames() {
+    return Collections.enumeration(params.keySet());
+  }
+
+  @Override
+  public String[] getParameterValues(String name) {
+    List<String> values = params.get(name);
+    return values == null ? null : values.toArray(new String[values.size()]);
+  }
+
+  @Override
+  public Object getAttribute(String name) {
+    return attributes.get(name);
+  }
+
+  @Override
+  public Enumeration<String> getAttributeNames() {
+    return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+  }
+
+  @Override
+  public void setAttribute(String name, Object o) {
+    if (o == null) {
+      attributes.remove(name);
+    } else {
+      attributes.put(name, o);
+    }
+  }
+
+  @Override
+  public void removeAttribute(String name) {
+    attributes.remove(name);
+  }
+
+  @Override
+  public boolean isAsyncSupported() {
+    return false;
+  }
+
+  @Override
+  public boolean isAsyncStarted() {
+    return false;
+  }
+
+  @Override
+  public DispatcherType getDispatcherType() {
+    return DispatcherType.REQUEST;
+  }
+
+}
@@ -0,0 +1,408 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.AbstractClientHttpResponse;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * 
+ * {@link BulkServletResponse} is a synthetic {@link HttpServletResponse} which
+ * buffers the outcome of a single bulk operation dispatched within the same
+ * JVM.
+ *
+ */
+final class BulkServletResponse implements HttpServletResponse {
+
+  private final HttpHeaders headers = new HttpHeaders();
+  private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+  private int status = SC_OK;
+  private String characterEncoding;
+  private Locale locale = Locale.getDefault();
+  private boolean committed = false;
+  private ServletOutputStream outputStream;
+  private PrintWriter writer;
+
+  /**
+   * Returns the buffered outcome as a {@link ClientHttpResponse}.
+   * 
+   * @return a {@link ClientHttpResponse}
+   */
+  public ClientHttpResponse toClientHttpResponse() {
+    if (writer != null) writer.flush();
+
+    return new AbstractClientHttpResponse() {
+
+      @Override
+      public int getRawStatusCode() {
+        return status;
+      }
+
+      @Override
+      public String getStatusText() {
+        HttpStatus httpStatus = HttpStatus.resolve(status);
+        return httpStatus == null ? "" : httpStatus.getReasonPhrase();
+      }
+
+      @Override
+      public HttpHeaders getHeaders() {
+        return headers;
+      }
+
+      @Override
+      public InputStream getBody() {
+        return new ByteArrayInputStream(body.toByteArray());
+      }
+
+      @Override
+      public void close() {}
+
+    };
+  }
+
+  /**
+   * Returns the {@link Charset} of the buffered body.
+   * 
+   * @return a {@link Charset}
+   */
+  public Charset getCharset() {
+    return Charset.forName(getCharacterEncoding());
+  }
+
+  /**
+   * Returns the buffered body.
+   * 
+   * @return the body bytes
+   */
+  public byte[] getBodyAsByteArray() {
+    if (writer != null) writer.flush();
+    return body.toByteArray();
+  }
+
+  @Override
+  public String getCharacterEncoding() {
+    if (characterEncoding != null) return characterEncoding;
+
+    MediaType contentType = headers.getContentType();
+    if (contentType != null && contentType.getCharset() != null) {
+      return contentType.getCharset().name();
+    }
+    return StandardCharsets.ISO_8859_1.name();
+  }
+
+  @Override
+  public String getContentType() {
+    MediaType contentType = headers.getContentType();
+    return contentType == null ? null : contentType.toString();
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() {
+    if (writer != null) throw new IllegalStateException(
+        "getWriter() has already been called for this response");
+
+    if (outputStream == null) {
+      outputStream = new ServletOutputStream() {
+
+        @Override
+        public void write(int b) {
+          body.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+          body.write(b, off, len);
+        }
+
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+          throw new UnsupportedOperationException();
+        }
+
+      };
+    }
+    return outputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() {
+    if (outputStream != null) throw new IllegalStateException(
+        "getOutputStream() has already been called for this response");
+
+    if (writer == null) {
+      writer = new PrintWriter(new OutputStreamWriter(body, getCharset()));
+    }
+    return writer;
+  }
+
+  @Override
+  public void setCharacterEncoding(String charset) {
+    if (committed || writer != null) return;
+
+    characterEncoding = charset;
+    MediaType contentType = headers.getContentType();
+    if (contentType != null) {
+      headers.setContentType(
+          new MediaType(contentType, Charset.forName(charset)));
+    }
+  }
+
+  @Override
+  public void setContentLength(int len) {
+    setContentLengthLong(len);
+  }
+
+  @Override
+  public void setContentLengthLong(long len) {
+    if (committed) return;
+    headers.setContentLength(len);
+  }
+
+  @Override
+  public void setContentType(String type) {
+    if (committed || type == null) return;
+
+    MediaType contentType = MediaType.parseMediaType(type);
+    if (contentType.getCharset() == null && characterEncoding != null) {
+      contentType =
+          new MediaType(contentType, Charset.forName(characterEncoding));
+    } else if (contentType.getCharset() != null && writer == null) {
+      characterEncoding = contentType.getCharset().name();
+    }
+    headers.setContentType(contentType);
+  }
+
+  @Override
+  public void setBufferSize(int size) {}
+
+  @Override
+  public int getBufferSize() {
+    return body.size();
+  }
+
+  @Override
+  public void flushBuffer() {
+    if (writer != null) writer.flush();
+    committed = true;
+  }
+
+  @Override
+  public void resetBuffer() {
+    if (committed) throw new IllegalStateException(
+        "Cannot reset buffer - response is already committed");
+    body.reset();
+  }
+
+  @Override
+  public boolean isCommitted() {
+    return committed;
+  }
+
+  @Override
+  public void reset() {
+    resetBuffer();
+    headers.clear();
+    status = SC_OK;
+    characterEncoding = null;
+  }
+
+  @Override
+  public void setLocale(Locale loc) {
+    if (committed || loc == null) return;
+    locale = loc;
+    headers.setContentLanguage(loc);
+  }
+
+  @Override
+  public Locale getLocale() {
+    return locale;
+  }
+
+  @Override
+  public void addCookie(Cookie cookie) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(cookie.getName()).append('=')
+        .append(cookie.getValue() == null ? "" : cookie.getValue());
+    if (cookie.getPath() != null) sb.append("; Path=").append(cookie.getPath());
+    if (cookie.getDomain() != null)
+      sb.append("; Domain=").append(cookie.getDomain());
+    if (cookie.getMaxAge() >= 0)
+      sb.append("; Max-Age=").append(cookie.getMaxAge());
+    if (cookie.getSecure()) sb.append("; Secure");
+    if (cookie.isHttpOnly()) sb.append("; HttpOnly");
+    addHeader(HttpHeaders.SET_COOKIE, sb.toString());
+  }
+
+  @Override
+  public boolean containsHeader(String name) {
+    return headers.containsKey(name);
+  }
+
+  @Override
+  public String encodeURL(String url) {
+    return url;
+  }
+
+  @Override
+  public String encodeRedirectURL(String url) {
+    return url;
+  }
+
+  @Override
+  @Deprecated
+  public String encodeUrl(String url) {
+    return url;
+  }
+
+  @Override
+  @Deprecated
+  public String encodeRedirectUrl(String url) {
+    return url;
+  }
+
+  @Override
+  public void sendError(int sc, String msg) {
+    if (committed) throw new IllegalStateException(
+        "Cannot send error - response is already committed");
+    status = sc;
+    if (msg != null) {
+      byte[] bytes = msg.getBytes(getCharset());
+      body.reset();
+      body.write(bytes, 0, bytes.length);
+    }
+    committed = true;
+  }
+
+  @Override
+  public void sendError(int sc) {
+    sendError(sc, null);
+  }
+
+  @Override
+  public void sendRedirect(String location) {
+    if (committed) throw new IllegalStateException(
+        "Cannot send redirect - response is already committed");
+    status = SC_FOUND;
+    headers.set(HttpHeaders.LOCATION, location);
+    committed = true;
+  }
+
+  @Override
+  public void setDateHeader(String name, long date) {
+    if (committed) return;
+    headers.setDate(name, date);
+  }
+
+  @Override
+  public void addDateHeader(String name, long date) {
+    if (committed) return;
+    HttpHeaders dateHeader = new HttpHeaders();
+    dateHeader.setDate(name, date);
+    headers.add(name, dateHeader.getFirst(name));
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+    if (committed) return;
+    if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name)) {
+      setContentType(value);
+    } else {
+      headers.set(name, value);
+    }
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+    if (committed) return;
+    if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name)) {
+      setContentType(value);
+    } else {
+      headers.add(name, value);
+    }
+  }
+
+  @Override
+  public void setIntHeader(String name, int value) {
+    setHeader(name, String.valueOf(value));
+  }
+
+  @Override
+  public void addIntHeader(String name, int value) {
+    addHeader(name, String.valueOf(value));
+  }
+
+  @Override
+  public void setStatus(int sc) {
+    if (committed) return;
+    status = sc;
+  }
+
+  @Override
+  @Deprecated
+  public void setStatus(int sc, String sm) {
+    setStatus(sc);
+  }
+
+  @Override
+  public int getStatus() {
+    return status;
+  }
+
+  @Override
+  public String getHeader(String name) {
+    return headers.getFirst(name);
+  }
+
+  @Override
+  public Collection<String> getHeaders(String name) {
+    List<String> values = headers.get(name);
+    return values == null ? new ArrayList<>() : new ArrayList<>(values);
+  }
+
+  @Override
+  public Collection<String> getHeaderNames() {
+    return new ArrayList<>(headers.keySet());
+  }
+
+}
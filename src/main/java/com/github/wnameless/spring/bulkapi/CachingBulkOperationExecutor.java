@@ -0,0 +1,353 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CACHE_MAX_SIZE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CACHE_MAX_SIZE_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CACHE_MAX_WEIGHT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CACHE_MAX_WEIGHT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CACHE_VARY_HEADERS_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CACHE_VARY_HEADERS_KEY;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+
+/**
+ * 
+ * {@link CachingBulkOperationExecutor} keeps the responses of GET and HEAD
+ * operations in memory and shares them across bulk requests.<br>
+ * <br>
+ * Responses are keyed by method, computed URI, the values of the vary headers
+ * and the user principal of the bulk request. Only 200 responses which allow
+ * it by Cache-Control are stored. Operations which carry credentials outside
+ * of the cache key, i.e. cookies or an Authorization header which is not a
+ * vary header, are never cached.
+ * A fresh response is returned right away. A stale response with an ETag is
+ * revalidated by If-None-Match, and reused if the operation answers 304.<br>
+ * <br>
+ * The least recently used responses are evicted once either the number of
+ * responses or the total bytes of their bodies exceed the limit.
+ *
+ */
+final class CachingBulkOperationExecutor implements BulkOperationExecutor {
+
+  private final BulkOperationExecutor delegate;
+  private final int maxSize;
+  private final long maxWeight;
+  private final List<String> varyHeaders;
+  private final Supplier<BulkApiMetrics> metrics;
+  private final Map<List<Object>, Entry> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  private long weight;
+
+  /**
+   * Creates a {@link CachingBulkOperationExecutor} configured by the
+   * <i>spring.bulk.api.cache.*</i> properties.
+   * 
+   * @param delegate
+   *          the {@link BulkOperationExecutor} which executes cache misses
+   * @param env
+   *          the Spring {@link Environment}
+   * @param metrics
+   *          supplies the {@link BulkApiMetrics}
+   * @return a {@link CachingBulkOperationExecutor}
+   */
+  static CachingBulkOperationExecutor of(BulkOperationExecutor delegate,
+      Environment env, Supplier<BulkApiMetrics> metrics) {
+    int maxSize = env.getProperty(BULK_API_CACHE_MAX_SIZE_KEY, int.class,
+        BULK_API_CACHE_MAX_SIZE_DEFAULT);
+    long maxWeight = env.getProperty(BULK_API_CACHE_MAX_WEIGHT_KEY, long.class,
+        BULK_API_CACHE_MAX_WEIGHT_DEFAULT);
+    String varyHeaders = env.getProperty(BULK_API_CACHE_VARY_HEADERS_KEY,
+        BULK_API_CACHE_VARY_HEADERS_DEFAULT);
+    return new CachingBulkOperationExecutor(delegate, maxSize, maxWeight,
+        Arrays.asList(StringUtils.tokenizeToStringArray(varyHeaders, ",")),
+        metrics);
+  }
+
+  public CachingBulkOperationExecutor(BulkOperationExecutor delegate,
+      int maxSize, long maxWeight, List<String> varyHeaders,
+      Supplier<BulkApiMetrics> metrics) {
+    if (delegate == null) throw new NullPointerException();
+
+    this.delegate = delegate;
+    this.maxSize = maxSize;
+    this.maxWeight = maxWeight;
+    this.varyHeaders = new ArrayList<>();
+    for (String header : varyHeaders) {
+      this.varyHeaders.add(header.toLowerCase(Locale.ROOT));
+    }
+    this.metrics = metrics;
+  }
+
+  @Override
+  public ResponseEntity<String> execute(RequestEntity<?> request,
+      HttpServletRequest servReq) {
+    if (!isCacheable(request, servReq)) {
+      return delegate.execute(request, servReq);
+    }
+
+    return BulkResponseBodies.toText(executeForBytes(request, servReq));
+  }
+
+  @Override
+  public ResponseEntity<byte[]> executeForBytes(RequestEntity<?> request,
+      HttpServletRequest servReq) {
+    if (!isCacheable(request, servReq)) {
+      return delegate.executeForBytes(request, servReq);
+    }
+
+    List<Object> key = key(request, servReq);
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(key);
+    }
+
+    if (entry != null && entry.isFresh()) {
+      hitCount.incrementAndGet();
+      metrics.get().recordCacheLookup("hit");
+      return entry.response;
+    }
+
+    RequestEntity<?> actual = request;
+    if (entry != null && entry.etag != null) {
+      HttpHeaders headers = new HttpHeaders();
+      headers.putAll(request.getHeaders());
+      headers.setIfNoneMatch(entry.etag);
+      actual = new RequestEntity<>(request.getBody(), headers,
+          request.getMethod(), request.getUrl());
+    }
+
+    ResponseEntity<byte[]> response =
+        delegate.executeForBytes(actual, servReq);
+    if (entry != null && entry.etag != null
+        && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+      hitCount.incrementAndGet();
+      metrics.get().recordCacheLookup("revalidated");
+      store(key, new Entry(entry.response, entry.etag, entry.weight,
+          freshness(response.getHeaders())));
+      return entry.response;
+    }
+
+    missCount.incrementAndGet();
+    metrics.get().recordCacheLookup("miss");
+    Entry stored = toEntry(response);
+    if (stored != null) {
+      store(key, stored);
+    } else if (entry != null) {
+      remove(key);
+    }
+    return response;
+  }
+
+  /**
+   * Returns the number of responses in this cache.
+   * 
+   * @return the number of responses
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the total bytes of response bodies in this cache.
+   * 
+   * @return the total bytes
+   */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  private boolean isCacheable(RequestEntity<?> request,
+      HttpServletRequest servReq) {
+    if (request.getMethod() != HttpMethod.GET
+        && request.getMethod() != HttpMethod.HEAD) {
+      return false;
+    }
+
+    HttpHeaders headers = request.getHeaders();
+    // Conditional requests are answered by the operation itself
+    if (headers.containsKey(HttpHeaders.IF_NONE_MATCH)
+        || headers.containsKey(HttpHeaders.IF_MODIFIED_SINCE)) {
+      return false;
+    }
+    if (directives(headers).contains("no-store")) return false;
+
+    // Credentials which are not part of the key must not share responses
+    if (headers.containsKey(HttpHeaders.COOKIE)
+        || servReq.getHeader(HttpHeaders.COOKIE) != null) {
+      return false;
+    }
+    if (!varyHeaders.contains("authorization")
+        && (headers.containsKey(HttpHeaders.AUTHORIZATION)
+            || servReq.getHeader(HttpHeaders.AUTHORIZATION) != null)) {
+      return false;
+    }
+    return true;
+  }
+
+  private List<Object> key(RequestEntity<?> request,
+      HttpServletRequest servReq) {
+    List<Object> key = new ArrayList<>(varyHeaders.size() + 4);
+    key.add(request.getMethod());
+    key.add(request.getUrl());
+    for (String header : varyHeaders) {
+      key.add(request.getHeaders().get(header));
+    }
+    // In-process operations run as the caller of the bulk request
+    key.add(servReq.getUserPrincipal() == null ? null
+        : servReq.getUserPrincipal().getName());
+    key.add(servReq.getHeader(HttpHeaders.AUTHORIZATION));
+    return key;
+  }
+
+  /**
+   * Returns an {@link Entry} of given response, or null if the response can't
+   * be stored.
+   */
+  private Entry toEntry(ResponseEntity<byte[]> response) {
+    if (response.getStatusCode() != HttpStatus.OK) return null;
+
+    HttpHeaders headers = response.getHeaders();
+    List<String> directives = directives(headers);
+    if (directives.contains("no-store") || directives.contains("private")
+        || headers.containsKey(HttpHeaders.SET_COOKIE)) {
+      return null;
+    }
+
+    for (String vary : headers.getVary()) {
+      if (!varyHeaders.contains(vary.toLowerCase(Locale.ROOT))) return null;
+    }
+
+    long freshness = freshness(headers);
+    String etag = headers.getETag();
+    if (freshness <= 0 && etag == null) return null;
+
+    long bodyWeight = response.hasBody() ? response.getBody().length : 0;
+    if (bodyWeight > maxWeight) return null;
+
+    return new Entry(response, etag, bodyWeight, freshness);
+  }
+
+  private synchronized void store(List<Object> key, Entry entry) {
+    Entry old = entries.put(key, entry);
+    if (old != null) weight -= old.weight;
+    weight += entry.weight;
+
+    Iterator<Entry> eldest = entries.values().iterator();
+    while ((entries.size() > maxSize || weight > maxWeight)
+        && eldest.hasNext()) {
+      weight -= eldest.next().weight;
+      eldest.remove();
+      metrics.get().recordCacheEviction();
+    }
+  }
+
+  private synchronized void remove(List<Object> key) {
+    Entry old = entries.remove(key);
+    if (old != null) weight -= old.weight;
+  }
+
+  /**
+   * Returns the freshness lifetime in nanoseconds by s-maxage or max-age. A
+   * response with no-cache is always stale.
+   */
+  private static long freshness(HttpHeaders headers) {
+    List<String> directives = directives(headers);
+    if (directives.contains("no-cache")) return 0;
+
+    long seconds = directiveValue(directives, "s-maxage");
+    if (seconds < 0) seconds = directiveValue(directives, "max-age");
+    return seconds > 0 ? SECONDS.toNanos(seconds) : 0;
+  }
+
+  private static List<String> directives(HttpHeaders headers) {
+    List<String> directives = new ArrayList<>();
+    for (String value : headers.getValuesAsList(HttpHeaders.CACHE_CONTROL)) {
+      for (String directive : StringUtils.tokenizeToStringArray(value, ",")) {
+        directives.add(directive.toLowerCase(Locale.ROOT));
+      }
+    }
+    return directives;
+  }
+
+  private static long directiveValue(List<String> directives, String name) {
+    for (String directive : directives) {
+      if (directive.startsWith(name + "=")) {
+        try {
+          return Long.parseLong(
+              directive.substring(name.length() + 1).replace("\"", "").trim());
+        } catch (NumberFormatException e) {
+          return -1;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static final class Entry {
+
+    private final ResponseEntity<byte[]> response;
+    private final String etag;
+    private final long weight;
+    private final long expiresAt;
+
+    Entry(ResponseEntity<byte[]> response, String etag, long weight,
+        long freshnessNanos) {
+      this.response = response;
+      this.etag = etag;
+      this.weight = weight;
+      expiresAt = System.nanoTime() + freshnessNanos;
+    }
+
+    boolean isFresh() {
+      return expiresAt - System.nanoTime() > 0;
+    }
+
+  }
+
+}
@@ -0,0 +1,40 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.ResponseErrorHandler;
+
+/**
+ * 
+ * {@link CapturingResponseErrorHandler} treats every response as a normal
+ * one, so error responses of bulk operations are captured as results instead
+ * of being thrown as exceptions.
+ *
+ */
+final class CapturingResponseErrorHandler implements ResponseErrorHandler {
+
+  @Override
+  public boolean hasError(ClientHttpResponse response) {
+    return false;
+  }
+
+  @Override
+  public void handleError(ClientHttpResponse response) {}
+
+}
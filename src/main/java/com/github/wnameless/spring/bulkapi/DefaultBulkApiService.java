@@ -17,29 +17,113 @@
  */
 package com.github.wnameless.spring.bulkapi;
 
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ADMISSION_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_BULKHEAD_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CACHE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_CACHE_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COALESCE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_COALESCE_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_DISPATCH_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_DISPATCH_IN_PROCESS;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_DISPATCH_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_IDEMPOTENCY_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_IDEMPOTENCY_HEADER;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_IDEMPOTENCY_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_IDEMPOTENCY_MAX_SIZE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_IDEMPOTENCY_MAX_SIZE_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_IDEMPOTENCY_TTL_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_IDEMPOTENCY_TTL_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_LIMIT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_JOBS_LIMIT_KEY;
 import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_LIMIT_DEFAULT;
 import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_LIMIT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_MAX_ERRORS_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_MAX_ERRORS_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_MAX_TIMEOUT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_MAX_TIMEOUT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_METRICS_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_METRICS_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ON_ERROR_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ON_ERROR_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_ON_ERROR_STOP;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_OPERATION_TIMEOUT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_OPERATION_TIMEOUT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PARALLEL_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PARALLEL_EXECUTOR_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PARALLEL_EXECUTOR_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PARALLEL_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PARALLEL_POOL_SIZE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PARALLEL_POOL_SIZE_KEY;
 import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PATH_DEFAULT;
 import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_PATH_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_RAW_JSON_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_RAW_JSON_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_REST_TEMPLATE_BEAN_NAME;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_TIMEOUT_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_TIMEOUT_KEY;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_VALIDATION_CACHE_SIZE_DEFAULT;
+import static com.github.wnameless.spring.bulkapi.BulkApiConfig.BULK_API_VALIDATION_CACHE_SIZE_KEY;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.springframework.http.HttpStatus.CONFLICT;
+import static org.springframework.http.HttpStatus.FAILED_DEPENDENCY;
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
 import static org.springframework.http.HttpStatus.PAYLOAD_TOO_LARGE;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
 import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
 
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.RequestEntity;
-import org.springframework.http.RequestEntity.BodyBuilder;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.wnameless.spring.bulkapi.BulkAdmission.Ticket;
+import com.github.wnameless.spring.bulkapi.BulkOperationBulkheads.Permit;
 
 /**
  * 
@@ -47,13 +131,24 @@ import org.springframework.web.client.RestTemplate;
  * {@link BulkApiService}.
  *
  */
-public class DefaultBulkApiService implements BulkApiService {
+public class DefaultBulkApiService implements BulkApiService, DisposableBean {
 
   private final ApplicationContext appCtx;
   private final Environment env;
 
   private BulkApiValidator validator;
   private URITransformer uriTransformer;
+  private BulkOperationExecutor executor;
+  private BulkOperationBulkheads bulkheads;
+  private BulkAdmission admission;
+  private final boolean rawJson;
+  private RestTemplate restTemplate;
+  private volatile ExecutorService parallelExecutor;
+  private volatile BulkApiMetrics metrics;
+  private volatile BulkIdempotencyStore idempotencyStore;
+  private volatile ObjectMapper mapper;
+  private final Set<String> idempotencyKeysInFlight =
+      ConcurrentHashMap.newKeySet();
 
   /**
    * Creates a {@link DefaultBulkApiService}.
@@ -69,88 +164,928 @@ public class DefaultBulkApiService implements BulkApiService {
     if (beanNames.length > 0) {
       uriTransformer = appCtx.getBean(URITransformer.class);
     }
+
+    String dispatch =
+        env.getProperty(BULK_API_DISPATCH_KEY, BULK_API_DISPATCH_DEFAULT);
+    beanNames = appCtx.getBeanNamesForType(BulkOperationExecutor.class);
+    if (beanNames.length > 0) {
+      executor = appCtx.getBean(BulkOperationExecutor.class);
+    } else if (BULK_API_DISPATCH_IN_PROCESS.equalsIgnoreCase(dispatch.trim())) {
+      executor = new DispatcherBulkOperationExecutor(appCtx,
+          new LoopbackBulkOperationExecutor(restTemplate()));
+    } else {
+      executor = new LoopbackBulkOperationExecutor(restTemplate());
+    }
+    if (env.getProperty(BULK_API_CACHE_KEY, boolean.class,
+        BULK_API_CACHE_DEFAULT)) {
+      executor = CachingBulkOperationExecutor.of(executor, env, this::metrics);
+    }
+    if (env.getProperty(BULK_API_BULKHEAD_KEY, boolean.class,
+        BULK_API_BULKHEAD_DEFAULT)) {
+      bulkheads = BulkOperationBulkheads.of(env);
+    }
+    if (env.getProperty(BULK_API_ADMISSION_KEY, boolean.class,
+        BULK_API_ADMISSION_DEFAULT)) {
+      admission = BulkAdmission.of(env);
+    }
+    rawJson = env.getProperty(BULK_API_RAW_JSON_KEY, boolean.class,
+        BULK_API_RAW_JSON_DEFAULT);
+  }
+
+  private RestTemplate restTemplate() {
+    if (appCtx.containsBean(BULK_API_REST_TEMPLATE_BEAN_NAME)) {
+      return appCtx.getBean(BULK_API_REST_TEMPLATE_BEAN_NAME,
+          RestTemplate.class);
+    }
+
+    // Without the BulkApiConfig, the service owns its RestTemplate
+    restTemplate = BulkRestTemplateFactory.newRestTemplate(env);
+    return restTemplate;
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    if (parallelExecutor != null) parallelExecutor.shutdown();
+    if (restTemplate instanceof DisposableBean) {
+      ((DisposableBean) restTemplate).destroy();
+    }
   }
 
-  private BulkApiValidator validator() {
-    if (validator == null) validator = new BulkApiValidator(appCtx);
+  synchronized BulkApiValidator validator() {
+    if (validator == null) {
+      int cacheSize = env.getProperty(BULK_API_VALIDATION_CACHE_SIZE_KEY,
+          int.class, BULK_API_VALIDATION_CACHE_SIZE_DEFAULT);
+      validator = new BulkApiValidator(appCtx, cacheSize);
+    }
     return validator;
   }
 
+  private ExecutorService parallelExecutor() {
+    if (parallelExecutor == null) {
+      synchronized (this) {
+        if (parallelExecutor == null) {
+          String type = env.getProperty(BULK_API_PARALLEL_EXECUTOR_KEY,
+              BULK_API_PARALLEL_EXECUTOR_DEFAULT);
+          int poolSize = env.getProperty(BULK_API_PARALLEL_POOL_SIZE_KEY,
+              int.class, BULK_API_PARALLEL_POOL_SIZE_DEFAULT);
+          parallelExecutor = BulkExecutors.newExecutorService(type, poolSize);
+        }
+      }
+    }
+    return parallelExecutor;
+  }
+
+  private BulkApiMetrics metrics() {
+    if (metrics == null) {
+      synchronized (this) {
+        if (metrics == null) {
+          boolean enabled = env.getProperty(BULK_API_METRICS_KEY,
+              boolean.class, BULK_API_METRICS_DEFAULT);
+          metrics = enabled ? BulkApiMetrics.of(appCtx) : BulkApiMetrics.NOOP;
+        }
+      }
+    }
+    return metrics;
+  }
+
+  private ObjectMapper mapper() {
+    if (mapper == null) {
+      synchronized (this) {
+        if (mapper == null) {
+          mapper = appCtx.getBeanProvider(ObjectMapper.class)
+              .getIfUnique(ObjectMapper::new);
+        }
+      }
+    }
+    return mapper;
+  }
+
+  private BulkIdempotencyStore idempotencyStore() {
+    if (idempotencyStore == null) {
+      synchronized (this) {
+        if (idempotencyStore == null) {
+          int maxSize = env.getProperty(BULK_API_IDEMPOTENCY_MAX_SIZE_KEY,
+              int.class, BULK_API_IDEMPOTENCY_MAX_SIZE_DEFAULT);
+          long ttl = env.getProperty(BULK_API_IDEMPOTENCY_TTL_KEY, long.class,
+              BULK_API_IDEMPOTENCY_TTL_DEFAULT);
+          idempotencyStore =
+              appCtx.getBeanProvider(BulkIdempotencyStore.class).getIfUnique(
+                  () -> new InMemoryBulkIdempotencyStore(maxSize, ttl));
+        }
+      }
+    }
+    return idempotencyStore;
+  }
+
   @Override
   public BulkResponse bulk(BulkRequest req, HttpServletRequest servReq) {
-    validateBulkRequest(req, servReq);
-
     List<BulkResult> results = new ArrayList<>();
-    RestTemplate template = new RestTemplate();
-    for (BulkOperation op : req.getOperations()) {
-      ComputedURIResult uriResult = computeUri(servReq, op);
+    bulk(req, servReq, results::add);
+
+    return new BulkResponse(results);
+  }
+
+  @Override
+  public void bulk(BulkRequest req, HttpServletRequest servReq,
+      Consumer<? super BulkResult> consumer) {
+    prepare(req, servReq).execute(consumer);
+  }
+
+  /**
+   * Plans and admits the given {@link BulkRequest} right away. The admitted
+   * operations are released once the returned {@link PreparedBulk} is
+   * executed, even if its results are replayed by the Idempotency-Key.
+   */
+  @Override
+  public PreparedBulk prepare(BulkRequest req, HttpServletRequest servReq) {
+    BulkFingerprint fingerprint = fingerprint(req, servReq);
+    if (fingerprint != null) req.getOperations().forEach(fingerprint::update);
+    Iterator<BulkOperation> unread = Collections.emptyIterator();
+
+    long start = System.nanoTime();
+    List<BulkOperationPlan> plans = plan(req, limit(), servReq);
+    Ticket ticket = admit(plans.size());
+    long validationNanos = System.nanoTime() - start;
+
+    return consumer -> {
+      try {
+        idempotent(servReq, fingerprint, unread, consumer,
+            idempotentConsumer -> execute(req, plans.iterator(), servReq,
+                idempotentConsumer, start, validationNanos, ticket, false,
+                Collections.emptyList()));
+      } finally {
+        if (ticket != null) ticket.close();
+      }
+    };
+  }
 
-      BodyBuilder bodyBuilder = RequestEntity.method(//
-          httpMethod(op.getMethod()), uriResult.getUri());
+  /**
+   * Plans the given job right away. A job is limited by the max operations of
+   * a job instead of a bulk request, and it's never admitted, because jobs are
+   * queued by their own pool.
+   */
+  @Override
+  public PreparedBulk prepareJob(BulkRequest req,
+      HttpServletRequest servReq) {
+    BulkFingerprint fingerprint = fingerprint(req, servReq);
+    if (fingerprint != null) req.getOperations().forEach(fingerprint::update);
+    Iterator<BulkOperation> unread = Collections.emptyIterator();
+    PreparedBulk bulk = resumeJob(req, Collections.emptyList(), servReq);
+
+    return consumer -> idempotent(servReq, fingerprint, unread, consumer,
+        bulk::execute);
+  }
+
+  /**
+   * Plans the whole job again, and its completed results are recorded as the
+   * outcomes of the leading operations, so the rest can depend on them. A
+   * silent operation has no result, so its outcome is unknown.
+   */
+  @Override
+  public PreparedBulk resumeJob(BulkRequest req, List<BulkResult> completed,
+      HttpServletRequest servReq) {
+    long start = System.nanoTime();
+    List<BulkOperationPlan> plans = plan(req, jobLimit(), servReq);
+    long validationNanos = System.nanoTime() - start;
 
-      ResponseEntity<String> rawRes = template.exchange(
-          requestEntity(bodyBuilder, op, uriResult.hasRequestBody()),
-          String.class);
+    return consumer -> {
+      // The clock starts once the job runs, as if it were validated just now
+      long started = System.nanoTime() - validationNanos;
+      execute(req, plans.iterator(), servReq, consumer, started,
+          validationNanos, null, false, completed);
+    };
+  }
+
+  @Override
+  public void bulk(BulkRequest req, Iterator<BulkOperation> operations,
+      HttpServletRequest servReq, Consumer<? super BulkResult> consumer) {
+    BulkFingerprint fingerprint = fingerprint(req, servReq);
+    Iterator<BulkOperation> ops =
+        fingerprint == null ? operations : fingerprint.updating(operations);
+
+    idempotent(servReq, fingerprint, ops, consumer, idempotentConsumer -> {
+      long start = System.nanoTime();
+      Ticket ticket = admit(0);
+
+      execute(req, plan(ops, limit(), servReq), servReq, idempotentConsumer,
+          start, 0, ticket, true, Collections.emptyList());
+    });
+  }
 
-      if (!op.isSilent()) results.add(buildResult(rawRes));
+  /**
+   * Returns a {@link BulkFingerprint} of the settings of given bulk request if
+   * it carries an Idempotency-Key, or null otherwise. Operations have to be
+   * added to it by the caller.
+   */
+  private BulkFingerprint fingerprint(BulkRequest req,
+      HttpServletRequest servReq) {
+    if (idempotencyKey(servReq.getHeader(BULK_API_IDEMPOTENCY_HEADER)) == null)
+      return null;
+
+    ObjectNode settings = mapper().valueToTree(req);
+    settings.remove("operations");
+    return new BulkFingerprint(mapper()).update(settings);
+  }
+
+  /**
+   * Replays the stored results if the bulk request carries a known
+   * Idempotency-Key and the same fingerprint. Otherwise, runs the given
+   * execution and stores its results once it succeeds. Failed bulk requests
+   * are never stored, so they can be retried. The unread operations are added
+   * to the fingerprint before it is compared or stored.
+   */
+  private void idempotent(HttpServletRequest servReq,
+      BulkFingerprint fingerprint, Iterator<?> unread,
+      Consumer<? super BulkResult> consumer,
+      Consumer<Consumer<? super BulkResult>> execution) {
+    if (fingerprint == null) {
+      execution.accept(consumer);
+      return;
     }
 
-    return new BulkResponse(results);
+    String key = scopedIdempotencyKey("bulk",
+        idempotencyKey(servReq.getHeader(BULK_API_IDEMPOTENCY_HEADER)),
+        servReq);
+    BulkIdempotencyRecord stored = idempotencyStore().get(key);
+    if (stored == null) {
+      if (!idempotencyKeysInFlight.add(key)) {
+        throw new BulkApiException(CONFLICT,
+            "Bulk request with the same Idempotency-Key is in progress");
+      }
+      try {
+        // Checks again in case the other request has just finished
+        stored = idempotencyStore().get(key);
+        if (stored == null) {
+          List<BulkResult> results = new ArrayList<>();
+          execution.accept(result -> {
+            results.add(result);
+            consumer.accept(result);
+          });
+          unread.forEachRemaining(op -> {});
+          idempotencyStore().put(key, new BulkIdempotencyRecord(
+              fingerprint.get(), new BulkResponse(results)));
+          return;
+        }
+      } finally {
+        idempotencyKeysInFlight.remove(key);
+      }
+    }
+
+    unread.forEachRemaining(op -> {});
+    if (!fingerprint.get().equals(stored.getFingerprint())) {
+      throw new BulkApiException(UNPROCESSABLE_ENTITY,
+          "Idempotency-Key has been used by a different bulk request");
+    }
+    stored.getResponse().getResults().forEach(consumer);
   }
 
-  private RequestEntity<?> requestEntity(BodyBuilder bodyBuilder,
-      BulkOperation op, boolean requestBody) {
-    for (Entry<String, String> header : op.getHeaders().entrySet()) {
-      bodyBuilder.header(header.getKey(), header.getValue());
+  /**
+   * Admits a bulk of given operations, or returns null if the admission
+   * control is disabled.
+   */
+  private Ticket admit(int operations) {
+    if (admission == null) return null;
+    try {
+      return admission.admit(operations);
+    } catch (BulkApiException e) {
+      metrics().recordRejection(e.getStatus());
+      throw e;
     }
+  }
 
-    Object params;
-    if (requestBody) {
-      params = op.getParams();
-    } else {
-      LinkedMultiValueMap<String, Object> lmvm = new LinkedMultiValueMap<>();
-      lmvm.setAll(op.getParams());
-      params = lmvm;
+  /**
+   * Admits given operation if the operations of this bulk are admitted one by
+   * one, or returns null if it's admitted. A rejected operation gets its own
+   * result, so a streaming bulk is never cut short by the admission control.
+   */
+  private BulkResult admit(BulkOperationPlan plan, BulkExecution execution) {
+    if (plan.isRejected()) {
+      metrics().recordOperationRejection(plan.getRejection().getStatus());
+      return failure(plan.getRejection().getStatus(),
+          plan.getRejection().getError());
+    }
+    if (execution.admitting == null) return null;
+    try {
+      execution.admitting.acquireOne();
+      return null;
+    } catch (BulkApiException e) {
+      metrics().recordOperationRejection(e.getStatus());
+      return failure(e.getStatus(), e.getError());
+    }
+  }
+
+  private String idempotencyKey(String header) {
+    if (header == null || header.trim().isEmpty()) return null;
+    if (!env.getProperty(BULK_API_IDEMPOTENCY_KEY, boolean.class,
+        BULK_API_IDEMPOTENCY_DEFAULT)) {
+      return null;
+    }
+    return header.trim();
+  }
+
+  /**
+   * Scopes given idempotency key by the user principal, so the same key of
+   * different users never collides.
+   */
+  private String scopedIdempotencyKey(String kind, String key,
+      HttpServletRequest servReq) {
+    Principal principal = servReq.getUserPrincipal();
+    String user = principal == null ? ""
+        : UriUtils.encode(principal.getName(), StandardCharsets.UTF_8);
+    return kind + ":" + user + ":" + key;
+  }
+
+  /**
+   * Executes the given plans and records the metrics of this bulk. The time
+   * spent in iterating plans is counted as validation, because lazy plans are
+   * validated while they are iterated. If the operations are admitted one by
+   * one, each of them is admitted before it's executed. The admitted
+   * operations are released once the bulk is finished. The given completed
+   * results are replayed as the outcomes of the leading plans.
+   */
+  private void execute(BulkRequest req, Iterator<BulkOperationPlan> plans,
+      HttpServletRequest servReq, Consumer<? super BulkResult> consumer,
+      long start, long validationNanos, Ticket ticket, boolean admitEach,
+      List<BulkResult> completed) {
+    TimedIterator<BulkOperationPlan> timedPlans = new TimedIterator<>(plans);
+    BulkExecution execution = new BulkExecution(servReq, consumer,
+        new ErrorBudget(maxErrors(req)), Deadline.after(start, timeout(req)),
+        env.getProperty(BULK_API_OPERATION_TIMEOUT_KEY, long.class,
+            BULK_API_OPERATION_TIMEOUT_DEFAULT),
+        isCoalesced(req), admitEach ? ticket : null);
+    boolean success = false;
+    try {
+      replay(timedPlans, completed, execution);
+      if (isParallel(req)) {
+        executeConcurrently(timedPlans, execution);
+      } else {
+        executeSequentially(timedPlans, execution);
+      }
+      success = true;
+    } finally {
+      validationNanos += timedPlans.getNanos();
+      long executionNanos = System.nanoTime() - start - validationNanos;
+      metrics().recordBulk(timedPlans.getCount(), validationNanos,
+          executionNanos, success);
+      if (ticket != null) ticket.close();
+    }
+  }
+
+  /**
+   * Records the given results as the outcomes of the leading plans, without
+   * passing them to the consumer again. Silent plans are skipped over, because
+   * they have no result.
+   */
+  private void replay(Iterator<BulkOperationPlan> plans,
+      List<BulkResult> completed, BulkExecution execution) {
+    Iterator<BulkResult> results = completed.iterator();
+    while (results.hasNext() && plans.hasNext()) {
+      BulkOperationPlan plan = plans.next();
+      if (plan.isSilent()) continue;
+
+      BulkResult result = results.next();
+      execution.record(plan, CompletableFuture.completedFuture(result));
+      execution.errorBudget.record(result);
+    }
+  }
+
+  private void executeSequentially(Iterator<BulkOperationPlan> plans,
+      BulkExecution execution) {
+    while (plans.hasNext()) {
+      BulkOperationPlan plan = plans.next();
+      BulkResult rejection = admit(plan, execution);
+      if (rejection != null) {
+        accept(plan, rejection, execution);
+      } else if (execution.errorBudget.isExhausted()) {
+        accept(plan, execution.errorBudget.skipped(), execution);
+      } else if (execution.deadline.isExpired()) {
+        accept(plan, timedOut(), execution);
+      } else {
+        Deadline deadline = execution.deadlineOf(plan);
+        CompletableFuture<BulkResult> duplicate = execution.duplicateOf(plan);
+        if (plan.hasDependencies()) {
+          accept(plan,
+              deadline.isSet() ? await(submitDependent(plan, execution))
+                  : executeDependent(plan, execution.inputsOf(plan),
+                      deadline, execution.servReq),
+              execution);
+        } else if (duplicate != null) {
+          accept(plan, await(new PendingOperation(plan, duplicate, deadline)),
+              execution);
+        } else if (deadline.isSet()) {
+          // Runs on the pool, so it can be abandoned once it times out
+          accept(plan, await(submit(plan, deadline, execution)), execution);
+        } else {
+          BulkResult result = execute(plan, deadline, execution.servReq);
+          execution.coalesce(plan, CompletableFuture.completedFuture(result));
+          accept(plan, result, execution);
+        }
+      }
+    }
+  }
+
+  private void executeConcurrently(Iterator<BulkOperationPlan> plans,
+      BulkExecution execution) {
+    Deque<PendingOperation> pendings = new ArrayDeque<>();
+    try {
+      while (plans.hasNext()) {
+        BulkOperationPlan plan = plans.next();
+        BulkResult rejection = admit(plan, execution);
+        if (rejection != null) {
+          pendings.add(new PendingOperation(plan,
+              CompletableFuture.completedFuture(rejection),
+              execution.deadline));
+        } else if (execution.errorBudget.isExhausted()
+            || execution.deadline.isExpired()) {
+          pendings.add(new PendingOperation(plan, null, execution.deadline));
+        } else if (plan.hasDependencies()) {
+          pendings.add(submitDependent(plan, execution));
+        } else {
+          pendings.add(submit(plan, execution.deadlineOf(plan), execution));
+        }
+        execution.record(plan, pendings.peekLast().future);
+
+        // Passes the completed results without waiting for the rest
+        while (!pendings.isEmpty() && pendings.peek().isDone()) {
+          complete(pendings, execution);
+        }
+      }
+
+      while (!pendings.isEmpty()) {
+        complete(pendings, execution);
+      }
+    } catch (RuntimeException | Error e) {
+      pendings.forEach(PendingOperation::cancel);
+      throw e;
+    }
+  }
+
+  /**
+   * Submits the given operation to the pool, unless an identical operation has
+   * been submitted already, then its outcome is shared. A shared operation
+   * runs until the deadline of the bulk, because its duplicates may wait for
+   * it longer than itself.
+   */
+  private PendingOperation submit(BulkOperationPlan plan, Deadline deadline,
+      BulkExecution execution) {
+    CompletableFuture<BulkResult> future = execution.duplicateOf(plan);
+    if (future == null) {
+      Deadline running =
+          execution.isCoalesced(plan) ? execution.deadline : deadline;
+      future = execution.coalesce(plan,
+          supply(CompletableFuture.completedFuture(null),
+              () -> execute(plan, running, execution.servReq)));
+    }
+    return new PendingOperation(plan, future, deadline);
+  }
+
+  /**
+   * Submits the given operation to the pool, which starts as soon as all its
+   * dependencies are finished. Its own timeout starts at the same time.
+   */
+  private PendingOperation submitDependent(BulkOperationPlan plan,
+      BulkExecution execution) {
+    Map<String, CompletableFuture<BulkResult>> inputs =
+        execution.inputsOf(plan);
+    CompletableFuture<Deadline> ready = CompletableFuture
+        .allOf(inputs.values().toArray(new CompletableFuture<?>[0]))
+        .handle((v, e) -> execution.deadlineOf(plan));
+
+    return new PendingOperation(plan, supply(ready,
+        () -> executeDependent(plan, inputs, ready.join(), execution.servReq)),
+        ready);
+  }
+
+  /**
+   * Runs the given task on the pool once the given stage is done. Cancelling
+   * the returned future abandons the task, or interrupts it if it's running.
+   */
+  private CompletableFuture<BulkResult> supply(CompletableFuture<?> ready,
+      Supplier<BulkResult> task) {
+    CompletableFuture<BulkResult> outcome = new CompletableFuture<>();
+    ready.whenComplete((v, e) -> {
+      if (outcome.isDone()) return;
+      try {
+        Future<?> running = parallelExecutor().submit(() -> {
+          try {
+            outcome.complete(task.get());
+          } catch (RuntimeException | Error ex) {
+            outcome.completeExceptionally(ex);
+          }
+        });
+        outcome.whenComplete((res, ex) -> {
+          if (outcome.isCancelled()) running.cancel(true);
+        });
+      } catch (RuntimeException ex) {
+        outcome.completeExceptionally(ex);
+      }
+    });
+    return outcome;
+  }
+
+  /**
+   * Executes the given operation with the results of its dependencies. It's
+   * skipped if any dependency has failed, and rejected if its placeholders
+   * can't be resolved.
+   */
+  private BulkResult executeDependent(BulkOperationPlan plan,
+      Map<String, CompletableFuture<BulkResult>> inputs, Deadline deadline,
+      HttpServletRequest servReq) {
+    Map<String, BulkResult> results = new HashMap<>();
+    for (Entry<String, CompletableFuture<BulkResult>> input : inputs
+        .entrySet()) {
+      BulkResult result = input.getValue().isDone()
+          && !input.getValue().isCompletedExceptionally()
+              ? input.getValue().join() : null;
+      if (result == null || result.getStatus() >= 400) {
+        return failure(FAILED_DEPENDENCY, "Operation skipped because its "
+            + "dependency(" + input.getKey() + ") has failed");
+      }
+      results.put(input.getKey(), result);
+    }
+
+    BulkOperationPlan resolved = plan;
+    if (plan.isDeferred()) {
+      try {
+        resolved = resolve(plan, results, servReq);
+      } catch (BulkApiException e) {
+        return failure(e.getStatus(), e.getError());
+      }
+    }
+    return execute(resolved, deadline, servReq);
+  }
+
+  private void complete(Deque<PendingOperation> pendings,
+      BulkExecution execution) {
+    PendingOperation pending = pendings.poll();
+    if (pending.isCancelled()) {
+      // Cancelled either by the error policy or by the bulk deadline
+      accept(pending.plan, execution.errorBudget.isExhausted()
+          ? execution.errorBudget.skipped() : timedOut(), execution);
+      return;
+    }
+
+    accept(pending.plan, await(pending), execution);
+    if (execution.errorBudget.isExhausted()) {
+      pendings.forEach(PendingOperation::cancel);
+    }
+  }
+
+  /**
+   * Executes the given operation unless its idempotency key has a stored
+   * result already. The Idempotency-Key header of an operation is left to the
+   * operation itself.
+   */
+  private BulkResult execute(BulkOperationPlan plan, Deadline deadline,
+      HttpServletRequest servReq) {
+    String key = idempotencyKey(plan.getOperation().getIdempotencyKey());
+    if (key == null) return dispatch(plan, deadline, servReq);
+
+    key = scopedIdempotencyKey("operation", key, servReq);
+    String fingerprint = new BulkFingerprint(mapper()).update(plan.getMethod())
+        .update(plan.getUri()).update(plan.getHeaders())
+        .update(plan.getBody()).get();
+    BulkIdempotencyRecord stored = idempotencyStore().get(key);
+    if (stored != null) return replay(stored, fingerprint);
+
+    if (!idempotencyKeysInFlight.add(key)) {
+      return failure(CONFLICT,
+          "Operation with the same idempotency key is in progress");
     }
+    try {
+      stored = idempotencyStore().get(key);
+      if (stored != null) return replay(stored, fingerprint);
 
-    return bodyBuilder.body(params);
+      BulkResult res = dispatch(plan, deadline, servReq);
+      idempotencyStore().put(key, new BulkIdempotencyRecord(fingerprint,
+          new BulkResponse(new ArrayList<>(Collections.singletonList(res)))));
+      return res;
+    } finally {
+      idempotencyKeysInFlight.remove(key);
+    }
+  }
+
+  private BulkResult replay(BulkIdempotencyRecord stored, String fingerprint) {
+    if (!fingerprint.equals(stored.getFingerprint())) {
+      return failure(UNPROCESSABLE_ENTITY,
+          "Idempotency key has been used by a different operation");
+    }
+    return stored.getResponse().getResults().get(0);
   }
 
-  private ComputedURIResult computeUri(HttpServletRequest servReq,
-      BulkOperation op) {
+  /**
+   * Dispatches the given operation. The remaining time of its deadline is
+   * applied as the read timeout of a loopback operation, because cancelling a
+   * timed out operation doesn't stop its blocking I/O.
+   */
+  private BulkResult dispatch(BulkOperationPlan plan, Deadline deadline,
+      HttpServletRequest servReq) {
+    Permit permit = acquire(plan, servReq);
+    if (permit == null) {
+      metrics().recordBulkheadRejection(plan);
+      return failure(TOO_MANY_REQUESTS, "Operation rejected by the bulkhead of"
+          + " route(" + plan.getRoute() + ") in this bulk request");
+    }
+
+    long start = System.nanoTime();
+    int status = 0;
+    try {
+      ResponseEntity<byte[]> rawRes =
+          BulkRestTemplateFactory.withReadTimeout(deadline.readTimeout(),
+              () -> executor.executeForBytes(plan.toRequestEntity(), servReq));
+      status = rawRes.getStatusCodeValue();
+
+      return buildResult(rawRes, BulkResultSerializer
+          .acceptsBinary(servReq.getHeader(HttpHeaders.ACCEPT)));
+    } catch (RestClientResponseException e) {
+      status = e.getRawStatusCode();
+      throw e;
+    } catch (ResourceAccessException e) {
+      if (!(e.getCause() instanceof SocketTimeoutException)
+          || !deadline.isSet()) {
+        throw e;
+      }
+      // Read timeout of the loopback operation
+      status = GATEWAY_TIMEOUT.value();
+      return timedOut();
+    } finally {
+      long nanos = System.nanoTime() - start;
+      metrics().recordOperation(plan, status, nanos);
+      if (admission != null) admission.record(nanos);
+      permit.release();
+    }
+  }
+
+  /**
+   * Acquires a permit of the bulkhead of given operation, or returns null if
+   * the bulkhead is full.
+   */
+  private Permit acquire(BulkOperationPlan plan, HttpServletRequest servReq) {
+    if (bulkheads == null) return Permit.UNLIMITED;
+    try {
+      return bulkheads.acquire(plan, servReq);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BulkApiException(SERVICE_UNAVAILABLE,
+          "Bulk request has been interrupted");
+    }
+  }
+
+  private void accept(BulkOperationPlan plan, BulkResult result,
+      BulkExecution execution) {
+    execution.record(plan, CompletableFuture.completedFuture(result));
+    execution.errorBudget.record(result);
+    if (!plan.isSilent()) execution.consumer.accept(result);
+  }
+
+  private BulkResult timedOut() {
+    return failure(GATEWAY_TIMEOUT, "Operation timed out in this bulk request");
+  }
+
+  private BulkResult failure(HttpStatus status, String error) {
+    BulkResult res = new BulkResult();
+    res.setStatus(status.value());
+    res.setHeaders(new LinkedHashMap<>());
+    res.setBody(error);
+    return res;
+  }
+
+  private int maxErrors(BulkRequest req) {
+    String onError = req.getOnError() != null ? req.getOnError()
+        : env.getProperty(BULK_API_ON_ERROR_KEY, BULK_API_ON_ERROR_DEFAULT);
+    if (!BULK_API_ON_ERROR_STOP.equalsIgnoreCase(onError.trim())) {
+      return Integer.MAX_VALUE;
+    }
+
+    Integer maxErrors = req.getMaxErrors() != null ? req.getMaxErrors()
+        : env.getProperty(BULK_API_MAX_ERRORS_KEY, Integer.class,
+            BULK_API_MAX_ERRORS_DEFAULT);
+    return Math.max(1, maxErrors);
+  }
+
+  /**
+   * Returns the timeout of given bulk request, which never exceeds the max
+   * timeout. A timeout of 0 means unlimited, so it's capped as well.
+   */
+  private long timeout(BulkRequest req) {
+    long timeout = req.getTimeout() != null ? req.getTimeout()
+        : env.getProperty(BULK_API_TIMEOUT_KEY, long.class,
+            BULK_API_TIMEOUT_DEFAULT);
+    long maxTimeout = env.getProperty(BULK_API_MAX_TIMEOUT_KEY, long.class,
+        BULK_API_MAX_TIMEOUT_DEFAULT);
+    if (maxTimeout > 0 && (timeout <= 0 || timeout > maxTimeout)) {
+      return maxTimeout;
+    }
+    return timeout;
+  }
+
+  private boolean isCoalesced(BulkRequest req) {
+    if (req.getCoalesce() != null) return req.getCoalesce();
+    return env.getProperty(BULK_API_COALESCE_KEY, boolean.class,
+        BULK_API_COALESCE_DEFAULT);
+  }
+
+  private boolean isParallel(BulkRequest req) {
+    if (req.getParallel() != null) return req.getParallel();
+    return env.getProperty(BULK_API_PARALLEL_KEY, boolean.class,
+        BULK_API_PARALLEL_DEFAULT);
+  }
+
+  private BulkResult await(PendingOperation pending) {
+    try {
+      // Dependencies are always awaited before, so it's ready by now
+      Deadline deadline = pending.deadline.join();
+      if (!deadline.isSet()) return pending.future.get();
+      return pending.future.get(Math.max(0, deadline.remainingNanos()),
+          NANOSECONDS);
+    } catch (TimeoutException e) {
+      pending.cancel();
+      return timedOut();
+    } catch (CancellationException e) {
+      return timedOut();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      // A coalesced operation whose original has timed out
+      if (cause instanceof CancellationException) return timedOut();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IllegalStateException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BulkApiException(SERVICE_UNAVAILABLE,
+          "Bulk request has been interrupted");
+    }
+  }
+
+  /**
+   * Validates the given {@link BulkRequest} and resolves all its operations
+   * into {@link BulkOperationPlan}s. Every operation is resolved only once, so
+   * the execution never computes URIs or validates paths again.
+   */
+  List<BulkOperationPlan> plan(BulkRequest req, int max,
+      HttpServletRequest servReq) {
+    if (req.getOperations().size() > max) {
+      throw rejection(PAYLOAD_TOO_LARGE,
+          "Bulk operations exceed the limitation(" + max + ")");
+    }
+
+    List<BulkOperationPlan> plans = new ArrayList<>(req.getOperations().size());
+    plan(req.getOperations().iterator(), max, servReq)
+        .forEachRemaining(plan -> {
+          if (plan.isRejected()) {
+            metrics().recordRejection(plan.getRejection().getStatus());
+            throw plan.getRejection();
+          }
+          plans.add(plan);
+        });
+
+    return Collections.unmodifiableList(plans);
+  }
+
+  /**
+   * Lazily validates and resolves the given operations into
+   * {@link BulkOperationPlan}s while they are iterated, so each operation can
+   * be executed before the next one is even read. An invalid operation is
+   * planned as rejected, and the iteration ends at the first operation beyond
+   * the limitation.
+   */
+  private Iterator<BulkOperationPlan> plan(Iterator<BulkOperation> operations,
+      int max, HttpServletRequest servReq) {
+    String bulkPath = bulkPath();
     String rawUrl = servReq.getRequestURL().toString();
     String rawUri = servReq.getRequestURI().toString();
 
-    if (op.getUrl() == null || isBulkPath(op.getUrl())) {
+    return new Iterator<BulkOperationPlan>() {
+
+      private int index = 0;
+      private final Set<String> ids = new HashSet<>();
+
+      @Override
+      public boolean hasNext() {
+        return index <= max && operations.hasNext();
+      }
+
+      @Override
+      public BulkOperationPlan next() {
+        if (!hasNext()) throw new NoSuchElementException();
+
+        BulkOperation op = operations.next();
+        int i = index++;
+        if (i >= max) {
+          return BulkOperationPlan.rejected(i, op,
+              new BulkApiException(PAYLOAD_TOO_LARGE,
+                  "Bulk operations exceed the limitation(" + max + ")"));
+        }
+
+        try {
+          List<String> dependencies = dependencies(op, ids);
+          if (!BulkResultReferences.referencedIds(op).isEmpty()) {
+            return BulkOperationPlan.deferred(i, op,
+                httpMethod(op.getMethod()), dependencies);
+          }
+          return plan(i, op, bulkPath, rawUrl, rawUri, dependencies);
+        } catch (BulkApiException e) {
+          return BulkOperationPlan.rejected(i, op, e);
+        }
+      }
+
+    };
+  }
+
+  /**
+   * Returns the ids of the operations which the given operation depends on,
+   * and then adds its own id to the given known ids. Operations can only depend
+   * on the ones before them, so the dependencies never form a cycle.
+   */
+  private List<String> dependencies(BulkOperation op, Set<String> ids) {
+    Set<String> dependencies = new LinkedHashSet<>();
+    if (op.getDependsOn() != null) dependencies.addAll(op.getDependsOn());
+    dependencies.addAll(BulkResultReferences.referencedIds(op));
+    for (String dependency : dependencies) {
+      if (!ids.contains(dependency)) {
+        throw new BulkApiException(UNPROCESSABLE_ENTITY,
+            "Operation depends on an unknown or later operation(" + dependency
+                + ") in this bulk request");
+      }
+    }
+
+    if (op.getId() != null) {
+      if (op.getId().trim().isEmpty() || !ids.add(op.getId())) {
+        throw new BulkApiException(UNPROCESSABLE_ENTITY,
+            "Invalid or duplicate operation id(" + op.getId()
+                + ") exists in this bulk request");
+      }
+    }
+    return new ArrayList<>(dependencies);
+  }
+
+  private BulkApiException rejection(HttpStatus status, String error) {
+    metrics().recordRejection(status);
+    return new BulkApiException(status, error);
+  }
+
+  private int limit() {
+    return env.getProperty(BULK_API_LIMIT_KEY, int.class,
+        BULK_API_LIMIT_DEFAULT);
+  }
+
+  private int jobLimit() {
+    return env.getProperty(BULK_API_JOBS_LIMIT_KEY, int.class,
+        BULK_API_JOBS_LIMIT_DEFAULT);
+  }
+
+  private BulkOperationPlan plan(int index, BulkOperation op, String bulkPath,
+      String rawUrl, String rawUri, List<String> dependencies) {
+    if (op.getUrl() == null || isBulkPath(op.getUrl(), bulkPath)) {
       throw new BulkApiException(UNPROCESSABLE_ENTITY,
           "Invalid URL(" + rawUri + ") exists in this bulk request");
     }
 
-    String bulkPath =
-        urlify(env.getProperty(BULK_API_PATH_KEY, BULK_API_PATH_DEFAULT));
+    String url = urlify(op.getUrl());
+    HttpMethod method = httpMethod(op.getMethod());
     URI uri;
     try {
       String servletPath = rawUrl.substring(0, rawUrl.lastIndexOf(bulkPath));
-      uri = new URI(servletPath + urlify(op.getUrl()));
+      uri = new URI(servletPath + url);
     } catch (URISyntaxException e) {
-      throw new BulkApiException(UNPROCESSABLE_ENTITY, "Invalid URL("
-          + urlify(op.getUrl()) + ") exists in this bulk request");
+      throw new BulkApiException(UNPROCESSABLE_ENTITY,
+          "Invalid URL(" + url + ") exists in this bulk request");
     }
 
-    PathValidationResult pvr = validator().validatePath(urlify(op.getUrl()),
-        httpMethod(op.getMethod()));
+    PathValidationResult pvr = validator().validatePath(url, method);
     if (!pvr.isValid()) {
-      throw new BulkApiException(UNPROCESSABLE_ENTITY, "Invalid URL("
-          + urlify(op.getUrl()) + ") exists in this bulk request");
+      throw new BulkApiException(UNPROCESSABLE_ENTITY,
+          "Invalid URL(" + url + ") exists in this bulk request");
     }
 
     if (uriTransformer != null) uri = uriTransformer.transform(uri);
-    return new ComputedURIResult(uri, pvr.hasRequestBody());
+    return new BulkOperationPlan(index, op, method, uri, pvr.hasRequestBody(),
+        pvr.getRoute(), dependencies);
   }
 
-  private boolean isBulkPath(String url) {
-    String bulkPath =
-        urlify(env.getProperty(BULK_API_PATH_KEY, BULK_API_PATH_DEFAULT));
+  /**
+   * Plans the given deferred operation again with the results of its
+   * dependencies.
+   */
+  private BulkOperationPlan resolve(BulkOperationPlan plan,
+      Map<String, BulkResult> inputs, HttpServletRequest servReq) {
+    BulkOperation op;
+    try {
+      op = BulkResultReferences.resolve(plan.getOperation(), inputs, mapper());
+    } catch (IllegalArgumentException e) {
+      throw new BulkApiException(UNPROCESSABLE_ENTITY, e.getMessage());
+    }
+
+    return plan(plan.getIndex(), op, bulkPath(),
+        servReq.getRequestURL().toString(), servReq.getRequestURI(),
+        plan.getDependencies());
+  }
+
+  private String bulkPath() {
+    return urlify(env.getProperty(BULK_API_PATH_KEY, BULK_API_PATH_DEFAULT));
+  }
+
+  private boolean isBulkPath(String url, String bulkPath) {
     url = urlify(url);
 
     return url.equals(bulkPath) || url.startsWith(bulkPath + "/");
@@ -161,28 +1096,30 @@ public class DefaultBulkApiService implements BulkApiService {
     return url.startsWith("/") ? url : "/" + url;
   }
 
-  private BulkResult buildResult(ResponseEntity<String> rawRes) {
+  /**
+   * Builds the result of an operation. A JSON body is parsed here once if the
+   * result is going to be written in a binary format, and validated if raw
+   * JSON bodies are enabled.
+   */
+  BulkResult buildResult(ResponseEntity<byte[]> rawRes, boolean binary) {
     BulkResult res = new BulkResult();
     res.setStatus(rawRes.getStatusCodeValue());
     res.setHeaders(rawRes.getHeaders().toSingleValueMap());
-    res.setBody(rawRes.getBody());
-
-    return res;
-  }
-
-  private void validateBulkRequest(BulkRequest req,
-      HttpServletRequest servReq) {
-    int max =
-        env.getProperty(BULK_API_LIMIT_KEY, int.class, BULK_API_LIMIT_DEFAULT);
-    if (req.getOperations().size() > max) {
-      throw new BulkApiException(PAYLOAD_TOO_LARGE,
-          "Bulk operations exceed the limitation(" + max + ")");
+    if (rawRes.getBody() != null) {
+      res.setBody(rawRes.getBody(),
+          BulkResponseBodies.charsetOf(rawRes.getHeaders()));
     }
-
-    // Check if any invalid URL exists
-    for (BulkOperation op : req.getOperations()) {
-      computeUri(servReq, op);
+    if (rawRes.getBody() != null
+        && BulkResultSerializer.isJson(res.getHeaders())) {
+      if (binary) {
+        res.setJsonBody(BulkResultSerializer.readTree(res));
+        res.setRawBody(rawJson && res.getJsonBody() != null);
+      } else if (rawJson) {
+        res.setRawBody(BulkResultSerializer.isValidJson(res));
+      }
     }
+
+    return res;
   }
 
   private static HttpMethod httpMethod(String method) {
@@ -193,4 +1130,298 @@ public class DefaultBulkApiService implements BulkApiService {
     }
   }
 
+  /**
+   * Counts the failed operations(4xx or 5xx) of a bulk, and tells if the rest
+   * operations should be skipped.
+   */
+  private static final class ErrorBudget {
+
+    private final int maxErrors;
+    private int errors;
+
+    ErrorBudget(int maxErrors) {
+      this.maxErrors = maxErrors;
+    }
+
+    void record(BulkResult result) {
+      if (result.getStatus() >= 400) errors++;
+    }
+
+    boolean isExhausted() {
+      return errors >= maxErrors;
+    }
+
+    BulkResult skipped() {
+      BulkResult res = new BulkResult();
+      res.setStatus(FAILED_DEPENDENCY.value());
+      res.setHeaders(new LinkedHashMap<>());
+      res.setBody("Operation skipped after " + errors
+          + " failed operation(s) in this bulk request");
+      return res;
+    }
+
+  }
+
+  /**
+   * Holds the per bulk state which is shared by all its operations.
+   */
+  private static final class BulkExecution {
+
+    private final HttpServletRequest servReq;
+    private final Consumer<? super BulkResult> consumer;
+    private final ErrorBudget errorBudget;
+    private final Deadline deadline;
+    private final long operationTimeout;
+    private final Map<List<Object>, SharedOutcome> coalesced;
+    private final Ticket admitting;
+    private final Map<String, CompletableFuture<BulkResult>> outcomes =
+        new HashMap<>();
+
+    BulkExecution(HttpServletRequest servReq,
+        Consumer<? super BulkResult> consumer, ErrorBudget errorBudget,
+        Deadline deadline, long operationTimeout, boolean coalesce,
+        Ticket admitting) {
+      this.servReq = servReq;
+      this.consumer = consumer;
+      this.errorBudget = errorBudget;
+      this.deadline = deadline;
+      this.operationTimeout = operationTimeout;
+      coalesced = coalesce ? new HashMap<>() : null;
+      this.admitting = admitting;
+    }
+
+    /**
+     * Returns the outcome of an identical GET or HEAD operation which has been
+     * executed or submitted before in this bulk.
+     */
+    CompletableFuture<BulkResult> duplicateOf(BulkOperationPlan plan) {
+      if (!isCoalesced(plan)) return null;
+      SharedOutcome shared = coalesced.get(coalescingKey(plan));
+      return shared == null ? null : shared.view();
+    }
+
+    /**
+     * Shares the outcome of given operation with its later duplicates, and
+     * returns the view of the given operation itself.
+     */
+    CompletableFuture<BulkResult> coalesce(BulkOperationPlan plan,
+        CompletableFuture<BulkResult> outcome) {
+      if (!isCoalesced(plan)) return outcome;
+      SharedOutcome shared = new SharedOutcome(outcome);
+      coalesced.putIfAbsent(coalescingKey(plan), shared);
+      return shared.view();
+    }
+
+    boolean isCoalesced(BulkOperationPlan plan) {
+      return coalesced != null && isCoalescible(plan);
+    }
+
+    private static boolean isCoalescible(BulkOperationPlan plan) {
+      if (plan.hasDependencies()) return false;
+      return plan.getMethod() == HttpMethod.GET
+          || plan.getMethod() == HttpMethod.HEAD;
+    }
+
+    /**
+     * Records the outcome of given operation, so the later operations can
+     * depend on it by its id.
+     */
+    void record(BulkOperationPlan plan, CompletableFuture<BulkResult> outcome) {
+      String id = plan.getOperation().getId();
+      if (id != null && outcome != null) outcomes.putIfAbsent(id, outcome);
+    }
+
+    /**
+     * Returns the outcomes of the dependencies of given operation. A missing
+     * outcome is regarded as cancelled.
+     */
+    Map<String, CompletableFuture<BulkResult>> inputsOf(
+        BulkOperationPlan plan) {
+      Map<String, CompletableFuture<BulkResult>> inputs = new LinkedHashMap<>();
+      for (String id : plan.getDependencies()) {
+        CompletableFuture<BulkResult> outcome = outcomes.get(id);
+        if (outcome == null) {
+          outcome = new CompletableFuture<>();
+          outcome.cancel(false);
+        }
+        inputs.put(id, outcome);
+      }
+      return inputs;
+    }
+
+    private static List<Object> coalescingKey(BulkOperationPlan plan) {
+      return Arrays.asList(plan.getMethod(), plan.getUri(), plan.getHeaders(),
+          plan.getBody());
+    }
+
+    /**
+     * Returns the deadline of given operation which starts from now, but it's
+     * never later than the deadline of the whole bulk.
+     */
+    Deadline deadlineOf(BulkOperationPlan plan) {
+      Long timeout = plan.getOperation().getTimeout();
+      return deadline.min(Deadline.after(System.nanoTime(),
+          timeout != null ? timeout : operationTimeout));
+    }
+
+  }
+
+  /**
+   * The outcome of an operation shared by its duplicates. Each of them waits on
+   * a view of its own, so one which times out doesn't cancel the others. The
+   * operation itself is cancelled once all the views are cancelled.
+   */
+  private static final class SharedOutcome {
+
+    private final CompletableFuture<BulkResult> outcome;
+    private final AtomicInteger views = new AtomicInteger();
+
+    SharedOutcome(CompletableFuture<BulkResult> outcome) {
+      this.outcome = outcome;
+    }
+
+    CompletableFuture<BulkResult> view() {
+      views.incrementAndGet();
+      CompletableFuture<BulkResult> view = outcome.thenApply(res -> res);
+      view.whenComplete((res, e) -> {
+        if (view.isCancelled() && views.decrementAndGet() == 0) {
+          outcome.cancel(true);
+        }
+      });
+      return view;
+    }
+
+  }
+
+  private static final class Deadline {
+
+    private static final Deadline NONE = new Deadline(false, 0);
+
+    private final boolean set;
+    private final long nanos;
+
+    private Deadline(boolean set, long nanos) {
+      this.set = set;
+      this.nanos = nanos;
+    }
+
+    /**
+     * Creates a {@link Deadline} which passes given milliseconds after given
+     * start time. No deadline is set if the timeout isn't positive.
+     */
+    static Deadline after(long startNanos, long timeoutMillis) {
+      if (timeoutMillis <= 0) return NONE;
+      return new Deadline(true,
+          startNanos + MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    Deadline min(Deadline other) {
+      if (!set) return other;
+      if (!other.set) return this;
+      return nanos - other.nanos <= 0 ? this : other;
+    }
+
+    boolean isSet() {
+      return set;
+    }
+
+    boolean isExpired() {
+      return set && remainingNanos() <= 0;
+    }
+
+    long remainingNanos() {
+      return nanos - System.nanoTime();
+    }
+
+    /**
+     * Returns the remaining time in milliseconds as a read timeout, or 0 if
+     * it's not set.
+     */
+    int readTimeout() {
+      if (!set) return 0;
+      return (int) Math.min(Integer.MAX_VALUE,
+          Math.max(1, NANOSECONDS.toMillis(remainingNanos())));
+    }
+
+  }
+
+  private static final class PendingOperation {
+
+    private final BulkOperationPlan plan;
+    private final CompletableFuture<BulkResult> future;
+    private final CompletableFuture<Deadline> deadline;
+
+    PendingOperation(BulkOperationPlan plan,
+        CompletableFuture<BulkResult> future, Deadline deadline) {
+      this(plan, future, CompletableFuture.completedFuture(deadline));
+    }
+
+    /**
+     * Creates a {@link PendingOperation} whose deadline is known only after
+     * it starts.
+     */
+    PendingOperation(BulkOperationPlan plan,
+        CompletableFuture<BulkResult> future,
+        CompletableFuture<Deadline> deadline) {
+      this.plan = plan;
+      this.future = future;
+      this.deadline = deadline;
+    }
+
+    boolean isDone() {
+      return future == null || future.isDone();
+    }
+
+    boolean isCancelled() {
+      return future == null || future.isCancelled();
+    }
+
+    void cancel() {
+      if (future != null) future.cancel(true);
+    }
+
+  }
+
+  private static final class TimedIterator<E> implements Iterator<E> {
+
+    private final Iterator<E> iterator;
+    private long nanos;
+    private int count;
+
+    TimedIterator(Iterator<E> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+      long start = System.nanoTime();
+      try {
+        return iterator.hasNext();
+      } finally {
+        nanos += System.nanoTime() - start;
+      }
+    }
+
+    @Override
+    public E next() {
+      long start = System.nanoTime();
+      try {
+        E element = iterator.next();
+        count++;
+        return element;
+      } finally {
+        nanos += System.nanoTime() - start;
+      }
+    }
+
+    long getNanos() {
+      return nanos;
+    }
+
+    int getCount() {
+      return count;
+    }
+
+  }
+
 }
@@ -0,0 +1,571 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpSession;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * 
+ * {@link DetachedServletRequest} is a snapshot of a {@link HttpServletRequest}
+ * which stays usable after the original request has ended, so a
+ * {@link BulkJob} can run its operations in the background.<br>
+ * <br>
+ * Only the request line, headers, server info, principal and session are
+ * kept. The body and attributes of the original request are not available.
+ * <br>
+ * <br>
+ * A snapshot can be persisted by {@link #toMap()}, but the headers, principal
+ * and session are left out of it.
+ *
+ */
+final class DetachedServletRequest extends HttpServletRequestWrapper {
+
+  private static final HttpServletRequest UNAVAILABLE =
+      (HttpServletRequest) Proxy.newProxyInstance(
+          DetachedServletRequest.class.getClassLoader(),
+          new Class<?>[] { HttpServletRequest.class },
+          DetachedServletRequest::unavailable);
+
+  private final String method;
+  private final String scheme;
+  private final String serverName;
+  private final int serverPort;
+  private final boolean secure;
+  private final String protocol;
+  private final String contextPath;
+  private final String servletPath;
+  private final String pathInfo;
+  private final String requestURI;
+  private final String requestURL;
+  private final String queryString;
+  private final String remoteAddr;
+  private final String remoteHost;
+  private final int remotePort;
+  private final String localAddr;
+  private final String localName;
+  private final int localPort;
+  private final List<Locale> locales;
+  private final Principal userPrincipal;
+  private final String remoteUser;
+  private final String authType;
+  private final HttpSession session;
+  private final ServletContext servletContext;
+  private final HttpHeaders headers = new HttpHeaders();
+  private final Map<String, Object> attributes = new LinkedHashMap<>();
+
+  /**
+   * Creates a {@link DetachedServletRequest} by taking a snapshot of given
+   * {@link HttpServletRequest}.
+   * 
+   * @param servReq
+   *          a {@link HttpServletRequest}
+   */
+  public DetachedServletRequest(HttpServletRequest servReq) {
+    super(UNAVAILABLE);
+    method = servReq.getMethod();
+    scheme = servReq.getScheme();
+    serverName = servReq.getServerName();
+    serverPort = servReq.getServerPort();
+    secure = servReq.isSecure();
+    protocol = servReq.getProtocol();
+    contextPath = servReq.getContextPath();
+    servletPath = servReq.getServletPath();
+    pathInfo = servReq.getPathInfo();
+    requestURI = servReq.getRequestURI();
+    requestURL = servReq.getRequestURL().toString();
+    queryString = servReq.getQueryString();
+    remoteAddr = servReq.getRemoteAddr();
+    remoteHost = servReq.getRemoteHost();
+    remotePort = servReq.getRemotePort();
+    localAddr = servReq.getLocalAddr();
+    localName = servReq.getLocalName();
+    localPort = servReq.getLocalPort();
+    locales = Collections.list(servReq.getLocales());
+    userPrincipal = servReq.getUserPrincipal();
+    remoteUser = servReq.getRemoteUser();
+    authType = servReq.getAuthType();
+    session = servReq.getSession(false);
+    servletContext = servReq.getServletContext();
+
+    for (String name : Collections.list(servReq.getHeaderNames())) {
+      headers.put(name, Collections.list(servReq.getHeaders(name)));
+    }
+  }
+
+  /**
+   * Creates a {@link DetachedServletRequest} from a persisted snapshot.
+   * 
+   * @param snapshot
+   *          a snapshot created by {@link #toMap()}
+   * @param servletContext
+   *          the {@link ServletContext} of this Web App
+   */
+  public DetachedServletRequest(Map<String, ?> snapshot,
+      ServletContext servletContext) {
+    this(snapshot, servletContext, null);
+  }
+
+  /**
+   * Creates a {@link DetachedServletRequest} from a persisted snapshot, which
+   * is moved onto given base URL. The server the snapshot was taken on may
+   * have been listening on another port or host.
+   * 
+   * @param snapshot
+   *          a snapshot created by {@link #toMap()}
+   * @param servletContext
+   *          the {@link ServletContext} of this Web App
+   * @param baseUrl
+   *          the scheme, host and port of the current server, or null to keep
+   *          the ones of the snapshot
+   */
+  public DetachedServletRequest(Map<String, ?> snapshot,
+      ServletContext servletContext, URI baseUrl) {
+    super(UNAVAILABLE);
+    method = (String) snapshot.get("method");
+    if (baseUrl == null) {
+      scheme = (String) snapshot.get("scheme");
+      serverName = (String) snapshot.get("serverName");
+      serverPort = ((Number) snapshot.get("serverPort")).intValue();
+      secure = (Boolean) snapshot.get("secure");
+      requestURL = (String) snapshot.get("requestURL");
+      localPort = ((Number) snapshot.get("localPort")).intValue();
+    } else {
+      scheme = baseUrl.getScheme();
+      serverName = baseUrl.getHost();
+      serverPort = baseUrl.getPort();
+      secure = "https".equalsIgnoreCase(scheme);
+      requestURL = scheme + "://" + baseUrl.getRawAuthority()
+          + snapshot.get("requestURI");
+      localPort = serverPort;
+    }
+    protocol = (String) snapshot.get("protocol");
+    contextPath = (String) snapshot.get("contextPath");
+    servletPath = (String) snapshot.get("servletPath");
+    pathInfo = (String) snapshot.get("pathInfo");
+    requestURI = (String) snapshot.get("requestURI");
+    queryString = (String) snapshot.get("queryString");
+    remoteAddr = (String) snapshot.get("remoteAddr");
+    remoteHost = (String) snapshot.get("remoteHost");
+    remotePort = ((Number) snapshot.get("remotePort")).intValue();
+    localAddr = (String) snapshot.get("localAddr");
+    localName = (String) snapshot.get("localName");
+    locales = new ArrayList<>();
+    for (Object tag : (List<?>) snapshot.get("locales")) {
+      locales.add(Locale.forLanguageTag((String) tag));
+    }
+    userPrincipal = null;
+    remoteUser = null;
+    authType = null;
+    session = null;
+    this.servletContext = servletContext;
+  }
+
+  /**
+   * Returns a snapshot of this {@link DetachedServletRequest} which only
+   * contains JSON compatible values.
+   * 
+   * @return a snapshot
+   */
+  public Map<String, Object> toMap() {
+    Map<String, Object> snapshot = new LinkedHashMap<>();
+    snapshot.put("method", method);
+    snapshot.put("scheme", scheme);
+    snapshot.put("serverName", serverName);
+    snapshot.put("serverPort", serverPort);
+    snapshot.put("secure", secure);
+    snapshot.put("protocol", protocol);
+    snapshot.put("contextPath", contextPath);
+    snapshot.put("servletPath", servletPath);
+    snapshot.put("pathInfo", pathInfo);
+    snapshot.put("requestURI", requestURI);
+    snapshot.put("requestURL", requestURL);
+    snapshot.put("queryString", queryString);
+    snapshot.put("remoteAddr", remoteAddr);
+    snapshot.put("remoteHost", remoteHost);
+    snapshot.put("remotePort", remotePort);
+    snapshot.put("localAddr", localAddr);
+    snapshot.put("localName", localName);
+    snapshot.put("localPort", localPort);
+    List<String> tags = new ArrayList<>();
+    for (Locale locale : locales) {
+      tags.add(locale.toLanguageTag());
+    }
+    snapshot.put("locales", tags);
+    return snapshot;
+  }
+
+  private static Object unavailable(Object proxy, Method m, Object[] args) {
+    switch (m.getName()) {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return "UnavailableServletRequest";
+      default:
+        throw new UnsupportedOperationException(m.getName()
+            + " is not available after the bulk request has ended");
+    }
+  }
+
+  @Override
+  public String getMethod() {
+    return method;
+  }
+
+  @Override
+  public String getScheme() {
+    return scheme;
+  }
+
+  @Override
+  public String getServerName() {
+    return serverName;
+  }
+
+  @Override
+  public int getServerPort() {
+    return serverPort;
+  }
+
+  @Override
+  public boolean isSecure() {
+    return secure;
+  }
+
+  @Override
+  public String getProtocol() {
+    return protocol;
+  }
+
+  @Override
+  public String getContextPath() {
+    return contextPath;
+  }
+
+  @Override
+  public String getServletPath() {
+    return servletPath;
+  }
+
+  @Override
+  public String getPathInfo() {
+    return pathInfo;
+  }
+
+  @Override
+  public String getPathTranslated() {
+    return pathInfo == null ? null : servletContext.getRealPath(pathInfo);
+  }
+
+  @Override
+  public String getRequestURI() {
+    return requestURI;
+  }
+
+  @Override
+  public StringBuffer getRequestURL() {
+    return new StringBuffer(requestURL);
+  }
+
+  @Override
+  public String getQueryString() {
+    return queryString;
+  }
+
+  @Override
+  public String getRemoteAddr() {
+    return remoteAddr;
+  }
+
+  @Override
+  public String getRemoteHost() {
+    return remoteHost;
+  }
+
+  @Override
+  public int getRemotePort() {
+    return remotePort;
+  }
+
+  @Override
+  public String getLocalAddr() {
+    return localAddr;
+  }
+
+  @Override
+  public String getLocalName() {
+    return localName;
+  }
+
+  @Override
+  public int getLocalPort() {
+    return localPort;
+  }
+
+  @Override
+  public Locale getLocale() {
+    return locales.isEmpty() ? Locale.getDefault() : locales.get(0);
+  }
+
+  @Override
+  public Enumeration<Locale> getLocales() {
+    return Collections.enumeration(locales);
+  }
+
+  @Override
+  public Principal getUserPrincipal() {
+    return userPrincipal;
+  }
+
+  @Override
+  public String getRemoteUser() {
+    return remoteUser;
+  }
+
+  @Override
+  public String getAuthType() {
+    return authType;
+  }
+
+  /**
+   * Roles can't be resolved once the original request has ended.
+   * 
+   * @return false
+   */
+  @Override
+  public boolean isUserInRole(String role) {
+    return false;
+  }
+
+  @Override
+  public HttpSession getSession() {
+    return session;
+  }
+
+  @Override
+  public HttpSession getSession(boolean create) {
+    return session;
+  }
+
+  @Override
+  public String getRequestedSessionId() {
+    return session == null ? null : session.getId();
+  }
+
+  @Override
+  public boolean isRequestedSessionIdValid() {
+    return session != null;
+  }
+
+  @Override
+  public boolean isRequestedSessionIdFromCookie() {
+    return false;
+  }
+
+  @Override
+  public boolean isRequestedSessionIdFromURL() {
+    return false;
+  }
+
+  @Override
+  @Deprecated
+  public boolean isRequestedSessionIdFromUrl() {
+    return false;
+  }
+
+  @Override
+  public ServletContext getServletContext() {
+    return servletContext;
+  }
+
+  @Override
+  public String getHeader(String name) {
+    return headers.getFirst(name);
+  }
+
+  @Override
+  public Enumeration<String> getHeaders(String name) {
+    List<String> values = headers.get(name);
+    return Collections.enumeration(
+        values == null ? Collections.<String>emptyList() : values);
+  }
+
+  @Override
+  public Enumeration<String> getHeaderNames() {
+    return Collections.enumeration(headers.keySet());
+  }
+
+  @Override
+  public int getIntHeader(String name) {
+    String value = headers.getFirst(name);
+    return value == null ? -1 : Integer.parseInt(value);
+  }
+
+  @Override
+  public long getDateHeader(String name) {
+    return headers.getFirstDate(name);
+  }
+
+  @Override
+  public Cookie[] getCookies() {
+    return null;
+  }
+
+  @Override
+  public String getContentType() {
+    return null;
+  }
+
+  @Override
+  public int getContentLength() {
+    return 0;
+  }
+
+  @Override
+  public long getContentLengthLong() {
+    return 0;
+  }
+
+  @Override
+  public String getCharacterEncoding() {
+    return null;
+  }
+
+  @Override
+  public void setCharacterEncoding(String env) {}
+
+  @Override
+  public ServletInputStream getInputStream() {
+    ByteArrayInputStream in = new ByteArrayInputStream(new byte[0]);
+    return new ServletInputStream() {
+
+      @Override
+      public int read() {
+        return in.read();
+      }
+
+      @Override
+      public boolean isFinished() {
+        return true;
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setReadListener(ReadListener readListener) {
+        throw new UnsupportedOperationException();
+      }
+
+    };
+  }
+
+  @Override
+  public BufferedReader getReader() {
+    return new BufferedReader(
+        new InputStreamReader(getInputStream(), StandardCharsets.ISO_8859_1));
+  }
+
+  @Override
+  public String getParameter(String name) {
+    return null;
+  }
+
+  @Override
+  public Map<String, String[]> getParameterMap() {
+    return Collections.emptyMap();
+  }
+
+  @Override
+  public Enumeration<String> getParameterNames() {
+    return Collections.emptyEnumeration();
+  }
+
+  @Override
+  public String[] getParameterValues(String name) {
+    return null;
+  }
+
+  @Override
+  public synchronized Object getAttribute(String name) {
+    return attributes.get(name);
+  }
+
+  @Override
+  public synchronized Enumeration<String> getAttributeNames() {
+    return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+  }
+
+  @Override
+  public synchronized void setAttribute(String name, Object o) {
+    if (o == null) {
+      attributes.remove(name);
+    } else {
+      attributes.put(name, o);
+    }
+  }
+
+  @Override
+  public synchronized void removeAttribute(String name) {
+    attributes.remove(name);
+  }
+
+  @Override
+  public boolean isAsyncSupported() {
+    return false;
+  }
+
+  @Override
+  public boolean isAsyncStarted() {
+    return false;
+  }
+
+  @Override
+  public DispatcherType getDispatcherType() {
+    return DispatcherType.REQUEST;
+  }
+
+}
@@ -0,0 +1,271 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+
+import javax.servlet.Filter;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.util.NestedServletException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 
+ * {@link DispatcherBulkOperationExecutor} hands every bulk operation straight
+ * to the Spring {@link DispatcherServlet} within the same JVM by a synthetic
+ * request and response, so no HTTP round trip is needed.<br>
+ * <br>
+ * Servlet filters are bypassed, except the Spring Security filter chain. If
+ * the Web App has one, every operation goes through it, so it is
+ * authenticated and authorized as if it was sent by HTTP. The session of the
+ * bulk request is shared with its operations.<br>
+ * <br>
+ * The DispatcherServlet is initialized by the servlet container on its first
+ * request. Until then, e.g. while journaled jobs are resumed at startup,
+ * operations are sent by a fallback {@link BulkOperationExecutor} instead.<br>
+ * <br>
+ * An exception thrown while an operation is dispatched is logged, and the
+ * operation answers 500 with an error payload like the one of Spring Boot.
+ *
+ */
+public class DispatcherBulkOperationExecutor implements BulkOperationExecutor {
+
+  private static final Log log =
+      LogFactory.getLog(DispatcherBulkOperationExecutor.class);
+
+  private static final String SECURITY_FILTER_NAME =
+      "springSecurityFilterChain";
+
+  private static final boolean springSecurityPresent = ClassUtils.isPresent(
+      "org.springframework.security.core.context.SecurityContextHolder",
+      DispatcherBulkOperationExecutor.class.getClassLoader());
+
+  private final ApplicationContext appCtx;
+  private final BulkOperationExecutor fallback;
+  private final ObjectMapper mapper;
+
+  private volatile DispatcherServlet dispatcher;
+  private volatile Optional<Filter> securityFilter;
+
+  /**
+   * Creates a {@link DispatcherBulkOperationExecutor}.
+   * 
+   * @param appCtx
+   *          the Spring {@link ApplicationContext}
+   */
+  public DispatcherBulkOperationExecutor(ApplicationContext appCtx) {
+    this(appCtx, new LoopbackBulkOperationExecutor());
+  }
+
+  /**
+   * Creates a {@link DispatcherBulkOperationExecutor} which sends operations
+   * by given {@link BulkOperationExecutor} until the DispatcherServlet is
+   * initialized.
+   * 
+   * @param appCtx
+   *          the Spring {@link ApplicationContext}
+   * @param fallback
+   *          a {@link BulkOperationExecutor}
+   */
+  public DispatcherBulkOperationExecutor(ApplicationContext appCtx,
+      BulkOperationExecutor fallback) {
+    if (fallback == null) throw new NullPointerException();
+
+    this.appCtx = appCtx;
+    this.fallback = fallback;
+    mapper = appCtx.getBeanProvider(ObjectMapper.class)
+        .getIfUnique(ObjectMapper::new);
+  }
+
+  private DispatcherServlet dispatcher() {
+    if (dispatcher == null) {
+      dispatcher = appCtx.getBean(DispatcherServlet.class);
+    }
+    return dispatcher;
+  }
+
+  private Filter securityFilter() {
+    if (securityFilter == null) {
+      securityFilter = Optional.ofNullable(
+          appCtx.containsBean(SECURITY_FILTER_NAME)
+              && appCtx.isTypeMatch(SECURITY_FILTER_NAME, Filter.class)
+                  ? appCtx.getBean(SECURITY_FILTER_NAME, Filter.class)
+                  : null);
+    }
+    return securityFilter.orElse(null);
+  }
+
+  @Override
+  public ResponseEntity<String> execute(RequestEntity<?> request,
+      HttpServletRequest servReq) {
+    if (dispatcher().getServletConfig() == null) {
+      return fallback.execute(request, servReq);
+    }
+
+    BulkServletResponse subRes = dispatch(request, servReq);
+    return ResponseEntity.status(subRes.getStatus())
+        .headers(subRes.toClientHttpResponse().getHeaders())
+        .body(new String(subRes.getBodyAsByteArray(), subRes.getCharset()));
+  }
+
+  @Override
+  public ResponseEntity<byte[]> executeForBytes(RequestEntity<?> request,
+      HttpServletRequest servReq) {
+    if (dispatcher().getServletConfig() == null) {
+      return fallback.executeForBytes(request, servReq);
+    }
+
+    BulkServletResponse subRes = dispatch(request, servReq);
+    return ResponseEntity.status(subRes.getStatus())
+        .headers(subRes.toClientHttpResponse().getHeaders())
+        .body(subRes.getBodyAsByteArray());
+  }
+
+  private BulkServletResponse dispatch(RequestEntity<?> request,
+      HttpServletRequest servReq) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.putAll(request.getHeaders());
+
+    MultiValueMap<String, String> formParams = null;
+    byte[] body = null;
+    if (request.getBody() instanceof MultiValueMap) {
+      formParams = formParams((MultiValueMap<?, ?>) request.getBody());
+      if (!formParams.isEmpty() && headers.getContentType() == null) {
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+      }
+    } else if (request.getBody() != null) {
+      try {
+        body = mapper.writeValueAsBytes(request.getBody());
+      } catch (JsonProcessingException e) {
+        throw new BulkApiException(INTERNAL_SERVER_ERROR,
+            "Unable to write the body of " + request.getUrl());
+      }
+      if (headers.getContentType() == null) {
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+      }
+    }
+
+    BulkServletRequest subReq = new BulkServletRequest(servReq,
+        request.getMethod(), request.getUrl(), headers, formParams, body);
+    BulkServletResponse subRes = new BulkServletResponse();
+    try {
+      service(subReq, subRes);
+    } catch (ServletException | IOException | RuntimeException e) {
+      log.error("Failed to dispatch bulk operation " + request.getMethod()
+          + " " + request.getUrl(), e);
+      subRes = errorResponse(request, e);
+    }
+
+    return subRes;
+  }
+
+  private BulkServletResponse errorResponse(RequestEntity<?> request,
+      Exception e) {
+    Throwable cause = e instanceof NestedServletException
+        && e.getCause() != null ? e.getCause() : e;
+
+    Map<String, Object> error = new LinkedHashMap<>();
+    error.put("timestamp", new Date());
+    error.put("status", INTERNAL_SERVER_ERROR.value());
+    error.put("error", INTERNAL_SERVER_ERROR.getReasonPhrase());
+    error.put("message", cause.getMessage());
+    error.put("path", request.getUrl().getPath());
+
+    BulkServletResponse subRes = new BulkServletResponse();
+    subRes.setStatus(INTERNAL_SERVER_ERROR.value());
+    subRes.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+    try {
+      subRes.getOutputStream().write(mapper.writeValueAsBytes(error));
+    } catch (IOException ex) {
+      // The body is kept in memory, so only the serialization can fail
+      log.error("Failed to write the error of bulk operation "
+          + request.getUrl(), ex);
+    }
+    return subRes;
+  }
+
+  private void service(ServletRequest subReq, ServletResponse subRes)
+      throws ServletException, IOException {
+    Filter filter = securityFilter();
+    if (filter == null) {
+      dispatcher().service(subReq, subRes);
+      return;
+    }
+
+    // The filter chain replaces and then clears the security context of this
+    // thread, which may still belong to the bulk request
+    Object context = springSecurityPresent ? SpringSecurity.getContext() : null;
+    try {
+      filter.doFilter(subReq, subRes,
+          (req, res) -> dispatcher().service(req, res));
+    } finally {
+      if (springSecurityPresent) SpringSecurity.setContext(context);
+    }
+  }
+
+  private MultiValueMap<String, String> formParams(MultiValueMap<?, ?> body) {
+    MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+    for (Entry<?, ?> param : body.entrySet()) {
+      for (Object value : (List<?>) param.getValue()) {
+        params.add(String.valueOf(param.getKey()),
+            value == null ? null : String.valueOf(value));
+      }
+    }
+    return params;
+  }
+
+  private static final class SpringSecurity {
+
+    static Object getContext() {
+      return SecurityContextHolder.getContext();
+    }
+
+    static void setContext(Object context) {
+      SecurityContextHolder.setContext((SecurityContext) context);
+    }
+
+  }
+
+}
@@ -0,0 +1,339 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.wnameless.spring.bulkapi.BulkJob.Status;
+
+/**
+ * 
+ * {@link FileBulkJobJournal} appends the progress of {@link BulkJob}s to a
+ * local file as lines of JSON.<br>
+ * <br>
+ * Every record is written to the file channel right away, so it survives a
+ * crash of the JVM. To survive a crash of the OS, the file is forced to disk
+ * periodically, or after every record if the fsync interval isn't positive.
+ * <br>
+ * <br>
+ * Once the file grows over its max size, the finished jobs are compacted away.
+ * If the unfinished jobs alone still exceed the max size, new jobs are
+ * rejected until some of them are finished.<br>
+ * <br>
+ * The headers of operations which carry credentials are redacted before they
+ * are written, so resumed operations are sent without them.
+ *
+ */
+final class FileBulkJobJournal extends BulkJobJournal {
+
+  static final String FILE_NAME = "bulk-jobs.journal";
+
+  private static final String SUBMITTED = "submitted";
+  private static final String COMPLETED = "completed";
+  private static final String FINISHED = "finished";
+
+  private final Path file;
+  private final long maxSize;
+  private final long fsyncInterval;
+  private final Set<String> redactedHeaders =
+      new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+  private final ObjectMapper mapper;
+  private final ScheduledExecutorService syncer;
+
+  private FileChannel channel;
+  private boolean dirty;
+  private long compactAt;
+  private int finishedSinceCompaction;
+
+  /**
+   * Creates a {@link FileBulkJobJournal} in given directory.
+   * 
+   * @param dir
+   *          the directory of the journal file
+   * @param maxSize
+   *          the max size of the journal file in bytes
+   * @param fsyncInterval
+   *          the interval of forcing the journal file to disk in milliseconds
+   * @param redactedHeaders
+   *          the headers of operations which are never written
+   * @param mapper
+   *          the {@link ObjectMapper} which writes journal records
+   * @throws IOException
+   *           if the journal file can't be opened
+   */
+  public FileBulkJobJournal(Path dir, long maxSize, long fsyncInterval,
+      Collection<String> redactedHeaders, ObjectMapper mapper)
+      throws IOException {
+    Files.createDirectories(dir);
+    file = dir.resolve(FILE_NAME);
+    this.maxSize = maxSize;
+    this.fsyncInterval = fsyncInterval;
+    this.redactedHeaders.addAll(redactedHeaders);
+    this.mapper = mapper;
+    compactAt = maxSize;
+    channel = FileChannel.open(file, CREATE, WRITE, APPEND);
+
+    if (fsyncInterval > 0) {
+      CustomizableThreadFactory threadFactory =
+          new CustomizableThreadFactory("bulk-api-journal-");
+      threadFactory.setDaemon(true);
+      syncer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+      syncer.scheduleWithFixedDelay(this::sync, fsyncInterval, fsyncInterval,
+          MILLISECONDS);
+    } else {
+      syncer = null;
+    }
+  }
+
+  @Override
+  void submitted(BulkJob job, BulkRequest req,
+      DetachedServletRequest servReq) {
+    Map<String, Object> record = record(SUBMITTED, job.getId());
+    record.put("job", job);
+    record.put("request", redacted(req));
+    record.put("servletRequest", servReq.toMap());
+    append(record, true);
+  }
+
+  private ObjectNode redacted(BulkRequest req) {
+    ObjectNode tree = mapper.valueToTree(req);
+    for (JsonNode op : tree.path("operations")) {
+      Iterator<Entry<String, JsonNode>> headers = op.path("headers").fields();
+      while (headers.hasNext()) {
+        if (redactedHeaders.contains(headers.next().getKey())) {
+          headers.remove();
+        }
+      }
+    }
+    return tree;
+  }
+
+  @Override
+  void completed(String jobId, BulkResult result) {
+    Map<String, Object> record = record(COMPLETED, jobId);
+    record.put("result", result);
+    append(record, false);
+  }
+
+  @Override
+  void finished(String jobId, Status status, String error) {
+    Map<String, Object> record = record(FINISHED, jobId);
+    record.put("status", status);
+    record.put("error", error);
+    synchronized (this) {
+      append(record, false);
+      finishedSinceCompaction++;
+    }
+  }
+
+  private Map<String, Object> record(String type, String jobId) {
+    Map<String, Object> record = new LinkedHashMap<>();
+    record.put("type", type);
+    record.put("jobId", jobId);
+    return record;
+  }
+
+  @Override
+  synchronized List<RecoveredJob> recover() {
+    Map<String, RecoveredJob> jobs = new LinkedHashMap<>();
+    try (BufferedReader reader = newReader()) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        JsonNode record = parse(line);
+        if (record == null) continue;
+
+        String jobId = record.path("jobId").asText();
+        switch (record.path("type").asText()) {
+          case SUBMITTED:
+            jobs.put(jobId, new RecoveredJob(
+                mapper.treeToValue(record.get("job"), BulkJob.class),
+                mapper.treeToValue(record.get("request"), BulkRequest.class),
+                mapper.convertValue(record.get("servletRequest"),
+                    new TypeReference<Map<String, Object>>() {})));
+            break;
+          case COMPLETED:
+            RecoveredJob recovered = jobs.get(jobId);
+            if (recovered != null) {
+              recovered.getJob().getResults().add(
+                  mapper.treeToValue(record.get("result"), BulkResult.class));
+            }
+            break;
+          case FINISHED:
+            jobs.remove(jobId);
+            break;
+        }
+      }
+
+      compact();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return new ArrayList<>(jobs.values());
+  }
+
+  @Override
+  void close() {
+    if (syncer != null) syncer.shutdown();
+    synchronized (this) {
+      try {
+        channel.force(false);
+        channel.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private synchronized void append(Map<String, Object> record,
+      boolean submission) {
+    try {
+      byte[] json = mapper.writeValueAsBytes(record);
+      byte[] line = Arrays.copyOf(json, json.length + 1);
+      line[json.length] = '\n';
+      ByteBuffer buffer = ByteBuffer.wrap(line);
+
+      long size = channel.size() + buffer.remaining();
+      if (size > compactAt || (submission && size > maxSize
+          && finishedSinceCompaction > 0)) {
+        compact();
+        size = channel.size() + buffer.remaining();
+      }
+      if (submission && size > maxSize) {
+        throw new BulkApiException(SERVICE_UNAVAILABLE,
+            "Bulk job journal is full");
+      }
+
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      if (fsyncInterval > 0) {
+        dirty = true;
+      } else {
+        channel.force(false);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private synchronized void sync() {
+    if (!dirty || !channel.isOpen()) return;
+    try {
+      channel.force(false);
+      dirty = false;
+    } catch (IOException e) {
+      // Retries on the next round
+    }
+  }
+
+  /**
+   * Rewrites the journal file without the records of finished jobs, and then
+   * replaces the old file atomically.
+   */
+  private void compact() throws IOException {
+    Set<String> finished = new HashSet<>();
+    try (BufferedReader reader = newReader()) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        JsonNode record = parse(line);
+        if (record != null && FINISHED.equals(record.path("type").asText())) {
+          finished.add(record.path("jobId").asText());
+        }
+      }
+    }
+
+    Path compacted = file.resolveSibling(FILE_NAME + ".compact");
+    try (BufferedReader reader = newReader(); FileChannel out =
+        FileChannel.open(compacted, CREATE, WRITE, TRUNCATE_EXISTING)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        JsonNode record = parse(line);
+        if (record == null
+            || finished.contains(record.path("jobId").asText())) {
+          continue;
+        }
+
+        ByteBuffer buffer = UTF_8.encode(line + '\n');
+        while (buffer.hasRemaining()) {
+          out.write(buffer);
+        }
+      }
+      out.force(true);
+    }
+
+    channel.close();
+    Files.move(compacted, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    channel = FileChannel.open(file, CREATE, WRITE, APPEND);
+    dirty = false;
+    finishedSinceCompaction = 0;
+    compactAt = Math.max(maxSize, channel.size() + maxSize / 4);
+  }
+
+  private BufferedReader newReader() throws IOException {
+    // A torn record at the end of the file is replaced instead of failing
+    return new BufferedReader(
+        new InputStreamReader(Files.newInputStream(file), UTF_8));
+  }
+
+  private JsonNode parse(String line) {
+    try {
+      JsonNode record = mapper.readTree(line);
+      return record != null && record.isObject() ? record : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 
+ * {@link InMemoryBulkIdempotencyStore} keeps idempotent outcomes in memory. An
+ * outcome expires once its time to live has passed, and the least recently
+ * used one is evicted once the size limit is exceeded.
+ *
+ */
+public class InMemoryBulkIdempotencyStore implements BulkIdempotencyStore {
+
+  private final Map<String, Entry> entries;
+  private final long ttl;
+
+  /**
+   * Creates an {@link InMemoryBulkIdempotencyStore}.
+   * 
+   * @param maxSize
+   *          the max number of stored outcomes
+   * @param ttl
+   *          the time to live of an outcome in milliseconds
+   */
+  public InMemoryBulkIdempotencyStore(int maxSize, long ttl) {
+    if (maxSize < 0) throw new IllegalArgumentException(
+        "Max size must not be negative, but got " + maxSize);
+    if (ttl < 0) throw new IllegalArgumentException(
+        "TTL must not be negative, but got " + ttl);
+
+    this.ttl = ttl;
+    entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxSize;
+      }
+
+    };
+  }
+
+  @Override
+  public synchronized BulkIdempotencyRecord get(String key) {
+    Entry entry = entries.get(key);
+    if (entry == null) return null;
+
+    if (System.currentTimeMillis() >= entry.expiresAt) {
+      entries.remove(key);
+      return null;
+    }
+    return entry.record;
+  }
+
+  @Override
+  public synchronized void put(String key, BulkIdempotencyRecord record) {
+    entries.put(key, new Entry(record, System.currentTimeMillis() + ttl));
+  }
+
+  /**
+   * Returns the number of outcomes in this store, including the expired ones
+   * which haven't been evicted yet.
+   * 
+   * @return the number of outcomes
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private static final class Entry {
+
+    private final BulkIdempotencyRecord record;
+    private final long expiresAt;
+
+    Entry(BulkIdempotencyRecord record, long expiresAt) {
+      this.record = record;
+      this.expiresAt = expiresAt;
+    }
+
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.github.wnameless.spring.bulkapi.BulkJob.Status;
+
+/**
+ * 
+ * {@link InMemoryBulkJobStore} keeps {@link BulkJob}s in memory. A finished
+ * job is evicted once its time to live has passed since it was finished.
+ *
+ */
+public class InMemoryBulkJobStore implements BulkJobStore {
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final long ttl;
+
+  /**
+   * Creates an {@link InMemoryBulkJobStore}.
+   * 
+   * @param ttl
+   *          the time to live of a finished job in milliseconds
+   */
+  public InMemoryBulkJobStore(long ttl) {
+    if (ttl < 0) throw new IllegalArgumentException(
+        "TTL must not be negative, but got " + ttl);
+
+    this.ttl = ttl;
+  }
+
+  @Override
+  public void create(BulkJob job) {
+    evictExpired();
+    entries.put(job.getId(), new Entry(job));
+  }
+
+  @Override
+  public void addResult(String jobId, BulkResult result) {
+    Entry entry = entries.get(jobId);
+    if (entry == null) return;
+
+    synchronized (entry) {
+      entry.results.add(result);
+    }
+  }
+
+  @Override
+  public void update(String jobId, Status status, String error) {
+    Entry entry = entries.get(jobId);
+    if (entry == null) return;
+
+    synchronized (entry) {
+      entry.job.setStatus(status);
+      entry.job.setError(error);
+      if (status.isFinished()) {
+        entry.job.setFinishedAt(System.currentTimeMillis());
+      }
+    }
+  }
+
+  @Override
+  public BulkJob find(String jobId, int from) {
+    Entry entry = entries.get(jobId);
+    if (entry == null) return null;
+
+    synchronized (entry) {
+      if (isExpired(entry)) {
+        entries.remove(jobId, entry);
+        return null;
+      }
+
+      BulkJob job = new BulkJob();
+      job.setId(entry.job.getId());
+      job.setStatus(entry.job.getStatus());
+      job.setOperations(entry.job.getOperations());
+      job.setError(entry.job.getError());
+      job.setCreatedAt(entry.job.getCreatedAt());
+      job.setFinishedAt(entry.job.getFinishedAt());
+
+      int start = Math.min(Math.max(0, from), entry.results.size());
+      job.setFrom(start);
+      job.setResults(
+          new ArrayList<>(entry.results.subList(start, entry.results.size())));
+      return job;
+    }
+  }
+
+  /**
+   * Returns the number of jobs in this store, including the expired ones which
+   * haven't been evicted yet.
+   * 
+   * @return the number of jobs
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private void evictExpired() {
+    Iterator<Entry> iter = entries.values().iterator();
+    while (iter.hasNext()) {
+      Entry entry = iter.next();
+      synchronized (entry) {
+        if (isExpired(entry)) iter.remove();
+      }
+    }
+  }
+
+  private boolean isExpired(Entry entry) {
+    Long finishedAt = entry.job.getFinishedAt();
+    return finishedAt != null
+        && System.currentTimeMillis() - finishedAt >= ttl;
+  }
+
+  private static final class Entry {
+
+    private final BulkJob job;
+    private final List<BulkResult> results = new ArrayList<>();
+
+    Entry(BulkJob job) {
+      this.job = new BulkJob();
+      this.job.setId(job.getId());
+      this.job.setStatus(job.getStatus());
+      this.job.setOperations(job.getOperations());
+      this.job.setError(job.getError());
+      this.job.setCreatedAt(job.getCreatedAt());
+      this.job.setFinishedAt(job.getFinishedAt());
+      results.addAll(job.getResults());
+    }
+
+  }
+
+}
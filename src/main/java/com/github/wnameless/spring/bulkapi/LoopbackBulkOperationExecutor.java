@@ -0,0 +1,86 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * 
+ * {@link LoopbackBulkOperationExecutor} sends every bulk operation back to the
+ * server through a real HTTP request by a {@link RestTemplate}. Error
+ * responses are captured instead of being thrown.
+ *
+ */
+public class LoopbackBulkOperationExecutor implements BulkOperationExecutor {
+
+  private final RestTemplate restTemplate;
+
+  /**
+   * Creates a {@link LoopbackBulkOperationExecutor}.
+   */
+  public LoopbackBulkOperationExecutor() {
+    this(new RestTemplate());
+  }
+
+  /**
+   * Creates a {@link LoopbackBulkOperationExecutor} by given
+   * {@link RestTemplate}.
+   * 
+   * @param restTemplate
+   *          a {@link RestTemplate}
+   */
+  public LoopbackBulkOperationExecutor(RestTemplate restTemplate) {
+    if (restTemplate == null) throw new NullPointerException();
+
+    this.restTemplate = restTemplate;
+  }
+
+  @Override
+  public ResponseEntity<String> execute(RequestEntity<?> request,
+      HttpServletRequest servReq) {
+    try {
+      return restTemplate.exchange(request, String.class);
+    } catch (RestClientResponseException e) {
+      return ResponseEntity.status(e.getRawStatusCode())
+          .headers(e.getResponseHeaders())
+          .body(e.getResponseBodyAsString());
+    }
+  }
+
+  @Override
+  public ResponseEntity<byte[]> executeForBytes(RequestEntity<?> request,
+      HttpServletRequest servReq) {
+    try {
+      // Accepts the same media types as a String body would, so operations
+      // answer the same content
+      return restTemplate.execute(request.getUrl(), request.getMethod(),
+          restTemplate.httpEntityCallback(request, String.class),
+          restTemplate.responseEntityExtractor(byte[].class));
+    } catch (RestClientResponseException e) {
+      return ResponseEntity.status(e.getRawStatusCode())
+          .headers(e.getResponseHeaders())
+          .body(e.getResponseBodyAsByteArray());
+    }
+  }
+
+}
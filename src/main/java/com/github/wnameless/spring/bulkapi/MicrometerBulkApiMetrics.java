@@ -0,0 +1,146 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpStatus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 
+ * {@link MicrometerBulkApiMetrics} records the metrics of bulk requests into a
+ * Micrometer {@link MeterRegistry}.<br>
+ * <br>
+ * Meters:<br>
+ * bulk.api.requests - bulk request durations, tagged by outcome<br>
+ * bulk.api.requests.operations - the number of operations per bulk
+ * request<br>
+ * bulk.api.requests.phase - the time spent in validation and execution<br>
+ * bulk.api.requests.rejected - rejected bulk requests, tagged by status<br>
+ * bulk.api.operations - operation latencies, tagged by route, method and
+ * status class<br>
+ * bulk.api.operations.rejected - operations rejected with their own results,
+ * tagged by status<br>
+ * bulk.api.cache - response cache lookups, tagged by result<br>
+ * bulk.api.cache.evictions - responses evicted from the response cache<br>
+ * bulk.api.bulkhead.rejected - operations rejected by bulkheads, tagged by
+ * route
+ *
+ */
+final class MicrometerBulkApiMetrics extends BulkApiMetrics {
+
+  private final MeterRegistry registry;
+  private final DistributionSummary operationCount;
+  private final Timer validationTimer;
+  private final Timer executionTimer;
+
+  static BulkApiMetrics of(ApplicationContext appCtx) {
+    MeterRegistry registry =
+        appCtx.getBeanProvider(MeterRegistry.class).getIfUnique();
+    return registry == null ? NOOP : new MicrometerBulkApiMetrics(registry);
+  }
+
+  public MicrometerBulkApiMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    operationCount = DistributionSummary
+        .builder("bulk.api.requests.operations")
+        .description("The number of operations per bulk request")
+        .register(registry);
+    validationTimer = phaseTimer("validation");
+    executionTimer = phaseTimer("execution");
+  }
+
+  private Timer phaseTimer(String phase) {
+    return Timer.builder("bulk.api.requests.phase").tag("phase", phase)
+        .description("The time spent in each phase of bulk requests")
+        .register(registry);
+  }
+
+  @Override
+  void recordBulk(int operations, long validationNanos, long executionNanos,
+      boolean success) {
+    Timer.builder("bulk.api.requests")
+        .tag("outcome", success ? "SUCCESS" : "ERROR")
+        .description("The duration of bulk requests").register(registry)
+        .record(validationNanos + executionNanos, NANOSECONDS);
+    operationCount.record(operations);
+    validationTimer.record(validationNanos, NANOSECONDS);
+    executionTimer.record(executionNanos, NANOSECONDS);
+  }
+
+  @Override
+  void recordRejection(HttpStatus status) {
+    Counter.builder("bulk.api.requests.rejected")
+        .tag("status", String.valueOf(status.value()))
+        .description("The number of rejected bulk requests").register(registry)
+        .increment();
+  }
+
+  @Override
+  void recordOperationRejection(HttpStatus status) {
+    Counter.builder("bulk.api.operations.rejected")
+        .tag("status", String.valueOf(status.value()))
+        .description("The number of rejected bulk operations")
+        .register(registry).increment();
+  }
+
+  @Override
+  void recordOperation(BulkOperationPlan plan, int status, long nanos) {
+    Timer.builder("bulk.api.operations")
+        .tag("route", plan.getRoute() == null ? "UNKNOWN" : plan.getRoute())
+        .tag("method", plan.getMethod().name())
+        .tag("status", statusClass(status))
+        .description("The latency of bulk operations")
+        .publishPercentileHistogram().register(registry)
+        .record(nanos, NANOSECONDS);
+  }
+
+  @Override
+  void recordCacheLookup(String result) {
+    Counter.builder("bulk.api.cache").tag("result", result)
+        .description("The number of response cache lookups")
+        .register(registry).increment();
+  }
+
+  @Override
+  void recordCacheEviction() {
+    Counter.builder("bulk.api.cache.evictions")
+        .description("The number of responses evicted from the response cache")
+        .register(registry).increment();
+  }
+
+  @Override
+  void recordBulkheadRejection(BulkOperationPlan plan) {
+    Counter.builder("bulk.api.bulkhead.rejected")
+        .tag("route", plan.getRoute() == null ? "UNKNOWN" : plan.getRoute())
+        .description("The number of operations rejected by bulkheads")
+        .register(registry).increment();
+  }
+
+  private static String statusClass(int status) {
+    if (status < 100 || status >= 600) return "UNKNOWN";
+    return (status / 100) + "xx";
+  }
+
+}
@@ -23,9 +23,17 @@ final class PathValidationResult {
 
   private final boolean requestBody;
 
+  private final String route;
+
   public PathValidationResult(boolean valid, boolean requestBody) {
+    this(valid, requestBody, null);
+  }
+
+  public PathValidationResult(boolean valid, boolean requestBody,
+      String route) {
     this.valid = valid;
     this.requestBody = requestBody;
+    this.route = route;
   }
 
   public boolean isValid() {
@@ -36,11 +44,16 @@ final class PathValidationResult {
     return requestBody;
   }
 
+  public String getRoute() {
+    return route;
+  }
+
   @Override
   public int hashCode() {
     int result = 27;
     result = result ^ 31 + (valid ? 1 : 0);
     result = result ^ 31 + (requestBody ? 1 : 0);
+    result = result ^ 31 + (route == null ? 0 : route.hashCode());
     return result;
   }
 
@@ -50,13 +63,14 @@ final class PathValidationResult {
     if (obj == null) return false;
     if (!(obj instanceof PathValidationResult)) return false;
     PathValidationResult pvr = (PathValidationResult) obj;
-    return valid == pvr.valid && requestBody == pvr.requestBody;
+    return valid == pvr.valid && requestBody == pvr.requestBody
+        && (route == null ? pvr.route == null : route.equals(pvr.route));
   }
 
   @Override
   public String toString() {
     return getClass().getSimpleName() + "{valid=" + valid + ", requestBody="
-        + requestBody + "}";
+        + requestBody + ", route=" + route + "}";
   }
 
 }
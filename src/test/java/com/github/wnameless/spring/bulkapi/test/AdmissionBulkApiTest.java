@@ -0,0 +1,151 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkOperation;
+import com.github.wnameless.spring.bulkapi.BulkRequest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = Application.class,
+    webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = { "spring.bulk.api.admission.enabled=true",
+        "spring.bulk.api.admission.max-bytes=4096",
+        "spring.bulk.api.admission.max-in-flight=4",
+        "spring.bulk.api.admission.retry-after=2" })
+public class AdmissionBulkApiTest {
+
+  @LocalServerPort
+  int port;
+
+  @Value("${spring.bulk.api.path:/bulk}")
+  String bulkPath;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  ObjectMapper mapper = new ObjectMapper();
+
+  private HttpResponse execute(BulkRequest req) throws Exception {
+    HttpPost post = new HttpPost("http://localhost:" + port + bulkPath);
+    post.setHeader("Content-Type", "application/json");
+    post.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(req)));
+    HttpResponse response = HttpClientBuilder.create().build().execute(post);
+    EntityUtils.consume(response.getEntity());
+    return response;
+  }
+
+  private BulkRequest newRequest(String url, int times) {
+    BulkRequest req = new BulkRequest();
+    req.setParallel(true);
+    for (int i = 0; i < times; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl(url);
+      req.getOperations().add(op);
+    }
+    return req;
+  }
+
+  @Test
+  public void bodyBeyondTheByteLimitIsRejected() throws Exception {
+    StringBuilder url = new StringBuilder("/home2/AAA/");
+    for (int i = 0; i < 5000; i++) {
+      url.append('c');
+    }
+
+    HttpResponse response = execute(newRequest(url.toString(), 1));
+
+    assertEquals(413, response.getStatusLine().getStatusCode());
+  }
+
+  @Test
+  public void bulkBeyondTheInFlightLimitIsRejected() throws Exception {
+    HttpResponse response = execute(newRequest("/home2/AAA/ccc", 5));
+
+    assertEquals(413, response.getStatusLine().getStatusCode());
+  }
+
+  @Test
+  public void streamedOperationBeyondTheLimitGetsItsOwnResult()
+      throws Exception {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 5; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl("/home2/AAA/ccc");
+      body.append(mapper.writeValueAsString(op)).append("\n");
+    }
+
+    HttpPost post = new HttpPost("http://localhost:" + port + bulkPath);
+    post.setHeader("Content-Type", "application/x-ndjson");
+    post.setHeader("Accept", "application/x-ndjson");
+    post.setEntity(new ByteArrayEntity(body.toString().getBytes("UTF-8")));
+    HttpResponse response = HttpClientBuilder.create().build().execute(post);
+
+    assertEquals(200, response.getStatusLine().getStatusCode());
+    String[] lines = EntityUtils.toString(response.getEntity()).split("\n");
+    assertEquals(5, lines.length);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(200, mapper.readTree(lines[i]).get("status").asInt());
+    }
+    assertEquals(413, mapper.readTree(lines[4]).get("status").asInt());
+    assertTrue(meterRegistry.get("bulk.api.operations.rejected")
+        .tag("status", "413").counter().count() > 0);
+  }
+
+  @Test
+  public void bulkIsRejectedWhileTheNodeIsBusy() throws Exception {
+    CompletableFuture<HttpResponse> busy = CompletableFuture.supplyAsync(() -> {
+      try {
+        return execute(newRequest("/slow", 3));
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    Thread.sleep(500);
+
+    HttpResponse response = execute(newRequest("/home2/AAA/ccc", 2));
+
+    assertEquals(429, response.getStatusLine().getStatusCode());
+    assertEquals("2", response.getFirstHeader("Retry-After").getValue());
+    assertEquals(200, busy.get().getStatusLine().getStatusCode());
+    assertEquals(200, execute(newRequest("/home2/AAA/ccc", 2))
+        .getStatusLine().getStatusCode());
+  }
+
+}
@@ -18,6 +18,9 @@
 package com.github.wnameless.spring.bulkapi.test;
 
 import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
@@ -29,6 +32,9 @@ import com.github.wnameless.spring.bulkapi.DefaultBulkApiService;
 import com.github.wnameless.spring.bulkapi.EnableBulkApi;
 import com.github.wnameless.spring.bulkapi.URITransformer;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @EnableBulkApi
 @Configuration
 public class AppConfig {
@@ -47,6 +53,11 @@ public class AppConfig {
 
   }
 
+  @Bean
+  public MeterRegistry meterRegistry() {
+    return new SimpleMeterRegistry();
+  }
+
   @Bean
   public TestURITransformer uriTransformer() {
     return new TestURITransformer();
@@ -55,10 +66,14 @@ public class AppConfig {
   public class TestURITransformer implements URITransformer {
 
     private boolean used = false;
+    private final Map<String, AtomicInteger> counts =
+        new ConcurrentHashMap<>();
 
     @Override
     public URI transform(URI uri) {
       used = true;
+      counts.computeIfAbsent(uri.getPath(), k -> new AtomicInteger())
+          .incrementAndGet();
       return uri;
     }
 
@@ -66,6 +81,11 @@ public class AppConfig {
       return used;
     }
 
+    public int getCount(String path) {
+      AtomicInteger count = counts.get(path);
+      return count == null ? 0 : count.get();
+    }
+
   }
 
 }
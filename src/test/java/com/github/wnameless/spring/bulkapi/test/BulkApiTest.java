@@ -25,12 +25,16 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
@@ -47,7 +51,11 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.util.Base64Utils;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.github.wnameless.spring.bulkapi.BulkJob;
 import com.github.wnameless.spring.bulkapi.BulkOperation;
 import com.github.wnameless.spring.bulkapi.BulkRequest;
 import com.github.wnameless.spring.bulkapi.BulkResponse;
@@ -56,6 +64,8 @@ import com.github.wnameless.spring.bulkapi.test.AppConfig.TestURITransformer;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import net.sf.rubycollect4j.Ruby;
 import nl.jqno.equalsverifier.EqualsVerifier;
 import nl.jqno.equalsverifier.Warning;
@@ -85,12 +95,18 @@ public class BulkApiTest {
   @Autowired
   TestURITransformer testUriTransformer;
 
+  @Autowired
+  MeterRegistry meterRegistry;
+
   @Before
   public void setUp() {
     post = new HttpPost("http://localhost:" + port + bulkPath);
     post.setHeader("Content-Type", "application/json");
   }
 
+  static final JsonNode RED_NODE = TextNode.valueOf("red");
+  static final JsonNode BLUE_NODE = TextNode.valueOf("blue");
+
   @Test
   public void testBeans() throws Exception {
     assertThat(BulkOperation.class, allOf(hasValidBeanConstructor(),
@@ -106,12 +122,20 @@ public class BulkApiTest {
     assertThat(BulkResponse.class, allOf(hasValidBeanConstructor(),
         hasValidGettersAndSetters(), hasValidBeanToStringExcluding()));
     EqualsVerifier.forClass(BulkResponse.class)
+        .withPrefabValues(JsonNode.class, RED_NODE, BLUE_NODE)
         .suppress(Warning.NONFINAL_FIELDS).verify();
 
     assertThat(BulkResult.class, allOf(hasValidBeanConstructor(),
         hasValidGettersAndSetters(), hasValidBeanToStringExcluding()));
-    EqualsVerifier.forClass(BulkResult.class).suppress(Warning.NONFINAL_FIELDS)
-        .verify();
+    EqualsVerifier.forClass(BulkResult.class)
+        .withPrefabValues(JsonNode.class, RED_NODE, BLUE_NODE)
+        .suppress(Warning.NONFINAL_FIELDS).verify();
+
+    assertThat(BulkJob.class, allOf(hasValidBeanConstructor(),
+        hasValidGettersAndSetters(), hasValidBeanToStringExcluding()));
+    EqualsVerifier.forClass(BulkJob.class)
+        .withPrefabValues(JsonNode.class, RED_NODE, BLUE_NODE)
+        .suppress(Warning.NONFINAL_FIELDS).verify();
   }
 
   private BulkRequest operationTimes(int times) {
@@ -152,6 +176,446 @@ public class BulkApiTest {
     assertEquals(1000, res.getResults().size());
   }
 
+  @Test
+  public void testParallelMode() throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.setParallel(true);
+    for (int i = 0; i < 100; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl(i % 2 == 0 ? "/home" : "/home2/AAA/ccc");
+      op.getHeaders().put("Authorization", authHeader);
+      req.getOperations().add(op);
+    }
+
+    HttpEntity entity =
+        new ByteArrayEntity(mapper.writeValueAsString(req).getBytes("UTF-8"));
+    post.setEntity(entity);
+    HttpResponse response = client.execute(post);
+    String result = EntityUtils.toString(response.getEntity());
+    BulkResponse res = new Gson().getAdapter(new TypeToken<BulkResponse>() {})
+        .fromJson(result);
+
+    assertEquals(100, res.getResults().size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i % 2 == 0 ? "HAHA" : "YAYA",
+          res.getResults().get(i).getBody());
+    }
+  }
+
+  @Test
+  public void testStreamingMode() throws Exception {
+    BulkRequest req = new BulkRequest();
+    for (int i = 0; i < 10; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl(i % 2 == 0 ? "/home" : "/home2/AAA/ccc");
+      op.getHeaders().put("Authorization", authHeader);
+      req.getOperations().add(op);
+    }
+
+    post.setHeader("Accept", "application/x-ndjson");
+    HttpEntity entity =
+        new ByteArrayEntity(mapper.writeValueAsString(req).getBytes("UTF-8"));
+    post.setEntity(entity);
+    HttpResponse response = client.execute(post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+    assertTrue(response.getFirstHeader("Content-Type").getValue()
+        .startsWith("application/x-ndjson"));
+
+    String[] lines = EntityUtils.toString(response.getEntity()).split("\n");
+    assertEquals(10, lines.length);
+    for (int i = 0; i < 10; i++) {
+      BulkResult res = mapper.readValue(lines[i], BulkResult.class);
+      assertEquals(200, res.getStatus());
+      assertEquals(i % 2 == 0 ? "HAHA" : "YAYA", res.getBody());
+    }
+  }
+
+  @Test
+  public void testStreamingModeWithInvalidUrl() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl("/home3");
+    req.getOperations().add(op);
+
+    post.setHeader("Accept", "application/x-ndjson");
+    HttpEntity entity =
+        new ByteArrayEntity(mapper.writeValueAsString(req).getBytes("UTF-8"));
+    post.setEntity(entity);
+    HttpResponse response = client.execute(post);
+
+    assertEquals(422, response.getStatusLine().getStatusCode());
+    // Rejected before any operation is executed
+    assertEquals("Invalid URL(/home3) exists in this bulk request",
+        EntityUtils.toString(response.getEntity()));
+  }
+
+  @Test
+  public void testNdjsonOperations() throws Exception {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 10; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl(i % 2 == 0 ? "/home" : "/home2/AAA/ccc");
+      op.getHeaders().put("Authorization", authHeader);
+      body.append(mapper.writeValueAsString(op)).append("\n");
+    }
+
+    post.setURI(new URI(post.getURI() + "?parallel=true"));
+    post.setHeader("Content-Type", "application/x-ndjson");
+    HttpEntity entity = new ByteArrayEntity(body.toString().getBytes("UTF-8"));
+    post.setEntity(entity);
+    HttpResponse response = client.execute(post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+
+    String result = EntityUtils.toString(response.getEntity());
+    BulkResponse res = new Gson().getAdapter(new TypeToken<BulkResponse>() {})
+        .fromJson(result);
+    assertEquals(10, res.getResults().size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i % 2 == 0 ? "HAHA" : "YAYA",
+          res.getResults().get(i).getBody());
+    }
+  }
+
+  @Test
+  public void testNdjsonOperationsWithInvalidOperation() throws Exception {
+    StringBuilder body = new StringBuilder();
+    for (String url : new String[] { "/home", bulkPath, "/home", "/home" }) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl(url);
+      op.getHeaders().put("Authorization", authHeader);
+      body.append(mapper.writeValueAsString(op)).append("\n");
+    }
+
+    post.setURI(new URI(post.getURI() + "?onError=stop&maxErrors=1"));
+    post.setHeader("Content-Type", "application/x-ndjson");
+    HttpEntity entity = new ByteArrayEntity(body.toString().getBytes("UTF-8"));
+    post.setEntity(entity);
+    HttpResponse response = client.execute(post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+
+    String result = EntityUtils.toString(response.getEntity());
+    BulkResponse res = new Gson().getAdapter(new TypeToken<BulkResponse>() {})
+        .fromJson(result);
+    assertEquals(4, res.getResults().size());
+    assertEquals(200, res.getResults().get(0).getStatus());
+    assertEquals(422, res.getResults().get(1).getStatus());
+    // Skipped after the invalid operation
+    assertEquals(424, res.getResults().get(2).getStatus());
+    assertEquals(424, res.getResults().get(3).getStatus());
+  }
+
+  @Test
+  public void testMalformedNdjsonOperations() throws Exception {
+    post.setHeader("Content-Type", "application/x-ndjson");
+    HttpEntity entity =
+        new ByteArrayEntity("{\"url\": \"/home\"\n".getBytes("UTF-8"));
+    post.setEntity(entity);
+    HttpResponse response = client.execute(post);
+
+    assertEquals(400, response.getStatusLine().getStatusCode());
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    HttpEntity entity = new ByteArrayEntity(
+        mapper.writeValueAsString(operationTimes(3)).getBytes("UTF-8"));
+    post.setEntity(entity);
+    client.execute(post);
+
+    assertTrue(meterRegistry.get("bulk.api.requests").tag("outcome", "SUCCESS")
+        .timer().count() > 0);
+    assertTrue(meterRegistry.get("bulk.api.operations").tag("status", "2xx")
+        .timers().stream().mapToLong(Timer::count).sum() >= 3);
+    assertTrue(meterRegistry.get("bulk.api.requests.phase")
+        .tag("phase", "validation").timer().count() > 0);
+
+    entity = new ByteArrayEntity(
+        mapper.writeValueAsString(operationTimes(1001)).getBytes("UTF-8"));
+    post.setEntity(entity);
+    client.execute(post);
+
+    assertTrue(meterRegistry.get("bulk.api.requests.rejected")
+        .tag("status", "413").counter().count() > 0);
+  }
+
+  private BulkResponse execute(BulkRequest req) throws Exception {
+    HttpEntity entity =
+        new ByteArrayEntity(mapper.writeValueAsString(req).getBytes("UTF-8"));
+    post.setEntity(entity);
+    HttpResponse response = client.execute(post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+
+    String result = EntityUtils.toString(response.getEntity());
+    return new Gson().getAdapter(new TypeToken<BulkResponse>() {})
+        .fromJson(result);
+  }
+
+  private BulkResponse failingOperations(String onError, Integer maxErrors)
+      throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.setOnError(onError);
+    req.setMaxErrors(maxErrors);
+    for (int i = 0; i < 4; i++) {
+      BulkOperation op = new BulkOperation();
+      // Requests to /home without authorization are rejected with 401
+      op.setUrl(i < 2 ? "/home" : "/home2/AAA/ccc");
+      req.getOperations().add(op);
+    }
+
+    return execute(req);
+  }
+
+  @Test
+  public void testContinueOnError() throws Exception {
+    BulkResponse res = failingOperations("continue", null);
+
+    assertEquals(4, res.getResults().size());
+    assertEquals(401, res.getResults().get(0).getStatus());
+    assertEquals(401, res.getResults().get(1).getStatus());
+    assertEquals(200, res.getResults().get(2).getStatus());
+    assertEquals("YAYA", res.getResults().get(3).getBody());
+  }
+
+  @Test
+  public void testStopOnFirstError() throws Exception {
+    BulkResponse res = failingOperations("stop", null);
+
+    assertEquals(4, res.getResults().size());
+    assertEquals(401, res.getResults().get(0).getStatus());
+    assertEquals(424, res.getResults().get(1).getStatus());
+    assertEquals(424, res.getResults().get(2).getStatus());
+    assertEquals(424, res.getResults().get(3).getStatus());
+  }
+
+  @Test
+  public void testStopAfterErrors() throws Exception {
+    BulkResponse res = failingOperations("stop", 2);
+
+    assertEquals(4, res.getResults().size());
+    assertEquals(401, res.getResults().get(0).getStatus());
+    assertEquals(401, res.getResults().get(1).getStatus());
+    assertEquals(424, res.getResults().get(2).getStatus());
+    assertEquals(424, res.getResults().get(3).getStatus());
+  }
+
+  @Test
+  public void testOperationTimeout() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl("/slow");
+    op.setTimeout(200L);
+    req.getOperations().add(op);
+    op = new BulkOperation();
+    op.setUrl("/home2/AAA/ccc");
+    req.getOperations().add(op);
+
+    BulkResponse res = execute(req);
+
+    assertEquals(504, res.getResults().get(0).getStatus());
+    assertEquals(200, res.getResults().get(1).getStatus());
+    assertEquals("YAYA", res.getResults().get(1).getBody());
+  }
+
+  @Test
+  public void testBulkTimeout() throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.setParallel(true);
+    req.setTimeout(300L);
+    for (String url : new String[] { "/home2/AAA/ccc", "/slow", "/slow" }) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl(url);
+      req.getOperations().add(op);
+    }
+
+    long start = System.currentTimeMillis();
+    BulkResponse res = execute(req);
+
+    assertTrue(System.currentTimeMillis() - start < 2000);
+    assertEquals(200, res.getResults().get(0).getStatus());
+    assertEquals(504, res.getResults().get(1).getStatus());
+    assertEquals(504, res.getResults().get(2).getStatus());
+  }
+
+  @Test
+  public void testCoalescedDuplicateTimesOutAlone() throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.setParallel(true);
+    req.setCoalesce(true);
+    for (Long timeout : new Long[] { 200L, 5000L }) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl("/slow");
+      op.setTimeout(timeout);
+      req.getOperations().add(op);
+    }
+
+    BulkResponse res = execute(req);
+
+    // The original times out, but the duplicate keeps waiting for it
+    assertEquals(504, res.getResults().get(0).getStatus());
+    assertEquals(200, res.getResults().get(1).getStatus());
+    assertEquals("SLOW", res.getResults().get(1).getBody());
+  }
+
+  private BulkJob submitJob(BulkRequest req) throws Exception {
+    HttpPost jobPost =
+        new HttpPost("http://localhost:" + port + bulkPath + "/jobs");
+    jobPost.setHeader("Content-Type", "application/json");
+    jobPost.setEntity(
+        new ByteArrayEntity(mapper.writeValueAsString(req).getBytes("UTF-8")));
+    HttpResponse response = client.execute(jobPost);
+    assertEquals(202, response.getStatusLine().getStatusCode());
+
+    BulkJob job = new Gson().getAdapter(new TypeToken<BulkJob>() {})
+        .fromJson(EntityUtils.toString(response.getEntity()));
+    assertEquals(response.getFirstHeader("Location").getValue(),
+        "http://localhost:" + port + bulkPath + "/jobs/" + job.getId());
+    return job;
+  }
+
+  private BulkJob pollJob(String id, int from, long wait) throws Exception {
+    return pollJob(id, from, wait, null);
+  }
+
+  private BulkJob pollJob(String id, int from, long wait, String auth)
+      throws Exception {
+    HttpGet get = new HttpGet("http://localhost:" + port + bulkPath + "/jobs/"
+        + id + "?from=" + from + "&wait=" + wait);
+    if (auth != null) get.setHeader("Authorization", auth);
+    HttpResponse response = client.execute(get);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+
+    return new Gson().getAdapter(new TypeToken<BulkJob>() {})
+        .fromJson(EntityUtils.toString(response.getEntity()));
+  }
+
+  @Test
+  public void testAsyncJob() throws Exception {
+    BulkRequest req = new BulkRequest();
+    for (String url : new String[] { "/slow", "/home2/AAA/ccc" }) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl(url);
+      req.getOperations().add(op);
+    }
+
+    long start = System.currentTimeMillis();
+    BulkJob job = submitJob(req);
+    assertTrue(System.currentTimeMillis() - start < 2000);
+    assertEquals(2, job.getOperations());
+
+    List<BulkResult> results = new ArrayList<>();
+    while (!job.getStatus().isFinished()) {
+      job = pollJob(job.getId(), results.size(), 5000);
+      assertEquals(results.size(), job.getFrom());
+      results.addAll(job.getResults());
+    }
+
+    assertEquals(BulkJob.Status.COMPLETED, job.getStatus());
+    assertEquals(2, results.size());
+    assertEquals("SLOW", results.get(0).getBody());
+    assertEquals("YAYA", results.get(1).getBody());
+    assertEquals(2, pollJob(job.getId(), 0, 0).getResults().size());
+  }
+
+  @Test
+  public void testInvalidAsyncJob() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl("/not-bulkable");
+    req.getOperations().add(op);
+
+    HttpPost jobPost =
+        new HttpPost("http://localhost:" + port + bulkPath + "/jobs");
+    jobPost.setHeader("Content-Type", "application/json");
+    jobPost.setEntity(
+        new ByteArrayEntity(mapper.writeValueAsString(req).getBytes("UTF-8")));
+    HttpResponse response = client.execute(jobPost);
+
+    // Rejected before the job is accepted
+    assertEquals(422, response.getStatusLine().getStatusCode());
+    assertEquals("Invalid URL(/not-bulkable) exists in this bulk request",
+        EntityUtils.toString(response.getEntity()));
+  }
+
+  @Test
+  public void testAsyncJobBeyondBulkLimit() throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.setParallel(true);
+    for (int i = 0; i < 1001; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl("/home2/AAA/ccc");
+      req.getOperations().add(op);
+    }
+
+    BulkJob job = submitJob(req);
+    assertEquals(1001, job.getOperations());
+
+    while (!job.getStatus().isFinished()) {
+      job = pollJob(job.getId(), 1001, 5000);
+    }
+    assertEquals(BulkJob.Status.COMPLETED, job.getStatus());
+  }
+
+  @Test
+  public void testAsyncJobOfOtherUser() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl("/home2/AAA/ccc");
+    req.getOperations().add(op);
+
+    HttpPost jobPost =
+        new HttpPost("http://localhost:" + port + bulkPath + "/jobs");
+    jobPost.setHeader("Content-Type", "application/json");
+    jobPost.setHeader("Authorization", authHeader);
+    jobPost.setEntity(
+        new ByteArrayEntity(mapper.writeValueAsString(req).getBytes("UTF-8")));
+    HttpResponse response = client.execute(jobPost);
+    assertEquals(202, response.getStatusLine().getStatusCode());
+    BulkJob job = new Gson().getAdapter(new TypeToken<BulkJob>() {})
+        .fromJson(EntityUtils.toString(response.getEntity()));
+
+    assertEquals(job.getId(), pollJob(job.getId(), 0, 0, authHeader).getId());
+    // A new client, so the session of the user isn't reused
+    response = HttpClientBuilder.create().build().execute(new HttpGet(
+        "http://localhost:" + port + bulkPath + "/jobs/" + job.getId()));
+    assertEquals(404, response.getStatusLine().getStatusCode());
+  }
+
+  @Test
+  public void testUnknownJob() throws Exception {
+    HttpResponse response = client.execute(new HttpGet(
+        "http://localhost:" + port + bulkPath + "/jobs/unknown?wait=1000"));
+
+    assertEquals(404, response.getStatusLine().getStatusCode());
+  }
+
+  @Test
+  public void testCoalescedOperations() throws Exception {
+    for (boolean parallel : new boolean[] { false, true }) {
+      BulkRequest req = new BulkRequest();
+      req.setCoalesce(true);
+      req.setParallel(parallel);
+      for (int i = 0; i < 3; i++) {
+        BulkOperation op = new BulkOperation();
+        op.setUrl("/counter");
+        req.getOperations().add(op);
+      }
+      BulkOperation op = new BulkOperation();
+      op.setUrl("/counter");
+      op.getParams().put("a", "b");
+      req.getOperations().add(op);
+
+      int count = TestController.counter.get();
+      BulkResponse res = execute(req);
+
+      assertEquals(4, res.getResults().size());
+      assertEquals(count + 2, TestController.counter.get());
+      assertEquals(res.getResults().get(0), res.getResults().get(1));
+      assertEquals(res.getResults().get(0), res.getResults().get(2));
+      assertTrue(!res.getResults().get(0).getBody()
+          .equals(res.getResults().get(3).getBody()));
+    }
+  }
+
   @Test
   public void testOverLimitationError() throws Exception {
     HttpEntity entity = new ByteArrayEntity(
@@ -343,9 +807,168 @@ public class BulkApiTest {
     assertTrue(200 == response.getStatusLine().getStatusCode());
   }
 
+  @Test
+  public void testResultReference() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation create = new BulkOperation();
+    create.setId("item");
+    create.setUrl("/items");
+    req.getOperations().add(create);
+    BulkOperation read = new BulkOperation();
+    read.setUrl("/items/${item.body.id}");
+    req.getOperations().add(read);
+
+    BulkResponse res = execute(req);
+
+    String id = mapper.readTree(res.getResults().get(0).getBody()).get("id")
+        .asText();
+    assertEquals(200, res.getResults().get(1).getStatus());
+    assertEquals("ITEM" + id, res.getResults().get(1).getBody());
+  }
+
+  @Test
+  public void testResultReferenceInParallelMode() throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.setParallel(true);
+    BulkOperation create = new BulkOperation();
+    create.setId("item");
+    create.setUrl("/items");
+    req.getOperations().add(create);
+    req.getOperations().addAll(operationTimes(3).getOperations());
+    BulkOperation read = new BulkOperation();
+    read.setUrl("/items/${item.body.id}");
+    req.getOperations().add(read);
+
+    BulkResponse res = execute(req);
+
+    String id = mapper.readTree(res.getResults().get(0).getBody()).get("id")
+        .asText();
+    assertEquals(5, res.getResults().size());
+    assertEquals("ITEM" + id, res.getResults().get(4).getBody());
+  }
+
+  @Test
+  public void testFailedDependency() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation unauthorized = new BulkOperation();
+    unauthorized.setId("home");
+    unauthorized.setUrl("/home");
+    req.getOperations().add(unauthorized);
+    BulkOperation dependent = new BulkOperation();
+    dependent.setUrl("/home2/AAA/ccc");
+    dependent.getDependsOn().add("home");
+    req.getOperations().add(dependent);
+
+    BulkResponse res = execute(req);
+
+    assertEquals(401, res.getResults().get(0).getStatus());
+    assertEquals(424, res.getResults().get(1).getStatus());
+  }
+
+  @Test
+  public void testUnknownDependency() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl("/home2/AAA/ccc");
+    op.getDependsOn().add("unknown");
+    req.getOperations().add(op);
+
+    HttpEntity entity =
+        new ByteArrayEntity(mapper.writeValueAsString(req).getBytes("UTF-8"));
+    post.setEntity(entity);
+    HttpResponse response = client.execute(post);
+
+    assertEquals(422, response.getStatusLine().getStatusCode());
+  }
+
+  @Test
+  public void testCborRequestAndResponse() throws Exception {
+    ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+    BulkRequest req = operationTimes(1);
+    BulkOperation op = new BulkOperation();
+    op.setMethod("GET");
+    op.setUrl("/items");
+    op.getHeaders().put("Authorization", authHeader);
+    req.getOperations().add(op);
+
+    post.setHeader("Content-Type", "application/cbor");
+    post.setHeader("Accept", "application/cbor");
+    post.setEntity(new ByteArrayEntity(cbor.writeValueAsBytes(req)));
+    HttpResponse response = client.execute(post);
+
+    assertEquals(200, response.getStatusLine().getStatusCode());
+    assertTrue(response.getFirstHeader("Content-Type").getValue()
+        .startsWith("application/cbor"));
+    byte[] body = EntityUtils.toByteArray(response.getEntity());
+    JsonNode tree = cbor.readTree(body);
+    assertEquals("HAHA", tree.at("/results/0/body").asText());
+    assertTrue(tree.at("/results/1/body").isObject());
+    assertTrue(tree.at("/results/1/body/id").isNumber());
+
+    BulkResponse res = cbor.readValue(body, BulkResponse.class);
+    assertEquals("HAHA", res.getResults().get(0).getBody());
+    assertTrue(mapper.readTree(res.getResults().get(1).getBody()).has("id"));
+  }
+
+  @Test
+  public void testUtf8BodyIsCopiedAsItIs() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl("/unicode");
+    req.getOperations().add(op);
+
+    BulkResponse res = execute(req);
+
+    assertEquals("\u00e9t\u00e9 \u65e5\u672c \"quoted\"\n",
+        res.getResults().get(0).getBody());
+  }
+
+  @Test
+  public void testJsonBodyWithoutCharsetIsUtf8() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl("/unicode-json");
+    req.getOperations().add(op);
+
+    BulkResponse res = execute(req);
+
+    assertEquals("{\"name\":\"\u00e9t\u00e9 \u65e5\u672c\"}",
+        res.getResults().get(0).getBody());
+  }
+
   @Test
   public void testURITransformer() {
     assertTrue(testUriTransformer.isUsed());
   }
 
+  @Test
+  public void testEachURIIsComputedOnce() throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.setParallel(true);
+    req.setTimeout(5000L);
+    BulkOperation create = new BulkOperation();
+    create.setId("item");
+    create.setUrl("/items");
+    req.getOperations().add(create);
+    for (String url : new String[] { "/items/once-1", "/items/once-2" }) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl(url);
+      op.setTimeout(5000L);
+      req.getOperations().add(op);
+    }
+    BulkOperation read = new BulkOperation();
+    read.setUrl("/items/${item.body.id}");
+    req.getOperations().add(read);
+
+    BulkResponse res = execute(req);
+
+    String id = mapper.readTree(res.getResults().get(0).getBody()).get("id")
+        .asText();
+    assertEquals("ITEM" + id, res.getResults().get(3).getBody());
+    assertEquals(1, testUriTransformer.getCount("/items/once-1"));
+    assertEquals(1, testUriTransformer.getCount("/items/once-2"));
+    // A deferred operation is computed once its dependency is finished
+    assertEquals(1, testUriTransformer.getCount("/items/" + id));
+  }
+
 }
@@ -0,0 +1,158 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkOperation;
+import com.github.wnameless.spring.bulkapi.BulkRequest;
+import com.github.wnameless.spring.bulkapi.BulkResponse;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = Application.class,
+    webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = { "spring.bulk.api.bulkhead.enabled=true",
+        "spring.bulk.api.bulkhead.routes=/slow=1",
+        "spring.bulk.api.bulkhead.tenant-header=X-Tenant-Id" })
+public class BulkheadBulkApiTest {
+
+  @LocalServerPort
+  int port;
+
+  @Value("${spring.bulk.api.path:/bulk}")
+  String bulkPath;
+
+  HttpClient client = HttpClientBuilder.create().build();
+  HttpPost post;
+
+  ObjectMapper mapper = new ObjectMapper();
+
+  @Before
+  public void setUp() {
+    post = new HttpPost("http://localhost:" + port + bulkPath);
+    post.setHeader("Content-Type", "application/json");
+  }
+
+  private BulkResponse execute(BulkRequest req) throws Exception {
+    return execute(req, client, post);
+  }
+
+  private BulkResponse execute(BulkRequest req, HttpClient client,
+      HttpPost post) throws Exception {
+    HttpEntity entity =
+        new ByteArrayEntity(mapper.writeValueAsString(req).getBytes("UTF-8"));
+    post.setEntity(entity);
+    HttpResponse response = client.execute(post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+
+    String result = EntityUtils.toString(response.getEntity());
+    return new Gson().getAdapter(new TypeToken<BulkResponse>() {})
+        .fromJson(result);
+  }
+
+  @Test
+  public void operationsBeyondTheLimitAreRejected() throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.setParallel(true);
+    for (int i = 0; i < 2; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl("/slow");
+      req.getOperations().add(op);
+    }
+
+    BulkResponse res = execute(req);
+
+    List<Integer> statuses = new ArrayList<>();
+    res.getResults().forEach(result -> statuses.add(result.getStatus()));
+    Collections.sort(statuses);
+    assertEquals(Arrays.asList(200, 429), statuses);
+  }
+
+  @Test
+  public void otherRoutesAreNotLimitedByTheRouteLimit() throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.setParallel(true);
+    for (int i = 0; i < 2; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl("/home2/AAA/ccc");
+      req.getOperations().add(op);
+    }
+
+    BulkResponse res = execute(req);
+
+    assertEquals(200, res.getResults().get(0).getStatus());
+    assertEquals(200, res.getResults().get(1).getStatus());
+  }
+
+  @Test
+  public void tenantsCanNotExceedTheRouteLimit() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl("/slow");
+    req.getOperations().add(op);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<BulkResponse>> responses = new ArrayList<>();
+      for (String tenant : Arrays.asList("tenant-a", "tenant-b")) {
+        HttpPost tenantPost = new HttpPost(post.getURI());
+        tenantPost.setHeader("Content-Type", "application/json");
+        tenantPost.setHeader("X-Tenant-Id", tenant);
+        responses.add(executor.submit(() -> execute(req,
+            HttpClientBuilder.create().build(), tenantPost)));
+      }
+
+      List<Integer> statuses = new ArrayList<>();
+      for (Future<BulkResponse> res : responses) {
+        statuses.add(res.get().getResults().get(0).getStatus());
+      }
+      Collections.sort(statuses);
+      assertEquals(Arrays.asList(200, 429), statuses);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
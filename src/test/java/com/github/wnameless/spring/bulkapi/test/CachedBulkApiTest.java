@@ -0,0 +1,122 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkOperation;
+import com.github.wnameless.spring.bulkapi.BulkRequest;
+import com.github.wnameless.spring.bulkapi.BulkResponse;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = Application.class,
+    webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = "spring.bulk.api.cache.enabled=true")
+public class CachedBulkApiTest {
+
+  @LocalServerPort
+  int port;
+
+  @Value("${spring.bulk.api.path:/bulk}")
+  String bulkPath;
+
+  HttpClient client = HttpClientBuilder.create().build();
+  HttpPost post;
+
+  ObjectMapper mapper = new ObjectMapper();
+
+  @Before
+  public void setUp() {
+    post = new HttpPost("http://localhost:" + port + bulkPath);
+    post.setHeader("Content-Type", "application/json");
+  }
+
+  private BulkResponse execute(BulkRequest req) throws Exception {
+    HttpEntity entity =
+        new ByteArrayEntity(mapper.writeValueAsString(req).getBytes("UTF-8"));
+    post.setEntity(entity);
+    HttpResponse response = client.execute(post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+
+    String result = EntityUtils.toString(response.getEntity());
+    return new Gson().getAdapter(new TypeToken<BulkResponse>() {})
+        .fromJson(result);
+  }
+
+  private BulkRequest newRequest(String url) {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl(url);
+    req.getOperations().add(op);
+    return req;
+  }
+
+  @Test
+  public void freshResponseIsSharedAcrossBulkRequests() throws Exception {
+    BulkResponse first = execute(newRequest("/cached"));
+    BulkResponse second = execute(newRequest("/cached"));
+
+    assertEquals(200, second.getResults().get(0).getStatus());
+    assertEquals(first.getResults().get(0).getBody(),
+        second.getResults().get(0).getBody());
+  }
+
+  @Test
+  public void uncacheableResponseIsNotShared() throws Exception {
+    int first = Integer.parseInt(
+        execute(newRequest("/counter")).getResults().get(0).getBody());
+    int second = Integer.parseInt(
+        execute(newRequest("/counter")).getResults().get(0).getBody());
+
+    assertEquals(first + 1, second);
+  }
+
+  @Test
+  public void credentialedResponseIsNotShared() throws Exception {
+    BulkRequest req = newRequest("/cached");
+    req.getOperations().get(0).getHeaders().put("Authorization",
+        "Basic dXNlcjpwYXNzd29yZA==");
+
+    int first =
+        Integer.parseInt(execute(req).getResults().get(0).getBody());
+    int second =
+        Integer.parseInt(execute(req).getResults().get(0).getBody());
+
+    assertEquals(first + 1, second);
+  }
+
+}
@@ -0,0 +1,172 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkOperation;
+import com.github.wnameless.spring.bulkapi.BulkRequest;
+import com.github.wnameless.spring.bulkapi.BulkResponse;
+import com.google.gson.Gson;
+
+import net.sf.rubycollect4j.Ruby;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = Application.class,
+    webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = { "spring.bulk.api.compression.enabled=true",
+        "spring.bulk.api.compression.max-inflated-size=4096",
+        "spring.bulk.api.compression.loopback.enabled=true",
+        "spring.bulk.api.compression.loopback.min-size=1",
+        "spring.bulk.api.compression.loopback.token=shared-secret" })
+public class CompressionBulkApiTest {
+
+  @LocalServerPort
+  int port;
+
+  @Value("${spring.bulk.api.path:/bulk}")
+  String bulkPath;
+
+  ObjectMapper mapper = new ObjectMapper();
+
+  private HttpResponse post(String path, byte[] body, String... headers)
+      throws Exception {
+    HttpPost post = new HttpPost("http://localhost:" + port + path);
+    post.setHeader("Content-Type", "application/json");
+    post.setHeader("Content-Encoding", "gzip");
+    for (int i = 0; i + 1 < headers.length; i += 2) {
+      post.setHeader(headers[i], headers[i + 1]);
+    }
+    post.setEntity(new ByteArrayEntity(gzip(body)));
+    return HttpClientBuilder.create().disableContentCompression().build()
+        .execute(post);
+  }
+
+  private static byte[] gzip(byte[] body) throws Exception {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+      out.write(body);
+    }
+    return compressed.toByteArray();
+  }
+
+  @Test
+  public void compressedRequestAndResponse() throws Exception {
+    BulkRequest req = new BulkRequest();
+    for (int i = 0; i < 3; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl("/home2/AAA/ccc");
+      req.getOperations().add(op);
+    }
+
+    HttpResponse response = post(bulkPath, mapper.writeValueAsBytes(req),
+        "Accept-Encoding", "gzip");
+
+    assertEquals(200, response.getStatusLine().getStatusCode());
+    assertEquals("gzip",
+        response.getFirstHeader("Content-Encoding").getValue());
+    try (InputStream in =
+        new GZIPInputStream(response.getEntity().getContent())) {
+      BulkResponse res = mapper.readValue(in, BulkResponse.class);
+      assertEquals(3, res.getResults().size());
+      assertEquals("YAYA", res.getResults().get(0).getBody());
+    }
+  }
+
+  @Test
+  public void unsupportedContentEncodingIsRejected() throws Exception {
+    HttpPost post = new HttpPost("http://localhost:" + port + bulkPath);
+    post.setHeader("Content-Type", "application/json");
+    post.setHeader("Content-Encoding", "br");
+    post.setEntity(new ByteArrayEntity(new byte[] { 1, 2, 3 }));
+    HttpResponse response = HttpClientBuilder.create().build().execute(post);
+    EntityUtils.consume(response.getEntity());
+
+    assertEquals(415, response.getStatusLine().getStatusCode());
+  }
+
+  @Test
+  public void bodyInflatedBeyondTheLimitIsRejected() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl("/home2/AAA/ccc");
+    req.getOperations().add(op);
+    StringBuilder json = new StringBuilder(mapper.writeValueAsString(req));
+    for (int i = 0; i < 8192; i++) {
+      json.append(' ');
+    }
+
+    HttpResponse response = post(bulkPath, json.toString().getBytes("UTF-8"));
+    EntityUtils.consume(response.getEntity());
+
+    assertEquals(413, response.getStatusLine().getStatusCode());
+  }
+
+  @Test
+  public void compressedOperationIsDecodedByItsController() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl("list2");
+    op.setMethod("POST");
+    op.setParams(Ruby.Hash.of("a", (Object) "D", "b", "E").toMap());
+    req.getOperations().add(op);
+
+    HttpPost post = new HttpPost("http://localhost:" + port + bulkPath);
+    post.setHeader("Content-Type", "application/json");
+    post.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(req)));
+    HttpResponse response = HttpClientBuilder.create().build().execute(post);
+
+    assertEquals(200, response.getStatusLine().getStatusCode());
+    BulkResponse res = new Gson().fromJson(
+        EntityUtils.toString(response.getEntity()), BulkResponse.class);
+    assertEquals(200, res.getResults().get(0).getStatus());
+    assertEquals("list2", res.getResults().get(0).getBody());
+  }
+
+  @Test
+  public void compressedRequestOutsideTheBulkPathIsNotDecoded()
+      throws Exception {
+    byte[] body = "{\"a\":\"D\",\"b\":\"E\"}".getBytes("UTF-8");
+
+    HttpResponse response =
+        post("/list2", body, "X-Bulk-Loopback", "not-the-token");
+    EntityUtils.consume(response.getEntity());
+
+    assertEquals(400, response.getStatusLine().getStatusCode());
+  }
+
+}
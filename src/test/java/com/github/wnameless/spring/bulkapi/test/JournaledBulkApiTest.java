@@ -0,0 +1,201 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkJob;
+import com.github.wnameless.spring.bulkapi.BulkOperation;
+import com.github.wnameless.spring.bulkapi.BulkRequest;
+import com.github.wnameless.spring.bulkapi.BulkResult;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = Application.class,
+    webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = { "spring.bulk.api.dispatch=in-process",
+        "spring.bulk.api.jobs.journal.enabled=true",
+        "spring.bulk.api.jobs.journal.dir=target/journal-test" })
+public class JournaledBulkApiTest {
+
+  static final Path JOURNAL =
+      Paths.get("target", "journal-test", "bulk-jobs.journal");
+
+  @LocalServerPort
+  int port;
+
+  @Value("${spring.bulk.api.path:/bulk}")
+  String bulkPath;
+
+  HttpClient client = HttpClientBuilder.create().build();
+
+  static ObjectMapper mapper = new ObjectMapper();
+
+  /**
+   * Writes a journal of an unfinished job which has completed its first
+   * operation, before the application starts. The job was submitted to a
+   * server on another port, which the resumed job must not depend on. The
+   * last operation depends on the completed one.
+   */
+  @BeforeClass
+  public static void writeJournal() throws Exception {
+    BulkRequest req = new BulkRequest();
+    for (int i = 0; i < 3; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl("/home2/AAA/ccc");
+      req.getOperations().add(op);
+    }
+    req.getOperations().get(0).setId("first");
+    req.getOperations().get(2).setDependsOn(Arrays.asList("first"));
+
+    BulkJob job = new BulkJob();
+    // Jobs are journaled by their ids scoped by the user, anonymous here
+    job.setId(":resumed-job");
+    job.setOperations(3);
+    job.setCreatedAt(System.currentTimeMillis());
+
+    Map<String, Object> servReq = new LinkedHashMap<>();
+    servReq.put("method", "POST");
+    servReq.put("scheme", "http");
+    servReq.put("serverName", "localhost");
+    servReq.put("serverPort", 8080);
+    servReq.put("secure", false);
+    servReq.put("protocol", "HTTP/1.1");
+    servReq.put("contextPath", "");
+    servReq.put("servletPath", "/batch/jobs");
+    servReq.put("pathInfo", null);
+    servReq.put("requestURI", "/batch/jobs");
+    servReq.put("requestURL", "http://localhost:8080/batch/jobs");
+    servReq.put("queryString", null);
+    servReq.put("remoteAddr", "127.0.0.1");
+    servReq.put("remoteHost", "localhost");
+    servReq.put("remotePort", 0);
+    servReq.put("localAddr", "127.0.0.1");
+    servReq.put("localName", "localhost");
+    servReq.put("localPort", 8080);
+    servReq.put("locales", Arrays.asList("en-US"));
+
+    Map<String, Object> submitted = new LinkedHashMap<>();
+    submitted.put("type", "submitted");
+    submitted.put("jobId", job.getId());
+    submitted.put("job", job);
+    submitted.put("request", req);
+    submitted.put("servletRequest", servReq);
+
+    BulkResult result = new BulkResult();
+    result.setStatus(200);
+    result.setBody("DONE");
+    Map<String, Object> completed = new LinkedHashMap<>();
+    completed.put("type", "completed");
+    completed.put("jobId", job.getId());
+    completed.put("result", result);
+
+    Files.createDirectories(JOURNAL.getParent());
+    Files.write(JOURNAL,
+        Arrays.asList(mapper.writeValueAsString(submitted),
+            mapper.writeValueAsString(completed), "{\"type\": \"comp"),
+        StandardCharsets.UTF_8);
+  }
+
+  private BulkJob awaitJob(String id) throws Exception {
+    BulkJob job;
+    do {
+      HttpResponse response = client.execute(new HttpGet("http://localhost:"
+          + port + bulkPath + "/jobs/" + id + "?wait=5000"));
+      assertEquals(200, response.getStatusLine().getStatusCode());
+
+      job = new Gson().getAdapter(new TypeToken<BulkJob>() {})
+          .fromJson(EntityUtils.toString(response.getEntity()));
+    } while (!job.getStatus().isFinished());
+
+    return job;
+  }
+
+  @Test
+  public void testResumedJob() throws Exception {
+    BulkJob job = awaitJob("resumed-job");
+
+    assertEquals(BulkJob.Status.COMPLETED, job.getStatus());
+    assertEquals(3, job.getResults().size());
+    assertEquals("DONE", job.getResults().get(0).getBody());
+    assertEquals("YAYA", job.getResults().get(1).getBody());
+    assertEquals("YAYA", job.getResults().get(2).getBody());
+  }
+
+  @Test
+  public void testJournaledJob() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation op = new BulkOperation();
+    op.setUrl("/home2/AAA/ccc");
+    op.getHeaders().put("authorization", "Basic c2VjcmV0");
+    op.getHeaders().put("Accept", "text/plain");
+    req.getOperations().add(op);
+
+    HttpPost post =
+        new HttpPost("http://localhost:" + port + bulkPath + "/jobs");
+    post.setHeader("Content-Type", "application/json");
+    post.setEntity(
+        new ByteArrayEntity(mapper.writeValueAsString(req).getBytes("UTF-8")));
+    HttpResponse response = client.execute(post);
+    assertEquals(202, response.getStatusLine().getStatusCode());
+    BulkJob job = new Gson().getAdapter(new TypeToken<BulkJob>() {})
+        .fromJson(EntityUtils.toString(response.getEntity()));
+
+    job = awaitJob(job.getId());
+    assertEquals(BulkJob.Status.COMPLETED, job.getStatus());
+
+    List<String> lines = Files.readAllLines(JOURNAL, StandardCharsets.UTF_8);
+    String id = job.getId();
+    assertTrue(lines.stream().anyMatch(
+        line -> line.contains("\"submitted\"") && line.contains(id)));
+    assertTrue(lines.stream().anyMatch(
+        line -> line.contains("\"finished\"") && line.contains(id)));
+    // Credentials are redacted, but the other headers are kept
+    assertTrue(lines.stream().noneMatch(line -> line.contains("c2VjcmV0")));
+    assertTrue(lines.stream().anyMatch(line -> line.contains("text/plain")));
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkOperation;
+import com.github.wnameless.spring.bulkapi.BulkRequest;
+import com.github.wnameless.spring.bulkapi.BulkResponse;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = Application.class,
+    webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = "spring.bulk.api.raw-json.enabled=true")
+public class RawJsonBulkApiTest {
+
+  @LocalServerPort
+  int port;
+
+  @Value("${spring.bulk.api.path:/bulk}")
+  String bulkPath;
+
+  HttpClient client = HttpClientBuilder.create().build();
+  HttpPost post;
+
+  ObjectMapper mapper = new ObjectMapper();
+
+  @Before
+  public void setUp() {
+    post = new HttpPost("http://localhost:" + port + bulkPath);
+    post.setHeader("Content-Type", "application/json");
+  }
+
+  private String execute(BulkRequest req) throws Exception {
+    post.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(req)));
+    HttpResponse response = client.execute(post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+
+    return EntityUtils.toString(response.getEntity());
+  }
+
+  private BulkOperation newOperation(String url) {
+    BulkOperation op = new BulkOperation();
+    op.setUrl(url);
+    return op;
+  }
+
+  @Test
+  public void jsonBodyIsEmbeddedVerbatim() throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.getOperations().add(newOperation("/items"));
+    req.getOperations().add(newOperation("/items/1"));
+    String result = execute(req);
+
+    JsonNode tree = mapper.readTree(result);
+    assertTrue(tree.at("/results/0/body").isObject());
+    assertTrue(tree.at("/results/0/body/id").isNumber());
+    assertEquals("ITEM1", tree.at("/results/1/body").textValue());
+
+    BulkResponse res = mapper.readValue(result, BulkResponse.class);
+    assertTrue(mapper.readTree(res.getResults().get(0).getBody()).has("id"));
+    assertEquals("ITEM1", res.getResults().get(1).getBody());
+  }
+
+  @Test
+  public void utf8BodyIsEmbeddedAsItIs() throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.getOperations().add(newOperation("/unicode-json"));
+    JsonNode tree = mapper.readTree(execute(req));
+
+    assertEquals("\u00e9t\u00e9 \u65e5\u672c",
+        tree.at("/results/0/body/name").textValue());
+  }
+
+  @Test
+  public void embeddedBodiesStayEmbeddedWhenWrittenAgain() throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.getOperations().add(newOperation("/items"));
+    req.getOperations().add(newOperation("/items/1"));
+    BulkResponse res = mapper.readValue(execute(req), BulkResponse.class);
+
+    JsonNode tree = mapper.readTree(mapper.writeValueAsString(res));
+    assertTrue(tree.at("/results/0/body/id").isNumber());
+    assertEquals("ITEM1", tree.at("/results/1/body").textValue());
+  }
+
+  @Test
+  public void resultReferencesReadEmbeddedBodies() throws Exception {
+    BulkRequest req = new BulkRequest();
+    BulkOperation create = newOperation("/items");
+    create.setId("item");
+    req.getOperations().add(create);
+    req.getOperations().add(newOperation("/items/${item.body.id}"));
+    JsonNode tree = mapper.readTree(execute(req));
+
+    assertEquals("ITEM" + tree.at("/results/0/body/id").asText(),
+        tree.at("/results/1/body").textValue());
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkOperation;
+import com.github.wnameless.spring.bulkapi.BulkRequest;
+import com.github.wnameless.spring.bulkapi.BulkResponse;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = Application.class,
+    webEnvironment = WebEnvironment.RANDOM_PORT)
+@Import(RestTemplateBulkApiTest.Client.class)
+public class RestTemplateBulkApiTest {
+
+  // Not a @Configuration, so the component scan of other tests skips it
+  static class Client {
+
+    static final AtomicInteger requests = new AtomicInteger();
+
+    @Bean
+    public RestTemplate bulkApiRestTemplate() {
+      RestTemplate restTemplate = new RestTemplate();
+      restTemplate.getInterceptors().add((request, body, execution) -> {
+        requests.incrementAndGet();
+        return execution.execute(request, body);
+      });
+      return restTemplate;
+    }
+
+  }
+
+  @LocalServerPort
+  int port;
+
+  @Value("${spring.bulk.api.path:/bulk}")
+  String bulkPath;
+
+  HttpClient client = HttpClientBuilder.create().build();
+  HttpPost post;
+
+  ObjectMapper mapper = new ObjectMapper();
+
+  @Before
+  public void setUp() {
+    post = new HttpPost("http://localhost:" + port + bulkPath);
+    post.setHeader("Content-Type", "application/json");
+  }
+
+  @Test
+  public void loopbackOperationsAreSentByTheRestTemplateOfTheWebApp()
+      throws Exception {
+    BulkRequest req = new BulkRequest();
+    for (int i = 0; i < 3; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl("/home2/AAA/ccc");
+      req.getOperations().add(op);
+    }
+    int before = Client.requests.get();
+
+    post.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(req)));
+    HttpResponse response = client.execute(post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+    BulkResponse res = new Gson().getAdapter(new TypeToken<BulkResponse>() {})
+        .fromJson(EntityUtils.toString(response.getEntity()));
+
+    assertEquals("YAYA", res.getResults().get(0).getBody());
+    assertEquals(3, Client.requests.get() - before);
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkApiController;
+import com.github.wnameless.spring.bulkapi.BulkApiValidator;
+import com.github.wnameless.spring.bulkapi.BulkOperation;
+import com.github.wnameless.spring.bulkapi.BulkRequest;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = Application.class,
+    webEnvironment = WebEnvironment.RANDOM_PORT)
+public class RouteTableBulkApiTest {
+
+  @LocalServerPort
+  int port;
+
+  @Value("${spring.bulk.api.path:/bulk}")
+  String bulkPath;
+
+  @Autowired
+  BulkApiController controller;
+
+  HttpClient client = HttpClientBuilder.create().build();
+  HttpPost post;
+
+  ObjectMapper mapper = new ObjectMapper();
+
+  @Before
+  public void setUp() {
+    post = new HttpPost("http://localhost:" + port + bulkPath);
+    post.setHeader("Content-Type", "application/json");
+  }
+
+  private int execute(BulkRequest req) throws Exception {
+    post.setEntity(new ByteArrayEntity(
+        mapper.writeValueAsString(req).getBytes("UTF-8")));
+    HttpResponse response = client.execute(post);
+    EntityUtils.consume(response.getEntity());
+    return response.getStatusLine().getStatusCode();
+  }
+
+  private BulkApiValidator validator() {
+    Object service =
+        ReflectionTestUtils.getField(controller, "bulkApiService");
+    assertNotNull(service);
+    return (BulkApiValidator) ReflectionTestUtils.getField(service,
+        "validator");
+  }
+
+  private static BulkRequest bulkOf(String... urls) {
+    BulkRequest req = new BulkRequest();
+    for (String url : urls) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl(url);
+      req.getOperations().add(op);
+    }
+    return req;
+  }
+
+  @Test
+  public void testRouteTableIsBuiltOnApplicationReady() {
+    BulkApiValidator validator = validator();
+    assertNotNull(validator);
+    assertTrue(validator.getRouteCount() > 0);
+  }
+
+  @Test
+  public void testBulkableRoutes() throws Exception {
+    assertEquals(200, execute(bulkOf("/home", "/home2/AAA/ccc")));
+    assertEquals(422, execute(bulkOf("/home3")));
+    assertEquals(422, execute(bulkOf("/nowhere")));
+  }
+
+  @Test
+  public void testValidationIsCachedPerPath() throws Exception {
+    BulkApiValidator validator = validator();
+    long misses = validator.getCacheMissCount();
+    long hits = validator.getCacheHitCount();
+
+    assertEquals(200,
+        execute(bulkOf("/items/101", "/items/101", "/items/101")));
+
+    assertTrue(validator.getCacheMissCount() - misses <= 1);
+    assertTrue(validator.getCacheHitCount() - hits >= 2);
+
+    // Another path of the same template is matched again
+    misses = validator.getCacheMissCount();
+    assertEquals(200, execute(bulkOf("/items/uncached")));
+    assertEquals(1, validator.getCacheMissCount() - misses);
+  }
+
+}
@@ -17,6 +17,16 @@
  */
 package com.github.wnameless.spring.bulkapi.test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -26,6 +36,10 @@ import com.github.wnameless.spring.bulkapi.Bulkable;
 @RestController
 public class TestController {
 
+  static final AtomicInteger counter = new AtomicInteger();
+  static final AtomicInteger cachedCounter = new AtomicInteger();
+  static final AtomicInteger itemIds = new AtomicInteger();
+
   @RequestMapping("/home")
   String home() {
     return "HAHA";
@@ -36,4 +50,55 @@ public class TestController {
     return "YAYA";
   }
 
+  @RequestMapping("/slow")
+  String slow() throws InterruptedException {
+    Thread.sleep(2000);
+    return "SLOW";
+  }
+
+  @RequestMapping("/counter")
+  String counter() {
+    return String.valueOf(counter.incrementAndGet());
+  }
+
+  @RequestMapping("/cached")
+  ResponseEntity<String> cached() {
+    return ResponseEntity.ok()
+        .cacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS))
+        .body(String.valueOf(cachedCounter.incrementAndGet()));
+  }
+
+  @RequestMapping("/items")
+  Map<String, Object> createItem() {
+    return Collections.singletonMap("id", itemIds.incrementAndGet());
+  }
+
+  @RequestMapping("/items/{id}")
+  String item(@PathVariable String id) {
+    return "ITEM" + id;
+  }
+
+  @RequestMapping(value = "/unicode", produces = "text/plain;charset=UTF-8")
+  String unicode() {
+    return "\u00e9t\u00e9 \u65e5\u672c \"quoted\"\n";
+  }
+
+  @RequestMapping("/unicode-json")
+  ResponseEntity<byte[]> unicodeJson() {
+    // No charset, so the body has to be read as UTF-8
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+        .body("{\"name\":\"\u00e9t\u00e9 \u65e5\u672c\"}"
+            .getBytes(StandardCharsets.UTF_8));
+  }
+
+  @RequestMapping("/thread")
+  String thread() {
+    return Thread.currentThread().getName();
+  }
+
+  @RequestMapping("/broken")
+  String broken() {
+    throw new IllegalStateException("BROKEN");
+  }
+
 }
@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.spring.bulkapi.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.spring.bulkapi.BulkOperation;
+import com.github.wnameless.spring.bulkapi.BulkRequest;
+import com.github.wnameless.spring.bulkapi.BulkResponse;
+import com.github.wnameless.spring.bulkapi.BulkResult;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = Application.class,
+    webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = { "spring.bulk.api.dispatch=in-process",
+        "spring.bulk.api.parallel.enabled=true",
+        "spring.bulk.api.parallel.executor=virtual" })
+public class VirtualThreadBulkApiTest {
+
+  @LocalServerPort
+  int port;
+
+  @Value("${spring.bulk.api.path:/bulk}")
+  String bulkPath;
+
+  HttpClient client = HttpClientBuilder.create().build();
+  HttpPost post;
+
+  ObjectMapper mapper = new ObjectMapper();
+
+  @Before
+  public void setUp() {
+    post = new HttpPost("http://localhost:" + port + bulkPath);
+    post.setHeader("Content-Type", "application/json");
+  }
+
+  private BulkResponse execute(BulkRequest req) throws Exception {
+    post.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(req)));
+    HttpResponse response = client.execute(post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+
+    String result = EntityUtils.toString(response.getEntity());
+    return new Gson().getAdapter(new TypeToken<BulkResponse>() {})
+        .fromJson(result);
+  }
+
+  private static boolean virtualThreadsSupported() {
+    try {
+      ((ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor").invoke(null))
+              .shutdown();
+      return true;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  @Test
+  public void operationsRunOnVirtualThreadsOrFallBackToThePool()
+      throws Exception {
+    BulkRequest req = new BulkRequest();
+    req.setParallel(true);
+    for (int i = 0; i < 5; i++) {
+      BulkOperation op = new BulkOperation();
+      op.setUrl("/thread");
+      req.getOperations().add(op);
+    }
+
+    BulkResponse res = execute(req);
+
+    assertEquals(5, res.getResults().size());
+    for (BulkResult result : res.getResults()) {
+      assertEquals(200, result.getStatus());
+      // Virtual threads are unnamed, unlike the platform thread pool
+      boolean pooled = result.getBody() != null
+          && result.getBody().startsWith("bulk-api-");
+      assertEquals(result.getBody(), !virtualThreadsSupported(), pooled);
+    }
+  }
+
+}